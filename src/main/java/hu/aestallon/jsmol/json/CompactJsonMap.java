@@ -0,0 +1,285 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An insertion-ordered map of the members of a {@link JsonObject}, compact for small objects.
+ *
+ * <p>
+ * Up to {@link #THRESHOLD} members, keys and values are stored interleaved in a single array, and
+ * looking up a key scans the keys (which, being mostly canonical instances, are usually matched by
+ * identity). Thus a small object takes two allocations, instead of the table, the linked entries
+ * and the nodes of a {@link LinkedHashMap}. Once the map grows beyond the threshold, its members
+ * are moved to a {@code LinkedHashMap}, which backs the map from then on.
+ *
+ * <p>
+ * Neither {@code null} keys nor {@code null} values are permitted.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class CompactJsonMap extends AbstractMap<String, JsonValue> {
+
+  /**
+   * The largest number of members stored in the compact form.
+   */
+  public static final int THRESHOLD = 8;
+
+  private static final Object[] EMPTY = new Object[0];
+
+  private Object[]                        members = EMPTY;
+  private int                             size;
+  private int                             modCount;
+  private LinkedHashMap<String, JsonValue> hashed;
+
+  public CompactJsonMap() {}
+
+  public CompactJsonMap(Map<String, ? extends JsonValue> m) {
+    this.putAll(m);
+  }
+
+  /**
+   * Returns the index of the key in the members array, or {@code -1} if it is not present.
+   */
+  private int indexOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+    final int end = size << 1;
+    for (int i = 0; i < end; i += 2) {
+      // canonical keys are matched by identity, before their contents are compared:
+      if (key.equals(members[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return (hashed == null) ? size : hashed.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (hashed == null) ? this.indexOf(key) >= 0 : hashed.containsKey(key);
+  }
+
+  @Override
+  public JsonValue get(Object key) {
+    if (hashed != null) {
+      return hashed.get(key);
+    }
+    final int i = this.indexOf(key);
+    return (i < 0) ? null : (JsonValue) members[i + 1];
+  }
+
+  @Override
+  public JsonValue put(String key, JsonValue value) {
+    return this.put(key, value, false);
+  }
+
+  @Override
+  public JsonValue putIfAbsent(String key, JsonValue value) {
+    return this.put(key, value, true);
+  }
+
+  private JsonValue put(String key, JsonValue value, boolean onlyIfAbsent) {
+    Objects.requireNonNull(key);
+    Objects.requireNonNull(value);
+    if (hashed != null) {
+      return onlyIfAbsent ? hashed.putIfAbsent(key, value) : hashed.put(key, value);
+    }
+    final int i = this.indexOf(key);
+    if (i >= 0) {
+      final JsonValue previous = (JsonValue) members[i + 1];
+      if (!onlyIfAbsent) {
+        members[i + 1] = value;
+      }
+      return previous;
+    }
+    modCount++;
+    if (size == THRESHOLD) {
+      hashed = new LinkedHashMap<>();
+      for (int j = 0; j < size << 1; j += 2) {
+        hashed.put((String) members[j], (JsonValue) members[j + 1]);
+      }
+      hashed.put(key, value);
+      members = EMPTY;
+      size = 0;
+      return null;
+    }
+    final int end = size << 1;
+    if (end == members.length) {
+      members = Arrays.copyOf(members, (end == 0) ? 8 : end * 2);
+    }
+    members[end] = key;
+    members[end + 1] = value;
+    size++;
+    return null;
+  }
+
+  @Override
+  public JsonValue remove(Object key) {
+    if (hashed != null) {
+      return hashed.remove(key);
+    }
+    final int i = this.indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+    final JsonValue previous = (JsonValue) members[i + 1];
+    this.removeAt(i);
+    return previous;
+  }
+
+  private void removeAt(int i) {
+    modCount++;
+    final int end = size << 1;
+    System.arraycopy(members, i + 2, members, i, end - i - 2);
+    members[end - 2] = null;
+    members[end - 1] = null;
+    size--;
+  }
+
+  @Override
+  public void clear() {
+    modCount++;
+    hashed = null;
+    members = EMPTY;
+    size = 0;
+  }
+
+  @Override
+  public Set<Entry<String, JsonValue>> entrySet() {
+    return new EntrySet();
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<String, JsonValue>> {
+
+    @Override
+    public int size() {
+      return CompactJsonMap.this.size();
+    }
+
+    @Override
+    public Iterator<Entry<String, JsonValue>> iterator() {
+      if (hashed != null) {
+        return hashed.entrySet().iterator();
+      }
+      // once a put moves the members into the hashed form, the next call to next() fails through
+      // the modification count:
+      return new Iterator<>() {
+
+        private int next;
+        private int last             = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+          return next < size << 1;
+        }
+
+        @Override
+        public Entry<String, JsonValue> next() {
+          if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+          }
+          if (!this.hasNext()) {
+            throw new NoSuchElementException();
+          }
+          last = next;
+          next += 2;
+          return new Member(last);
+        }
+
+        @Override
+        public void remove() {
+          if (last < 0) {
+            throw new IllegalStateException();
+          }
+          if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+          }
+          CompactJsonMap.this.removeAt(last);
+          next = last;
+          last = -1;
+          expectedModCount = modCount;
+        }
+
+      };
+    }
+
+  }
+
+  /**
+   * A member of the compact form, writing its value through to the map.
+   */
+  private final class Member implements Entry<String, JsonValue> {
+
+    private final int index;
+
+    private Member(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getKey() {
+      return (String) members[index];
+    }
+
+    @Override
+    public JsonValue getValue() {
+      return (JsonValue) members[index + 1];
+    }
+
+    @Override
+    public JsonValue setValue(JsonValue value) {
+      final JsonValue previous = this.getValue();
+      members[index + 1] = Objects.requireNonNull(value);
+      return previous;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Entry<?, ?> e
+             && this.getKey().equals(e.getKey())
+             && this.getValue().equals(e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return this.getKey().hashCode() ^ this.getValue().hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return this.getKey() + "=" + this.getValue();
+    }
+
+  }
+
+}
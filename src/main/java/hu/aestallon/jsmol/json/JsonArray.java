@@ -15,13 +15,14 @@
  */
 package hu.aestallon.jsmol.json;
 
+import hu.aestallon.jsmol.writer.JsonWriter;
+
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
 import java.util.stream.Stream;
 
 public final class JsonArray
@@ -32,9 +33,7 @@ public final class JsonArray
 
   @Override
   public String toString() {
-    return value().stream()
-        .map(Objects::toString)
-        .collect(Collectors.joining(",", "[", "]"));
+    return JsonWriter.toJson(this);
   }
 
   @Override
@@ -84,7 +83,10 @@ public final class JsonArray
 
   @Override
   public boolean containsAll(Collection<?> c) {
-    return new HashSet<>(super.value()).containsAll(c);
+    // hashing the elements only pays off if they are looked up more than a few times:
+    return (c.size() <= 4)
+        ? super.value().containsAll(c)
+        : new HashSet<>(super.value()).containsAll(c);
   }
 
   @Override
@@ -117,6 +119,80 @@ public final class JsonArray
     return super.value().get(index);
   }
 
+  /**
+   * Returns the number at the provided index.
+   *
+   * @throws IndexOutOfBoundsException if the index is out of range
+   * @throws NoSuchElementException if the element at the index is not a number
+   */
+  public JsonNumber getNumber(int index) {
+    if (this.get(index) instanceof JsonNumber n) {
+      return n;
+    }
+    throw new NoSuchElementException("no number at index: " + index);
+  }
+
+  /**
+   * Returns the number at the provided index as a {@code long}, without boxing.
+   *
+   * @see #getNumber(int)
+   * @see JsonNumber#longValue()
+   */
+  public long getLong(int index) {
+    return this.getNumber(index).longValue();
+  }
+
+  /**
+   * Returns the number at the provided index as a {@code double}, without boxing.
+   *
+   * @see #getNumber(int)
+   * @see JsonNumber#doubleValue()
+   */
+  public double getDouble(int index) {
+    return this.getNumber(index).doubleValue();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return super.value() instanceof PersistentJsonList l && l.isFrozen();
+  }
+
+  @Override
+  public JsonArray freeze() {
+    if (this.isFrozen()) {
+      return this;
+    }
+    PersistentJsonList frozen = PersistentJsonList.empty();
+    for (final JsonValue e : super.value()) {
+      frozen = frozen.with(e.freeze());
+    }
+    return new JsonArray(frozen);
+  }
+
+  /**
+   * Returns a copy of this array with the element at the provided index replaced. This array is
+   * left intact.
+   *
+   * <p>
+   * The copy is backed by a {@link PersistentJsonList}, thus it shares every unchanged element
+   * with this array. Once an array is backed by a persistent list (the first copy made of a parsed
+   * array converts its elements), further copies cost {@code O(log n)}.
+   *
+   * @throws IndexOutOfBoundsException if the index is out of range
+   */
+  public JsonArray withIndex(int index, JsonValue value) {
+    return new JsonArray(PersistentJsonList.of(super.value()).withIndex(index, value));
+  }
+
+  /**
+   * Returns a copy of this array with the provided element appended. This array is left intact.
+   *
+   * @see #withIndex(int, JsonValue)
+   */
+  public JsonArray with(JsonValue value) {
+    return new JsonArray(PersistentJsonList.of(super.value()).with(value));
+  }
+
   @Override
   public JsonValue set(int index, JsonValue element) {
     return super.value().set(index, element);
@@ -15,11 +15,173 @@
  */
 package hu.aestallon.jsmol.json;
 
+import hu.aestallon.jsmol.writer.JsonWriter;
+
+import java.util.Objects;
+
+/**
+ * A {@code JSON} number.
+ *
+ * <p>
+ * Integers within the range of {@code long} and {@code double}s (the vast majority of the numbers
+ * of a document) are stored inline, as primitives: no boxed {@link Number} is held, and the typed
+ * accessors ({@link #isIntegral()}, {@link #longValue()}, {@link #doubleValue()}, ...) read them
+ * without allocating. Any other {@code Number} (such as the {@code BigInteger}s and
+ * {@code BigDecimal}s of numbers too large or too precise for the primitives) is wrapped as it is,
+ * preserving its exact value.
+ *
+ * <p>
+ * Numbers are equal if they hold the same value in the same representation: {@code 1} and
+ * {@code 1.0} are different, but numbers made of {@code Integer}s and {@code Long}s of the same
+ * value are equal, as both are stored as a {@code long}.
+ *
+ * @author Szabolcs Bazil Papp
+ */
 public final class JsonNumber extends WrappedValue<Number> {
-  public JsonNumber(Number n) {super(n);}
+
+  // the kinds of the numbers:
+  private static final byte LONG   = 0;
+  private static final byte INT    = 1;
+  private static final byte DOUBLE = 2;
+  private static final byte BOXED  = 3;
+
+  private final byte   kind;
+  /**
+   * The value of an inline {@code long}, or the bits of an inline {@code double}.
+   */
+  private final long   bits;
+  /**
+   * The number wrapped as it is, if it is not stored inline.
+   */
+  private final Number boxed;
+
+  public JsonNumber(long l) {
+    this.kind = LONG;
+    this.bits = l;
+    this.boxed = null;
+  }
+
+  public JsonNumber(double d) {
+    this.kind = DOUBLE;
+    this.bits = Double.doubleToLongBits(d);
+    this.boxed = null;
+  }
+
+  public JsonNumber(Number n) {
+    this.kind = kindOf(n);
+    this.bits = switch (kind) {
+      case LONG, INT -> n.longValue();
+      case DOUBLE -> Double.doubleToLongBits(n.doubleValue());
+      default -> 0L;
+    };
+    this.boxed = (kind == BOXED) ? n : null;
+  }
+
+  private static byte kindOf(Number n) {
+    if (n instanceof Long) {
+      return LONG;
+    }
+    if (n instanceof Integer) {
+      // remembered, so that the value is boxed as it was wrapped:
+      return INT;
+    }
+    if (n instanceof Double) {
+      return DOUBLE;
+    }
+    Objects.requireNonNull(n);
+    return BOXED;
+  }
+
+  /**
+   * Returns whether this number is an integer stored as a {@code long}, thus {@link #longValue()}
+   * returns its exact value.
+   */
+  public boolean isIntegral() {
+    return kind == LONG || kind == INT;
+  }
+
+  /**
+   * Returns whether this number is stored as a {@code double}, thus {@link #doubleValue()} returns
+   * its exact value.
+   */
+  public boolean isDouble() {
+    return kind == DOUBLE;
+  }
+
+  public long longValue() {
+    return switch (kind) {
+      case LONG, INT -> bits;
+      case DOUBLE -> (long) Double.longBitsToDouble(bits);
+      default -> boxed.longValue();
+    };
+  }
+
+  public int intValue() {
+    return switch (kind) {
+      case LONG, INT -> (int) bits;
+      case DOUBLE -> (int) Double.longBitsToDouble(bits);
+      default -> boxed.intValue();
+    };
+  }
+
+  public double doubleValue() {
+    return switch (kind) {
+      case LONG, INT -> (double) bits;
+      case DOUBLE -> Double.longBitsToDouble(bits);
+      default -> boxed.doubleValue();
+    };
+  }
+
+  public float floatValue() {
+    return switch (kind) {
+      case LONG, INT -> (float) bits;
+      case DOUBLE -> (float) Double.longBitsToDouble(bits);
+      default -> boxed.floatValue();
+    };
+  }
+
+  /**
+   * Returns the value of this number as a {@code Number}, boxing it if it is stored inline.
+   */
+  @Override
+  public Number value() {
+    return switch (kind) {
+      case LONG -> bits;
+      case INT -> (int) bits;
+      case DOUBLE -> Double.longBitsToDouble(bits);
+      default -> boxed;
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {return true;}
+    if (!(o instanceof JsonNumber that)) {return false;}
+    if (this.isIntegral()) {
+      return that.isIntegral() && this.bits == that.bits;
+    }
+    return (kind == DOUBLE)
+        ? that.kind == DOUBLE && this.bits == that.bits
+        : kind == that.kind && boxed.equals(that.boxed);
+  }
+
+  @Override
+  public int hashCode() {
+    // consistent with the hash codes of the boxed values:
+    return (kind == BOXED) ? boxed.hashCode() : Long.hashCode(bits);
+  }
 
   @Override
   public String toString() {
-    return value().toString();
+    if (kind == LONG || kind == INT) {
+      return Long.toString(bits);
+    }
+    if (kind == DOUBLE) {
+      final double d = Double.longBitsToDouble(bits);
+      // in the shortest form reading back the same, as the writer writes it:
+      return Double.isFinite(d) ? JsonWriter.toJson(this) : Double.toString(d);
+    }
+    return boxed.toString();
   }
+
 }
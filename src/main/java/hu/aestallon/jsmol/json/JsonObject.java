@@ -16,12 +16,13 @@
 package hu.aestallon.jsmol.json;
 
 import hu.aestallon.jsmol.util.Pair;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public final class JsonObject
@@ -34,13 +35,7 @@ public final class JsonObject
 
   @Override
   public String toString() {
-    return value().entrySet().stream()
-        .map(e -> new StringBuilder()
-            .append("\"")
-            .append(e.getKey())
-            .append("\":")
-            .append(e.getValue()))
-        .collect(Collectors.joining(",", "{", "}"));
+    return JsonWriter.toJson(this);
   }
 
   @Override
@@ -73,6 +68,78 @@ public final class JsonObject
     return super.value().get(key);
   }
 
+  /**
+   * Returns the number under the provided key.
+   *
+   * @throws NoSuchElementException if there is no number under the key
+   */
+  public JsonNumber getNumber(String key) {
+    if (this.get(key) instanceof JsonNumber n) {
+      return n;
+    }
+    throw new NoSuchElementException("no number under key: " + key);
+  }
+
+  /**
+   * Returns the number under the provided key as a {@code long}, without boxing.
+   *
+   * @throws NoSuchElementException if there is no number under the key
+   * @see JsonNumber#longValue()
+   */
+  public long getLong(String key) {
+    return this.getNumber(key).longValue();
+  }
+
+  /**
+   * Returns the number under the provided key as a {@code double}, without boxing.
+   *
+   * @throws NoSuchElementException if there is no number under the key
+   * @see JsonNumber#doubleValue()
+   */
+  public double getDouble(String key) {
+    return this.getNumber(key).doubleValue();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return super.value() instanceof PersistentJsonMap m && m.isFrozen();
+  }
+
+  @Override
+  public JsonObject freeze() {
+    if (this.isFrozen()) {
+      return this;
+    }
+    PersistentJsonMap frozen = PersistentJsonMap.empty();
+    for (final Entry<String, JsonValue> e : super.value().entrySet()) {
+      frozen = frozen.with(e.getKey(), e.getValue().freeze());
+    }
+    return new JsonObject(frozen);
+  }
+
+  /**
+   * Returns a copy of this object with the provided member: either with the value of the member
+   * with the key replaced, or with the member added as the last one. This object is left intact.
+   *
+   * <p>
+   * The copy is backed by a {@link PersistentJsonMap}, thus it shares every unchanged member (and
+   * all the values) with this object. Once an object is backed by a persistent map (the first copy
+   * made of a parsed object converts its members), further copies cost {@code O(log n)}.
+   */
+  public JsonObject with(String key, JsonValue value) {
+    return new JsonObject(PersistentJsonMap.of(super.value()).with(key, value));
+  }
+
+  /**
+   * Returns a copy of this object without the member with the provided key. This object is left
+   * intact.
+   *
+   * @see #with(String, JsonValue)
+   */
+  public JsonObject without(String key) {
+    return new JsonObject(PersistentJsonMap.of(super.value()).without(key));
+  }
+
   @Override
   public JsonValue put(String key, JsonValue value) {
     return super.value().put(key, value);
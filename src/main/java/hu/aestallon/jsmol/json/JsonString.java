@@ -15,12 +15,14 @@
  */
 package hu.aestallon.jsmol.json;
 
+import hu.aestallon.jsmol.writer.JsonWriter;
+
 public final class JsonString extends WrappedValue<String> {
   public JsonString(String s) {super(s);}
 
   @Override
   public String toString() {
-    return "\"%s\"".formatted(value());
+    return JsonWriter.toJson(this);
   }
 
 }
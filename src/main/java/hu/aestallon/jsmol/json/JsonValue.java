@@ -18,6 +18,31 @@ package hu.aestallon.jsmol.json;
 /**
  * Marker interface for value types interpreted in JavaScript Object Notation (JSON).
  *
+ * <p>
+ * Primitive values are immutable, while objects and arrays are as mutable as the maps and lists
+ * backing them. A value is <em>frozen</em> if it is immutable all the way down: frozen objects and
+ * arrays compute their (deep) hash code once, and tell unequal values apart by their hash codes
+ * straight away, thus comparing and deduplicating them is cheap.
+ *
  * @author Szabolcs Bazil Papp
  */
-public sealed interface JsonValue permits WrappedValue, JsonNull {}
+public sealed interface JsonValue permits WrappedValue, JsonNull {
+
+  /**
+   * Returns whether this value and all the values it contains are immutable.
+   */
+  default boolean isFrozen() {
+    return true;
+  }
+
+  /**
+   * Returns a frozen copy of this value, or the value itself if it is already frozen.
+   *
+   * @see PersistentJsonMap
+   * @see PersistentJsonList
+   */
+  default JsonValue freeze() {
+    return this;
+  }
+
+}
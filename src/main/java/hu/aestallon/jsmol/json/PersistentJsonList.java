@@ -0,0 +1,139 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of the elements of a {@link JsonArray}, with cheap updated copies.
+ *
+ * <p>
+ * The elements are held in a radix-balanced trie of 32-wide nodes: reading an element, replacing
+ * one ({@link #withIndex(int, JsonValue)}) or appending one ({@link #with(JsonValue)}) takes at
+ * most {@code log32(n)} steps, and the updated list shares every node but the ones on the path to
+ * the change with the original. Being immutable, lists can be shared across threads freely.
+ *
+ * <p>
+ * A list of frozen elements is {@linkplain JsonValue#isFrozen() frozen} itself: its hash code is
+ * computed once, and lists with different hash codes are told unequal without comparing their
+ * elements.
+ *
+ * <p>
+ * The mutators inherited from {@link List} throw {@link UnsupportedOperationException}.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class PersistentJsonList extends AbstractList<JsonValue> implements RandomAccess {
+
+  private static final PersistentJsonList EMPTY =
+      new PersistentJsonList(RadixVector.empty(), true);
+
+  private final RadixVector<JsonValue> elements;
+  private final boolean                frozen;
+  private       int                    hash;
+
+  private PersistentJsonList(RadixVector<JsonValue> elements, boolean frozen) {
+    this.elements = elements;
+    this.frozen = frozen;
+  }
+
+  public static PersistentJsonList empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a persistent list of the provided elements, or the list itself if it is already
+   * persistent.
+   */
+  public static PersistentJsonList of(List<? extends JsonValue> l) {
+    if (l instanceof PersistentJsonList p) {
+      return p;
+    }
+    RadixVector<JsonValue> elements = RadixVector.empty();
+    boolean frozen = true;
+    for (final JsonValue e : l) {
+      elements = elements.append(Objects.requireNonNull(e));
+      frozen &= e.isFrozen();
+    }
+    return new PersistentJsonList(elements, frozen);
+  }
+
+  @Override
+  public JsonValue get(int index) {
+    return elements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return elements.size();
+  }
+
+  /**
+   * Returns a list with the element at the provided index replaced.
+   *
+   * @throws IndexOutOfBoundsException if the index is out of range
+   */
+  public PersistentJsonList withIndex(int index, JsonValue value) {
+    // replacing the only unfrozen element would make the list frozen, but finding out is not cheap:
+    return new PersistentJsonList(
+        elements.set(index, Objects.requireNonNull(value)),
+        frozen && value.isFrozen());
+  }
+
+  /**
+   * Returns a list with the provided element appended.
+   */
+  public PersistentJsonList with(JsonValue value) {
+    return new PersistentJsonList(
+        elements.append(Objects.requireNonNull(value)),
+        frozen && value.isFrozen());
+  }
+
+  /**
+   * Returns whether all the elements of this list are frozen.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public int hashCode() {
+    if (!frozen) {
+      return super.hashCode();
+    }
+    int h = hash;
+    if (h == 0) {
+      hash = h = super.hashCode();
+    }
+    return h;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof PersistentJsonList that && frozen && that.frozen
+        && (this.size() != that.size() || this.hashCode() != that.hashCode())) {
+      return false;
+    }
+    return super.equals(o);
+  }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable, insertion-ordered map of the members of a {@link JsonObject}, with cheap updated
+ * copies.
+ *
+ * <p>
+ * The members are held in a {@link RadixVector} in the order of their insertion, and a hash array
+ * mapped trie (HAMT) maps every key to the position of its member in the vector. Thus looking up a
+ * key, replacing the value of a member or adding a new one ({@link #with(String, JsonValue)}) and
+ * removing one ({@link #without(String)}) all take at most {@code log32(n)} steps, and the updated
+ * map shares every node but the ones on the paths to the change with the original. Removed members
+ * leave a gap in the vector, which is closed once the gaps outnumber the members.
+ *
+ * <p>
+ * A map of frozen values is {@linkplain JsonValue#isFrozen() frozen} itself: its hash code is
+ * computed once, and maps with different hash codes are told unequal without comparing their
+ * members.
+ *
+ * <p>
+ * The mutators inherited from {@link Map} throw {@link UnsupportedOperationException}.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class PersistentJsonMap extends AbstractMap<String, JsonValue> {
+
+  private static final PersistentJsonMap EMPTY =
+      new PersistentJsonMap(Node.EMPTY, RadixVector.empty(), 0, true);
+
+  private final Node                                      positions;
+  private final RadixVector<Map.Entry<String, JsonValue>> members;
+  private final int                                       size;
+  private final boolean                                   frozen;
+  private       int                                       hash;
+
+  private PersistentJsonMap(Node positions, RadixVector<Map.Entry<String, JsonValue>> members,
+                            int size, boolean frozen) {
+    this.positions = positions;
+    this.members = members;
+    this.size = size;
+    this.frozen = frozen;
+  }
+
+  public static PersistentJsonMap empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a persistent map of the provided members, or the map itself if it is already
+   * persistent.
+   */
+  public static PersistentJsonMap of(Map<String, ? extends JsonValue> m) {
+    if (m instanceof PersistentJsonMap p) {
+      return p;
+    }
+    PersistentJsonMap map = EMPTY;
+    for (final Map.Entry<String, ? extends JsonValue> e : m.entrySet()) {
+      map = map.with(e.getKey(), e.getValue());
+    }
+    return map;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof String s && positions.find(s, hash(s), 0) >= 0;
+  }
+
+  @Override
+  public JsonValue get(Object key) {
+    if (!(key instanceof String s)) {
+      return null;
+    }
+    final int position = positions.find(s, hash(s), 0);
+    return (position < 0) ? null : members.get(position).getValue();
+  }
+
+  /**
+   * Returns a map with the provided member: either with the value of the member with the key
+   * replaced (keeping its position), or with the member added as the last one.
+   */
+  public PersistentJsonMap with(String key, JsonValue value) {
+    final Map.Entry<String, JsonValue> member =
+        new SimpleImmutableEntry<>(Objects.requireNonNull(key), Objects.requireNonNull(value));
+    final int hash = hash(key);
+    final int position = positions.find(key, hash, 0);
+    // replacing the only unfrozen value would make the map frozen, but finding out is not cheap:
+    final boolean frozen = this.frozen && value.isFrozen();
+    if (position >= 0) {
+      return new PersistentJsonMap(positions, members.set(position, member), size, frozen);
+    }
+    return new PersistentJsonMap(
+        positions.put(key, hash, 0, members.size()),
+        members.append(member),
+        size + 1,
+        frozen);
+  }
+
+  /**
+   * Returns a map without the member with the provided key.
+   */
+  public PersistentJsonMap without(String key) {
+    final int hash = hash(key);
+    final int position = positions.find(key, hash, 0);
+    if (position < 0) {
+      return this;
+    }
+    final PersistentJsonMap map = new PersistentJsonMap(
+        positions.remove(key, hash, 0),
+        members.set(position, null),
+        size - 1,
+        frozen);
+    // gaps are closed by rebuilding, which is amortised by the removals preceding it:
+    return (members.size() > 2 * map.size + 32) ? EMPTY.withAll(map) : map;
+  }
+
+  private PersistentJsonMap withAll(PersistentJsonMap m) {
+    PersistentJsonMap map = this;
+    for (final Map.Entry<String, JsonValue> e : m.entrySet()) {
+      map = map.with(e.getKey(), e.getValue());
+    }
+    return map;
+  }
+
+  /**
+   * Returns whether all the values of this map are frozen.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  @Override
+  public int hashCode() {
+    if (!frozen) {
+      return super.hashCode();
+    }
+    int h = hash;
+    if (h == 0) {
+      hash = h = super.hashCode();
+    }
+    return h;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof PersistentJsonMap that && frozen && that.frozen
+        && (this.size != that.size || this.hashCode() != that.hashCode())) {
+      return false;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public Set<Entry<String, JsonValue>> entrySet() {
+    return new AbstractSet<>() {
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public Iterator<Entry<String, JsonValue>> iterator() {
+        return new Iterator<>() {
+
+          private int next = this.skipGaps(0);
+
+          private int skipGaps(int from) {
+            int i = from;
+            while (i < members.size() && members.get(i) == null) {
+              i++;
+            }
+            return i;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < members.size();
+          }
+
+          @Override
+          public Entry<String, JsonValue> next() {
+            if (!this.hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final Entry<String, JsonValue> member = members.get(next);
+            next = this.skipGaps(next + 1);
+            return member;
+          }
+
+        };
+      }
+
+    };
+  }
+
+  private static int hash(String key) {
+    final int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * A node of the trie mapping keys to positions.
+   *
+   * <p>
+   * A node consumes 5 bits of the hash of the keys: the bitmap tells which of the 32 possible
+   * values are present, and the slots hold a pair for each (in the order of the values): either a
+   * key and its position, or {@code null} and a child node for the keys sharing the value. Below
+   * the level where the hash is exhausted, nodes hold colliding keys, in no particular order.
+   */
+  private static final class Node {
+
+    private static final int  BITS            = 5;
+    private static final int  COLLISION_SHIFT = 35;
+    private static final Node EMPTY           = new Node(0, new Object[0]);
+
+    private final int      bitmap;
+    private final Object[] slots;
+
+    private Node(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & 31);
+    }
+
+    private int slotOf(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1)) << 1;
+    }
+
+    /**
+     * Returns the position of the key, or {@code -1} if it is not present.
+     */
+    int find(String key, int hash, int shift) {
+      Node node = this;
+      int level = shift;
+      while (level < COLLISION_SHIFT) {
+        final int bit = bit(hash, level);
+        if ((node.bitmap & bit) == 0) {
+          return -1;
+        }
+        final int i = node.slotOf(bit);
+        final Object k = node.slots[i];
+        if (k == null) {
+          node = (Node) node.slots[i + 1];
+          level += BITS;
+        } else {
+          return key.equals(k) ? (Integer) node.slots[i + 1] : -1;
+        }
+      }
+      for (int i = 0; i < node.slots.length; i += 2) {
+        if (key.equals(node.slots[i])) {
+          return (Integer) node.slots[i + 1];
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Returns a node with the key (known to be absent) mapped to the provided position.
+     */
+    Node put(String key, int hash, int shift, int position) {
+      if (shift >= COLLISION_SHIFT) {
+        final Object[] copy = Arrays.copyOf(slots, slots.length + 2);
+        copy[slots.length] = key;
+        copy[slots.length + 1] = position;
+        return new Node(0, copy);
+      }
+      final int bit = bit(hash, shift);
+      final int i = this.slotOf(bit);
+      if ((bitmap & bit) == 0) {
+        final Object[] copy = new Object[slots.length + 2];
+        System.arraycopy(slots, 0, copy, 0, i);
+        copy[i] = key;
+        copy[i + 1] = position;
+        System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+        return new Node(bitmap | bit, copy);
+      }
+      final Object k = slots[i];
+      final Node child = (k == null)
+          ? ((Node) slots[i + 1]).put(key, hash, shift + BITS, position)
+          // the present key is pushed down, alongside the new one:
+          : EMPTY
+              .put((String) k, hash((String) k), shift + BITS, (Integer) slots[i + 1])
+              .put(key, hash, shift + BITS, position);
+      final Object[] copy = slots.clone();
+      copy[i] = null;
+      copy[i + 1] = child;
+      return new Node(bitmap, copy);
+    }
+
+    /**
+     * Returns a node without the key (known to be present).
+     */
+    Node remove(String key, int hash, int shift) {
+      if (shift >= COLLISION_SHIFT) {
+        int i = 0;
+        while (!key.equals(slots[i])) {
+          i += 2;
+        }
+        return new Node(0, without(slots, i));
+      }
+      final int bit = bit(hash, shift);
+      final int i = this.slotOf(bit);
+      if (slots[i] != null) {
+        return new Node(bitmap ^ bit, without(slots, i));
+      }
+      final Node child = ((Node) slots[i + 1]).remove(key, hash, shift + BITS);
+      final Object[] copy = slots.clone();
+      if (child.slots.length == 2 && child.slots[0] != null) {
+        // a single key left below is pulled up in place of its node:
+        copy[i] = child.slots[0];
+        copy[i + 1] = child.slots[1];
+      } else {
+        copy[i + 1] = child;
+      }
+      return new Node(bitmap, copy);
+    }
+
+    private static Object[] without(Object[] slots, int i) {
+      final Object[] copy = new Object[slots.length - 2];
+      System.arraycopy(slots, 0, copy, 0, i);
+      System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+      return copy;
+    }
+
+  }
+
+}
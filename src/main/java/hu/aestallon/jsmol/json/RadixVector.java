@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable vector, updated by copying the path to the changed element only.
+ *
+ * <p>
+ * The elements are stored in a trie of 32-wide nodes, addressed by 5 bit digits of their index,
+ * except for the last (at most 32) elements, which are kept in a separate tail to make appending
+ * cheap. Reading or replacing an element takes at most {@code log32(n)} steps, and every update
+ * shares all but the nodes on the path to the change with the original.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class RadixVector<E> {
+
+  private static final int BITS  = 5;
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK  = WIDTH - 1;
+
+  private static final RadixVector<?> EMPTY =
+      new RadixVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+
+  private final int      size;
+  private final int      shift;
+  private final Object[] root;
+  private final Object[] tail;
+
+  private RadixVector(int size, int shift, Object[] root, Object[] tail) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+    this.tail = tail;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <E> RadixVector<E> empty() {
+    return (RadixVector<E>) EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the index of the first element held in the tail.
+   */
+  private int tailOffset() {
+    return (size < WIDTH) ? 0 : ((size - 1) >>> BITS) << BITS;
+  }
+
+  @SuppressWarnings("unchecked")
+  E get(int index) {
+    Objects.checkIndex(index, size);
+    return (E) this.leafOf(index)[index & MASK];
+  }
+
+  /**
+   * Returns the node holding the element at the provided index.
+   */
+  private Object[] leafOf(int index) {
+    if (index >= this.tailOffset()) {
+      return tail;
+    }
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  /**
+   * Returns a vector with the element at the provided index replaced.
+   */
+  RadixVector<E> set(int index, E e) {
+    Objects.checkIndex(index, size);
+    if (index >= this.tailOffset()) {
+      final Object[] newTail = tail.clone();
+      newTail[index & MASK] = e;
+      return new RadixVector<>(size, shift, root, newTail);
+    }
+    return new RadixVector<>(size, shift, set(shift, root, index, e), tail);
+  }
+
+  private static Object[] set(int level, Object[] node, int index, Object e) {
+    final Object[] copy = node.clone();
+    if (level == 0) {
+      copy[index & MASK] = e;
+    } else {
+      final int slot = (index >>> level) & MASK;
+      copy[slot] = set(level - BITS, (Object[]) node[slot], index, e);
+    }
+    return copy;
+  }
+
+  /**
+   * Returns a vector with the provided element appended.
+   */
+  RadixVector<E> append(E e) {
+    if (size - this.tailOffset() < WIDTH) {
+      final Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+      newTail[tail.length] = e;
+      return new RadixVector<>(size + 1, shift, root, newTail);
+    }
+    // the tail is full, it is pushed into the trie, which grows a level if it is full as well:
+    final Object[] newRoot;
+    int newShift = shift;
+    if ((size >>> BITS) > (1 << shift)) {
+      newRoot = new Object[WIDTH];
+      newRoot[0] = root;
+      newRoot[1] = newPath(shift, tail);
+      newShift += BITS;
+    } else {
+      newRoot = this.pushTail(shift, root);
+    }
+    return new RadixVector<>(size + 1, newShift, newRoot, new Object[] {e});
+  }
+
+  private Object[] pushTail(int level, Object[] parent) {
+    final int slot = ((size - 1) >>> level) & MASK;
+    final Object[] copy = parent.clone();
+    if (level == BITS) {
+      copy[slot] = tail;
+    } else {
+      final Object[] child = (Object[]) parent[slot];
+      copy[slot] = (child == null)
+          ? newPath(level - BITS, tail)
+          : this.pushTail(level - BITS, child);
+    }
+    return copy;
+  }
+
+  private static Object[] newPath(int level, Object[] leaf) {
+    if (level == 0) {
+      return leaf;
+    }
+    final Object[] node = new Object[WIDTH];
+    node[0] = newPath(level - BITS, leaf);
+    return node;
+  }
+
+}
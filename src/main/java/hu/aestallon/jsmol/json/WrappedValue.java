@@ -27,6 +27,14 @@ public sealed class WrappedValue<T>
     this.value = Objects.requireNonNull(value);
   }
 
+  /**
+   * For subclasses storing their value in a representation of their own: these must override
+   * {@link #value()}, {@link #equals(Object)} and {@link #hashCode()}.
+   */
+  protected WrappedValue() {
+    this.value = null;
+  }
+
   public T value() {return value;}
 
   @Override
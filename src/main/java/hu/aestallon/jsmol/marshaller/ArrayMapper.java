@@ -18,10 +18,15 @@ package hu.aestallon.jsmol.marshaller;
 import hu.aestallon.jsmol.json.JsonArray;
 import hu.aestallon.jsmol.json.JsonNull;
 import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.parser.JsonReader;
+import hu.aestallon.jsmol.parser.JsonToken;
 import hu.aestallon.jsmol.result.ExErr;
 import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -47,6 +52,19 @@ public class ArrayMapper<E> implements JsonTypeMapper<List<E>> {
         .map(JsonArray::new);
   }
 
+  @Override
+  public void write(List<E> es, JsonWriter writer) throws IOException {
+    if (es == null) {
+      writer.nullValue();
+      return;
+    }
+    writer.beginArray();
+    for (E e : es) {
+      typeMapper.write(e, writer);
+    }
+    writer.endArray();
+  }
+
   @Override
   public Result<List<E>> unmarshall(JsonValue json) {
     if (json instanceof JsonNull) {
@@ -59,4 +77,19 @@ public class ArrayMapper<E> implements JsonTypeMapper<List<E>> {
     }
     return new ExErr<>(new TypeConversionException(json.getClass(), List.class));
   }
+
+  @Override
+  public List<E> read(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    reader.beginArray();
+    final List<E> es = new ArrayList<>();
+    while (reader.hasNext()) {
+      es.add(typeMapper.read(reader));
+    }
+    reader.endArray();
+    return Collections.unmodifiableList(es);
+  }
 }
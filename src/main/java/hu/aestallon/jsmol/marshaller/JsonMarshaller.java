@@ -17,9 +17,26 @@ package hu.aestallon.jsmol.marshaller;
 
 import hu.aestallon.jsmol.json.JsonValue;
 import hu.aestallon.jsmol.result.Result;
+import hu.aestallon.jsmol.writer.JsonWriter;
+
+import java.io.IOException;
 
 public interface JsonMarshaller<T> {
 
   Result<JsonValue> marshall(T t);
 
+  /**
+   * Writes the provided object as the next value of the writer.
+   *
+   * <p>
+   * By default, the object is marshalled into a tree first, which is then written. Marshallers
+   * knowing the shape of their objects emit the tokens directly instead, so no intermediate tree
+   * is built.
+   *
+   * @throws IllegalStateException if the object cannot be marshalled
+   */
+  default void write(T t, JsonWriter writer) throws IOException {
+    writer.value(this.marshall(t).unwrap());
+  }
+
 }
@@ -15,8 +15,13 @@
  */
 package hu.aestallon.jsmol.marshaller;
 
+import hu.aestallon.jsmol.parser.JsonParseException;
+import hu.aestallon.jsmol.parser.JsonReader;
+import hu.aestallon.jsmol.parser.JsonToken;
 import hu.aestallon.jsmol.result.Result;
 
+import java.io.IOException;
+
 public interface JsonTypeMapperProvider {
 
   <T> Result<JsonTypeMapper<T>> provide(Class<T> type);
@@ -25,4 +30,26 @@ public interface JsonTypeMapperProvider {
 
   <T> void register(Class<T> type, JsonTypeMapper<T> typeMapper);
 
+  /**
+   * Reads the provided {@code UTF-8} encoded JSON text as an object of the provided type, in a
+   * single pass over its tokens, without building a tree of it.
+   */
+  default <T> Result<T> fromJson(byte[] json, Class<T> type) {
+    return this.provide(type).flatMap(mapper -> Result.of(() -> read(JsonReader.of(json), mapper)));
+  }
+
+  default <T> Result<T> fromJson(String json, Class<T> type) {
+    return this.provide(type).flatMap(mapper -> Result.of(() -> read(JsonReader.of(json), mapper)));
+  }
+
+  private static <T> T read(JsonReader reader, JsonUnmarshaller<T> unmarshaller)
+      throws IOException {
+    final T t = unmarshaller.read(reader);
+    final JsonToken token = reader.peek();
+    if (token != JsonToken.END_DOCUMENT) {
+      throw new JsonParseException("expected END_DOCUMENT but was " + token, reader.position());
+    }
+    return t;
+  }
+
 }
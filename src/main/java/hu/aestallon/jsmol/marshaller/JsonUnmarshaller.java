@@ -16,9 +16,28 @@
 package hu.aestallon.jsmol.marshaller;
 
 import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.parser.JsonReader;
 import hu.aestallon.jsmol.result.Result;
 
+import java.io.IOException;
+
 public interface JsonUnmarshaller<T> {
   Result<T> unmarshall(JsonValue json);
 
+  /**
+   * Reads the next value of the reader as an object.
+   *
+   * <p>
+   * By default, the value is read into a tree first, which is then unmarshalled. Unmarshallers
+   * knowing the shape of their objects consume the tokens directly instead, so no intermediate
+   * tree is built.
+   *
+   * @throws hu.aestallon.jsmol.parser.JsonParseException if the text is malformed, or its tokens
+   *                                                      do not fit the object
+   * @throws IllegalStateException                        if the value cannot be unmarshalled
+   */
+  default T read(JsonReader reader) throws IOException {
+    return this.unmarshall(reader.nextValue()).unwrap();
+  }
+
 }
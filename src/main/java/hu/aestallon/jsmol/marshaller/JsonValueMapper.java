@@ -27,7 +27,9 @@ import hu.aestallon.jsmol.result.ExErr;
 import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
 import hu.aestallon.jsmol.util.Pair;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -65,6 +67,29 @@ public class JsonValueMapper implements JsonTypeMapper<Object> {
         .map(JsonObject::new);
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public void write(Object o, JsonWriter writer) throws IOException {
+    switch (o) {
+      case null -> writer.nullValue();
+      case Number n -> writer.value(n);
+      case String s -> writer.value(s);
+      case Boolean b -> writer.value(b);
+      case List<?> l -> arrayMapper.write((List<Object>) l, writer);
+      case Map<?, ?> m -> {
+        writer.beginObject();
+        for (Map.Entry<?, ?> e : m.entrySet()) {
+          writer.name((String) e.getKey());
+          this.write(e.getValue(), writer);
+        }
+        writer.endObject();
+      }
+      // failing the same way as the default JsonMarshaller#write (unwrapping the marshalled tree):
+      default -> throw new IllegalStateException(
+          new TypeConversionException(o.getClass(), JsonValue.class));
+    }
+  }
+
   @Override
   public Result<Object> unmarshall(JsonValue json) {
     return switch (json) {
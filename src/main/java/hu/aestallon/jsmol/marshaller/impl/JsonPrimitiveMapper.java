@@ -23,60 +23,86 @@ import hu.aestallon.jsmol.json.JsonValue;
 import hu.aestallon.jsmol.json.WrappedValue;
 import hu.aestallon.jsmol.marshaller.JsonTypeMapper;
 import hu.aestallon.jsmol.marshaller.TypeConversionException;
+import hu.aestallon.jsmol.parser.JsonReader;
+import hu.aestallon.jsmol.parser.JsonToken;
 import hu.aestallon.jsmol.result.ExErr;
 import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
+import java.io.IOException;
 import java.util.function.Function;
 
 public final class JsonPrimitiveMapper<T, W extends WrappedValue<? super T>>
     implements JsonTypeMapper<T> {
 
+  /**
+   * Reads the next (non-null) value of a reader as a primitive.
+   */
+  @FunctionalInterface
+  interface TokenReader<T> {
+    T read(JsonReader reader) throws IOException;
+  }
+
   static final JsonPrimitiveMapper<String, JsonString> STRING_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonString::new,
           WrappedValue::value,
+          JsonReader::nextString,
           String.class, JsonString.class);
 
+  // integers are narrowed (never rejected) the same way, whether read from a tree or from tokens:
   static final JsonPrimitiveMapper<Integer, JsonNumber> INT_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonNumber::new,
-          n -> n.value().intValue(),
+          JsonNumber::intValue,
+          JsonReader::nextInt,
           Integer.class, JsonNumber.class);
 
   static final JsonPrimitiveMapper<Long, JsonNumber> LONG_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonNumber::new,
-          n -> n.value().longValue(),
+          JsonNumber::longValue,
+          JsonReader::nextLongNarrowed,
           Long.class, JsonNumber.class);
 
   static final JsonPrimitiveMapper<Float, JsonNumber> FLOAT_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonNumber::new,
-          n -> n.value().floatValue(),
+          JsonNumber::floatValue,
+          reader -> (float) reader.nextDouble(),
           Float.class, JsonNumber.class);
 
   static final JsonPrimitiveMapper<Double, JsonNumber> DOUBLE_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonNumber::new,
-          n -> n.value().doubleValue(),
+          JsonNumber::doubleValue,
+          JsonReader::nextDouble,
           Double.class, JsonNumber.class);
 
   static final JsonPrimitiveMapper<Boolean, JsonBoolean> BOOLEAN_MAPPER =
       new JsonPrimitiveMapper<>(
           JsonBoolean::new,
           WrappedValue::value,
+          JsonReader::nextBoolean,
           Boolean.class, JsonBoolean.class);
 
   private final Function<T, W> constructor;
   private final Function<W, T> extractor;
+  private final TokenReader<T> tokenReader;
   private final Class<T>       type;
   private final Class<W>       wrapperClass;
 
   public JsonPrimitiveMapper(Function<T, W> constructor, Function<W, T> extractor,
                              Class<T> type, Class<W> wrapperClass) {
+    this(constructor, extractor, null, type, wrapperClass);
+  }
+
+  JsonPrimitiveMapper(Function<T, W> constructor, Function<W, T> extractor,
+                      TokenReader<T> tokenReader, Class<T> type, Class<W> wrapperClass) {
     this.constructor = constructor;
     this.extractor = extractor;
+    this.tokenReader = tokenReader;
     this.type = type;
     this.wrapperClass = wrapperClass;
   }
@@ -88,6 +114,18 @@ public final class JsonPrimitiveMapper<T, W extends WrappedValue<? super T>>
         : new Ok<>(JsonNull.INSTANCE);
   }
 
+  @Override
+  public void write(T t, JsonWriter writer) throws IOException {
+    // the primitives are written as they are, without wrapping them first:
+    switch (t) {
+      case null -> writer.nullValue();
+      case String s -> writer.value(s);
+      case Number n -> writer.value(n);
+      case Boolean b -> writer.value(b);
+      default -> writer.value(constructor.apply(t));
+    }
+  }
+
   @Override
   public Result<T> unmarshall(JsonValue json) {
     if (json instanceof JsonNull) {
@@ -98,4 +136,16 @@ public final class JsonPrimitiveMapper<T, W extends WrappedValue<? super T>>
     }
     return new ExErr<>(new TypeConversionException(json.getClass(), type));
   }
+
+  @Override
+  public T read(JsonReader reader) throws IOException {
+    if (tokenReader == null) {
+      return JsonTypeMapper.super.read(reader);
+    }
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return tokenReader.read(reader);
+  }
 }
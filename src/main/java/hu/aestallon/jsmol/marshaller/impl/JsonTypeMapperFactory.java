@@ -23,10 +23,14 @@ import hu.aestallon.jsmol.marshaller.JsonTypeMapper;
 import hu.aestallon.jsmol.marshaller.JsonTypeMapperProvider;
 import hu.aestallon.jsmol.marshaller.JsonUnmarshaller;
 import hu.aestallon.jsmol.marshaller.TypeConversionException;
+import hu.aestallon.jsmol.parser.JsonReader;
+import hu.aestallon.jsmol.parser.JsonToken;
 import hu.aestallon.jsmol.result.ExErr;
 import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
@@ -35,7 +39,7 @@ import java.lang.reflect.Type;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.function.Function;
 
 abstract sealed class JsonTypeMapperFactory<T> permits JsonTypeMapperFactory.RecordMapperFactory {
 
@@ -72,10 +76,20 @@ abstract sealed class JsonTypeMapperFactory<T> permits JsonTypeMapperFactory.Rec
       return marshaller.marshall(t);
     }
 
+    @Override
+    public void write(T t, JsonWriter writer) throws IOException {
+      marshaller.write(t, writer);
+    }
+
     @Override
     public Result<T> unmarshall(JsonValue json) {
       return unmarshaller.unmarshall(json);
     }
+
+    @Override
+    public T read(JsonReader reader) throws IOException {
+      return unmarshaller.read(reader);
+    }
   }
 
   static final class RecordMapperFactory<R> extends JsonTypeMapperFactory<R> {
@@ -130,7 +144,7 @@ abstract sealed class JsonTypeMapperFactory<T> permits JsonTypeMapperFactory.Rec
                     componentName,
                     arrayMapper,
                     // TODO: Improve ObjectMapper#bindRaw to tolerate checked suppliers
-                    t -> Result.of(() -> componentAccessor.invoke(t)).unwrap(),
+                    accessor(componentAccessor),
                     (t, __) -> {}));
             // FIXME: we are technically allowed to do this, improve Result API to tolerate this
             //  usage:
@@ -144,7 +158,7 @@ abstract sealed class JsonTypeMapperFactory<T> permits JsonTypeMapperFactory.Rec
               .map(componentMapper -> marshaller.bindRaw(
                   componentName,
                   componentMapper,
-                  t -> Result.of(() -> componentAccessor.invoke(t)).unwrap(),
+                  accessor(componentAccessor),
                   (t, __) -> {}));
           if (bindAction.isErr()) {return (Result<JsonMarshaller<R>>) bindAction;}
         }
@@ -152,50 +166,116 @@ abstract sealed class JsonTypeMapperFactory<T> permits JsonTypeMapperFactory.Rec
       return Ok.of(marshaller);
     }
 
+    /**
+     * Returns the provided accessor as a function, which (being called for every component of
+     * every object written) rethrows reflective failures directly, instead of wrapping its results.
+     */
+    private static Function<Object, Object> accessor(Method accessor) {
+      return t -> {
+        try {
+          return accessor.invoke(t);
+        } catch (ReflectiveOperationException e) {
+          throw new IllegalStateException(e);
+        }
+      };
+    }
+
     private Result<JsonUnmarshaller<R>> createUnmarshaller() {
       return Result
           .of(() -> super.type.getDeclaredConstructor(this.componentsByName
               .values().stream()
               .map(RecordComponent::getType)
               .toArray(Class<?>[]::new)))
-          .map(this::createUnmarshaller);
+          .flatMap(constructor -> this.componentsByName.values().stream()
+              .map(this::componentUnmarshaller)
+              .collect(Result.toList())
+              .map(components -> new RecordUnmarshaller(constructor, components)));
     }
 
-    private JsonUnmarshaller<R> createUnmarshaller(Constructor<R> constructor) {
-      return json -> {
+    private Result<JsonUnmarshaller<?>> componentUnmarshaller(RecordComponent component) {
+      return (Objects.equals(List.class, component.getType()))
+          ? Result.of(component::getGenericType)
+              .map(ParameterizedType.class::cast)
+              .map(paramType -> paramType.getActualTypeArguments()[0])
+              .map(Type::getTypeName)
+              .map(Class::forName)
+              .flatMap(provider::provideList)
+              .map(JsonUnmarshaller.class::cast)
+          : provider.provide(component.getType())
+              .map(JsonUnmarshaller.class::cast);
+    }
+
+    /**
+     * Unmarshalls records through their canonical constructor.
+     *
+     * <p>
+     * When reading from a token stream, the arguments of the constructor are filled in as the
+     * members are read, and unknown members are skipped without being decoded: apart from the
+     * values of the components, the only thing allocated is the array of the arguments. A component
+     * given twice is rejected, just like a duplicate key is by the parser (but as unknown members
+     * are never decoded, their duplicates go unnoticed).
+     */
+    private final class RecordUnmarshaller implements JsonUnmarshaller<R> {
+
+      private final Constructor<R>        constructor;
+      private final String[]              names;
+      private final JsonUnmarshaller<?>[] components;
+
+      private RecordUnmarshaller(Constructor<R> constructor, List<JsonUnmarshaller<?>> components) {
+        this.constructor = constructor;
+        this.names = componentsByName.keySet().toArray(String[]::new);
+        this.components = components.toArray(JsonUnmarshaller<?>[]::new);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public Result<R> unmarshall(JsonValue json) {
         if (json instanceof JsonNull) {
           return Ok.of(null);
         }
         if (json instanceof JsonObject jsonObject) {
-          return this.componentsByName.entrySet().stream()
-              .map(e -> {
-                final String prop = e.getKey();
-                final Class<?> javaType = e.getValue().getType();
-                return (Result<?>) ((Objects.equals(List.class, javaType))
-                    ? Optional
-                        .ofNullable(jsonObject.value().get(prop))
-                        .map(jsonVal -> Result.of(() -> e.getValue().getGenericType())
-                            .map(ParameterizedType.class::cast)
-                            .map(paramType -> paramType.getActualTypeArguments()[0])
-                            .map(Type::getTypeName)
-                            .map(Class::forName)
-                            .flatMap(provider::provideList)
-                            .flatMap(mapper -> mapper.unmarshall(jsonVal))
-                            .map(List.class::cast))
-                        .orElse(Ok.of(null))
-                    : Optional
-                        .ofNullable(jsonObject.value().get(prop))
-                        .map(jsonVal -> provider
-                            .provide(javaType)
-                            .flatMap(mapper -> mapper.unmarshall(jsonVal)))
-                        .orElse(Ok.of(null)));
-              })
-              .collect(Result.toList())
-              .map(args -> args.toArray(Object[]::new))
-              .map(constructor::newInstance);
+          final Object[] args = new Object[names.length];
+          for (int i = 0; i < names.length; i++) {
+            final JsonValue value = jsonObject.value().get(names[i]);
+            if (value != null) {
+              final Result<?> arg = components[i].unmarshall(value);
+              if (arg.isErr()) {
+                return (Result<R>) arg;
+              }
+              args[i] = arg.unwrap();
+            }
+          }
+          return Result.of(() -> constructor.newInstance(args));
         }
-        return ExErr.of(new TypeConversionException(json.getClass(), super.type));
-      };
+        return ExErr.of(new TypeConversionException(json.getClass(), type));
+      }
+
+      @Override
+      public R read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          return null;
+        }
+        final Object[] args = new Object[names.length];
+        final SeenNames seen = new SeenNames(names);
+        reader.beginObject();
+        while (reader.hasNext()) {
+          final long offset = reader.position();
+          final int i = reader.selectName(names);
+          if (i < 0) {
+            reader.skipValue();
+            continue;
+          }
+          seen.mark(i, offset);
+          args[i] = components[i].read(reader);
+        }
+        reader.endObject();
+        try {
+          return constructor.newInstance(args);
+        } catch (ReflectiveOperationException e) {
+          throw new IllegalStateException(e);
+        }
+      }
     }
   }
 
@@ -22,12 +22,18 @@ import hu.aestallon.jsmol.marshaller.JsonMarshaller;
 import hu.aestallon.jsmol.marshaller.JsonTypeMapper;
 import hu.aestallon.jsmol.marshaller.JsonUnmarshaller;
 import hu.aestallon.jsmol.marshaller.TypeConversionException;
+import hu.aestallon.jsmol.parser.JsonReader;
+import hu.aestallon.jsmol.parser.JsonToken;
 import hu.aestallon.jsmol.result.ExErr;
 import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
 import hu.aestallon.jsmol.util.Pair;
+import hu.aestallon.jsmol.writer.JsonWriter;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -35,9 +41,29 @@ import java.util.function.Supplier;
 
 public class ObjectMapper<T> implements JsonTypeMapper<T> {
 
+  /**
+   * Writes a property of an object as the next value of a writer.
+   */
+  @FunctionalInterface
+  private interface PropertyWriter<T> {
+    void write(T t, JsonWriter writer) throws IOException;
+  }
+
+  /**
+   * Reads the next value of a reader into a property of an object.
+   */
+  @FunctionalInterface
+  private interface PropertyReader<T> {
+    void read(T t, JsonReader reader) throws IOException;
+  }
+
   private final Map<String, Function<T, Result<JsonValue>>> getters = new HashMap<>();
+  private final Map<String, PropertyWriter<T>>              writers = new LinkedHashMap<>();
   private final Map<String, BiConsumer<T, JsonValue>>       setters = new HashMap<>();
   private final Supplier<T>                                 typeConstructor;
+  // the names are kept apart from the readers, to be selected by the reader in place:
+  private       String[]                                    names   = new String[0];
+  private       PropertyReader<?>[]                         readers = new PropertyReader<?>[0];
 
   ObjectMapper(Supplier<T> typeConstructor) {this.typeConstructor = typeConstructor;}
 
@@ -53,12 +79,25 @@ public class ObjectMapper<T> implements JsonTypeMapper<T> {
                            JsonUnmarshaller<P> unmarshaller,
                            BiConsumer<T, P> setter) {
     this.getters.put(name, t -> marshaller.marshall(getter.apply(t)));
+    this.writers.put(name, (t, writer) -> marshaller.write(getter.apply(t), writer));
     this.setters.put(name, (t, json) -> unmarshaller
         .unmarshall(json)
         .ifOk(p -> setter.accept(t, p)));
+    this.bindReader(name, (t, reader) -> setter.accept(t, unmarshaller.read(reader)));
     return this;
   }
 
+  private void bindReader(String name, PropertyReader<T> reader) {
+    int i = Arrays.asList(names).indexOf(name);
+    if (i < 0) {
+      i = names.length;
+      names = Arrays.copyOf(names, i + 1);
+      readers = Arrays.copyOf(readers, i + 1);
+    }
+    names[i] = name;
+    readers[i] = reader;
+  }
+
   @SuppressWarnings("unchecked, rawtypes")
   ObjectMapper<T> bindRaw(String name, JsonTypeMapper typeMapper,
                           Function getter,
@@ -86,6 +125,20 @@ public class ObjectMapper<T> implements JsonTypeMapper<T> {
         .map(JsonObject::new);
   }
 
+  @Override
+  public void write(T t, JsonWriter writer) throws IOException {
+    if (t == null) {
+      writer.nullValue();
+      return;
+    }
+    writer.beginObject();
+    for (Map.Entry<String, PropertyWriter<T>> e : writers.entrySet()) {
+      writer.name(e.getKey());
+      e.getValue().write(t, writer);
+    }
+    writer.endObject();
+  }
+
   @Override
   public Result<T> unmarshall(JsonValue json) {
     if (json instanceof JsonNull) {
@@ -101,4 +154,28 @@ public class ObjectMapper<T> implements JsonTypeMapper<T> {
     return new ExErr<>(new TypeConversionException(json.getClass(), t.getClass()));
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public T read(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    reader.beginObject();
+    final T t = typeConstructor.get();
+    final SeenNames seen = new SeenNames(names);
+    while (reader.hasNext()) {
+      final long offset = reader.position();
+      final int i = reader.selectName(names);
+      if (i < 0) {
+        reader.skipValue();
+        continue;
+      }
+      seen.mark(i, offset);
+      ((PropertyReader<T>) readers[i]).read(t, reader);
+    }
+    reader.endObject();
+    return t;
+  }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.marshaller.impl;
+
+import hu.aestallon.jsmol.parser.JsonParseException;
+
+import java.util.BitSet;
+
+/**
+ * Keeps track of the names already read of an object, so that a member appearing twice is rejected
+ * when reading straight from the tokens, just like a {@code JsonParser} rejects duplicate keys.
+ *
+ * <p>
+ * The first 64 names are kept in a mask, the rest (if any) in a set.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class SeenNames {
+
+  private final String[] names;
+  private final BitSet   beyond;
+  private       long     seen;
+
+  SeenNames(String[] names) {
+    this.names = names;
+    this.beyond = (names.length > Long.SIZE) ? new BitSet() : null;
+  }
+
+  /**
+   * Marks the name of the given index as read.
+   *
+   * @param offset the offset of the member, to be reported if it is a duplicate
+   * @throws JsonParseException if the name has already been read
+   */
+  void mark(int i, long offset) {
+    if (i < Long.SIZE) {
+      if ((seen & 1L << i) != 0) {
+        throw duplicate(i, offset);
+      }
+      seen |= 1L << i;
+    } else {
+      if (beyond.get(i)) {
+        throw duplicate(i, offset);
+      }
+      beyond.set(i);
+    }
+  }
+
+  private JsonParseException duplicate(int i, long offset) {
+    return new JsonParseException("duplicate key: " + names[i], offset);
+  }
+
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans a {@code UTF-8} encoded JSON text without decoding it up front.
+ *
+ * <p>
+ * Structural characters are matched as raw bytes; only the contents of string tokens are decoded,
+ * exactly once, when the corresponding {@code String} is created. (This is safe, as in
+ * {@code UTF-8} every byte of a multibyte sequence is outside the {@code ASCII} range, thus it can
+ * never be mistaken for a quote or an escape character.)
+ *
+ * <p>
+ * The contents of string tokens are searched a word at a time: eight bytes are loaded at once, and
+ * checked for quotes, backslashes and control characters with a few bitwise operations (SWAR, SIMD
+ * within a register). Thus, long runs of plain text are skipped at a fraction of the cost of
+ * inspecting them byte by byte, and strings without escape sequences are decoded in a single bulk
+ * step.
+ *
+ * <p>
+ * The input is consumed as a sequence of {@link ByteBuffer} windows supplied by a
+ * {@link WindowSource}. Both heap and direct buffers are supported, and they are read through
+ * absolute indexing only: the position and limit of a caller supplied buffer are never modified.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class ByteScanner extends JsonScanner {
+
+  /**
+   * Supplies the consecutive windows of a byte input.
+   */
+  @FunctionalInterface
+  interface WindowSource {
+
+    /**
+     * Returns the next window of the input, readable between its position and limit, or
+     * {@code null} if the input is exhausted.
+     */
+    ByteBuffer next() throws IOException;
+
+  }
+
+  static final long MAPPED_WINDOW_SIZE = 1L << 30;
+
+  private static final WindowSource EXHAUSTED   = () -> null;
+  private static final ByteBuffer   EMPTY       = ByteBuffer.allocate(0);
+  private static final char         REPLACEMENT = '\uFFFD';
+
+  private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+  private static final long HIGH_BITS      = 0x8080808080808080L;
+  private static final long QUOTES         = 0x2222222222222222L;
+  private static final long BACKSLASHES    = 0x5C5C5C5C5C5C5C5CL;
+  private static final long CONTROL_BIAS   = 0x6060606060606060L;
+
+  private WindowSource source;
+  private ByteBuffer   buf;
+  private boolean      bigEndian;
+  private int          pos;
+  private int          limit;
+  private long         base;
+  private byte[]       scratch = new byte[0];
+  private int          scratchLength;
+  private int          tokenStart;
+  private int          tokenEnd;
+  private long         contentOffset;
+  private boolean      escapes;
+  private char[]       chars   = new char[0];
+
+  private final CharArrayView view = new CharArrayView();
+
+  ByteScanner(ByteBuffer buf) {
+    this(buf, buf.position());
+  }
+
+  /**
+   * Creates a scanner reading the provided buffer between its position and limit, reporting
+   * offsets from the given index of the buffer.
+   */
+  ByteScanner(ByteBuffer buf, int origin) {
+    this.source = EXHAUSTED;
+    this.buf = buf;
+    this.bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+    this.pos = buf.position();
+    this.limit = buf.limit();
+    this.base = -origin;
+  }
+
+  ByteScanner(byte[] bytes, int offset, int length) {
+    this(ByteBuffer.wrap(bytes, offset, length));
+  }
+
+  ByteScanner(WindowSource source) {
+    this(EMPTY);
+    this.source = source;
+  }
+
+  /**
+   * Creates a scanner reading the provided stream through a reusable window.
+   */
+  static ByteScanner of(InputStream in) {
+    final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    return new ByteScanner(() -> {
+      final int n = in.read(window.array(), 0, window.capacity());
+      return (n < 0) ? null : window.position(0).limit(n);
+    });
+  }
+
+  /**
+   * Creates a scanner reading the provided (blocking) channel through a reusable window.
+   */
+  static ByteScanner of(ReadableByteChannel channel) {
+    final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    return new ByteScanner(() -> {
+      window.clear();
+      return (channel.read(window) < 0) ? null : window.flip();
+    });
+  }
+
+  /**
+   * Creates a scanner reading the provided file through consecutive memory-mapped windows of
+   * (at most) the given size.
+   *
+   * <p>
+   * The pages of the file are read by the operating system on demand, straight into the page cache,
+   * thus no copying takes place in user space. As the windows are mapped one after the other,
+   * files beyond the {@code 2 GB} limit of a single mapping are supported as well.
+   */
+  static ByteScanner of(FileChannel channel, long windowSize) throws IOException {
+    final long size = channel.size();
+    return new ByteScanner(new WindowSource() {
+      private long offset = 0L;
+
+      @Override
+      public ByteBuffer next() throws IOException {
+        if (offset >= size) {
+          return null;
+        }
+        final long length = Math.min(windowSize, size - offset);
+        final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        offset += length;
+        return window;
+      }
+    });
+  }
+
+  @Override
+  long position() {
+    return base + pos;
+  }
+
+  /**
+   * Slides the window over the next chunk of the input.
+   *
+   * @return {@code true} if there is at least one byte available in the new window
+   */
+  private boolean fill() throws IOException {
+    final long end = base + limit;
+    ByteBuffer next;
+    do {
+      next = source.next();
+    } while (next != null && !next.hasRemaining());
+
+    if (next == null) {
+      source = EXHAUSTED;
+      buf = EMPTY;
+      pos = 0;
+      limit = 0;
+      base = end;
+      return false;
+    }
+    buf = next;
+    bigEndian = next.order() == ByteOrder.BIG_ENDIAN;
+    pos = next.position();
+    limit = next.limit();
+    base = end - pos;
+    return true;
+  }
+
+  @Override
+  int peek() throws IOException {
+    return (pos < limit || fill()) ? buf.get(pos) & 0xFF : EOF;
+  }
+
+  @Override
+  void advance() {
+    pos++;
+  }
+
+  @Override
+  int skipWhitespace() throws IOException {
+    while (pos < limit || fill()) {
+      final byte b = buf.get(pos);
+      if (isWhitespace(b)) {
+        pos++;
+      } else {
+        return b & 0xFF;
+      }
+    }
+    return EOF;
+  }
+
+  @Override
+  String readString() throws IOException {
+    final boolean spanning = this.scanString();
+    if (escapes) {
+      final int n = this.decodeChars(spanning);
+      return new String(chars, 0, n);
+    }
+    return spanning
+        ? new String(scratch, 0, scratchLength, StandardCharsets.UTF_8)
+        : decode(tokenStart, tokenEnd);
+  }
+
+  @Override
+  String readKey(JsonSymbolTable symbols) throws IOException {
+    final boolean spanning = this.scanString();
+    if (escapes) {
+      final int n = this.decodeChars(spanning);
+      return symbols.intern(view.set(chars, 0, n));
+    }
+    if (spanning) {
+      return symbols.intern(scratch, 0, scratchLength);
+    }
+    if (buf.hasArray()) {
+      return symbols.intern(
+          buf.array(),
+          buf.arrayOffset() + tokenStart,
+          buf.arrayOffset() + tokenEnd);
+    }
+    scratchLength = 0;
+    append(tokenStart, tokenEnd);
+    return symbols.intern(scratch, 0, scratchLength);
+  }
+
+  @Override
+  CharSequence readChars() throws IOException {
+    final int n = this.decodeChars(this.scanString());
+    return view.set(chars, 0, n);
+  }
+
+  /**
+   * Decodes the contents of the string token just scanned into the reusable char buffer.
+   *
+   * @param spanning whether the contents were collected in the scratch buffer
+   * @return the number of chars decoded
+   */
+  private int decodeChars(boolean spanning) {
+    final byte[] src;
+    final int from;
+    final int to;
+    if (spanning) {
+      src = scratch;
+      from = 0;
+      to = scratchLength;
+    } else if (buf.hasArray()) {
+      src = buf.array();
+      from = buf.arrayOffset() + tokenStart;
+      to = buf.arrayOffset() + tokenEnd;
+    } else {
+      scratchLength = 0;
+      append(tokenStart, tokenEnd);
+      src = scratch;
+      from = 0;
+      to = scratchLength;
+    }
+    // neither a UTF-8 sequence nor an escape sequence decodes to more chars than it has bytes:
+    if (chars.length < to - from) {
+      chars = new char[Math.max(chars.length * 2, to - from)];
+    }
+    if (!escapes) {
+      return decodeUtf8(src, from, to, chars, 0);
+    }
+    final int n = unescape(src, from, to, chars);
+    if (n < 0) {
+      throw invalidEscape(contentOffset + ~n);
+    }
+    return n;
+  }
+
+  /**
+   * Consumes a string token. If the token fits in the window, its contents are left in place
+   * between {@code tokenStart} and {@code tokenEnd}, otherwise they are collected in the scratch
+   * buffer. Whether the contents have any escape sequences is recorded in {@code escapes}.
+   *
+   * @return {@code true} if the contents were collected in the scratch buffer
+   */
+  private boolean scanString() throws IOException {
+    int start = ++pos;
+    boolean spanning = false;
+    contentOffset = base + start;
+    escapes = false;
+    scratchLength = 0;
+    while (true) {
+      while (pos + Long.BYTES <= limit) {
+        final long special = specials(buf.getLong(pos));
+        if (special != 0L) {
+          pos += indexOfFirst(special, bigEndian);
+          break;
+        }
+        pos += Long.BYTES;
+      }
+      if (pos >= limit) {
+        stash(start);
+        spanning = true;
+        start = pos;
+      }
+      final byte b = buf.get(pos);
+      if (b == '"') {
+        if (spanning) {
+          append(start, pos);
+        }
+        tokenStart = start;
+        tokenEnd = pos++;
+        return spanning;
+      }
+      if (b == '\\') {
+        escapes = true;
+        // an escape always spans the next byte, thus it cannot close the string:
+        if (++pos >= limit) {
+          stash(start);
+          spanning = true;
+          start = pos;
+        }
+      } else if (b >= 0 && b < 0x20) {
+        throw error("unescaped control character");
+      }
+      pos++;
+    }
+  }
+
+  /**
+   * Returns a mask with the high bit set in every byte of the provided word which is a quote, a
+   * backslash or a control character.
+   *
+   * <p>
+   * Every byte is tested on its own: the additions never carry across byte boundaries, thus (unlike
+   * with the well-known {@code (x - 0x01..) & ~x & 0x80..} test) the mask has no false positives,
+   * and the bytes may be inspected in either order.
+   */
+  static long specials(long word) {
+    final long quotes = word ^ QUOTES;
+    final long backslashes = word ^ BACKSLASHES;
+    final long plain = (((quotes & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | quotes)
+        & (((backslashes & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | backslashes)
+        & (((word & LOW_SEVEN_BITS) + CONTROL_BIAS) | word);
+    return ~plain & HIGH_BITS;
+  }
+
+  /**
+   * Returns the index of the first byte (in memory order) flagged in the provided mask of a word
+   * loaded in the given byte order.
+   */
+  static int indexOfFirst(long mask, boolean bigEndian) {
+    return (bigEndian ? Long.numberOfLeadingZeros(mask) : Long.numberOfTrailingZeros(mask)) >>> 3;
+  }
+
+  @Override
+  void skipString() throws IOException {
+    pos++;
+    while (true) {
+      if (pos >= limit && !fill()) {
+        throw error("unterminated string");
+      }
+      final byte b = buf.get(pos++);
+      if (b == '"') {
+        return;
+      }
+      if (b == '\\') {
+        if (pos >= limit && !fill()) {
+          throw error("unterminated string");
+        }
+        pos++;
+      }
+    }
+  }
+
+  @Override
+  void skipContainer() throws IOException {
+    int depth = 0;
+    do {
+      if (pos >= limit && !fill()) {
+        throw unexpected(EOF, "end of container");
+      }
+      final byte b = buf.get(pos);
+      if (b == '"') {
+        skipString();
+        continue;
+      }
+      if (b == '{' || b == '[') {
+        depth++;
+      } else if (b == '}' || b == ']') {
+        depth--;
+      }
+      pos++;
+    } while (depth > 0);
+  }
+
+  private String decode(int from, int to) {
+    if (buf.hasArray()) {
+      return new String(buf.array(), buf.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+    }
+    scratchLength = 0;
+    append(from, to);
+    return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Appends the part of the current string token visible in the window to the scratch buffer,
+   * and slides the window on, as the token continues beyond its end.
+   */
+  private void stash(int start) throws IOException {
+    append(start, pos);
+    if (!fill()) {
+      throw error("unterminated string");
+    }
+  }
+
+  private void append(int from, int to) {
+    final int length = to - from;
+    if (scratchLength + length > scratch.length) {
+      final byte[] grown = new byte[Math.max(scratch.length * 2, scratchLength + length)];
+      System.arraycopy(scratch, 0, grown, 0, scratchLength);
+      scratch = grown;
+    }
+    buf.get(from, scratch, scratchLength, length);
+    scratchLength += length;
+  }
+
+  /**
+   * Decodes the contents of a string token given as {@code UTF-8} bytes, resolving its escape
+   * sequences, into the provided array, which must have at least as many elements as the range has
+   * bytes.
+   *
+   * @return the number of chars decoded, or the bitwise complement of the index of the first
+   *     invalid escape sequence (relative to the start of the range)
+   */
+  static int unescape(byte[] src, int from, int to, char[] dst) {
+    int n = 0;
+    int run = from;
+    int i = from;
+    while (i < to) {
+      if (src[i] != '\\') {
+        i++;
+        continue;
+      }
+      n = decodeUtf8(src, run, i, dst, n);
+      final int c = (i + 1 < to) ? src[i + 1] : -1;
+      if (c == 'u') {
+        final int unit = (i + 6 <= to)
+            ? JsonScanner.hexValue(src[i + 2]) << 12
+            | JsonScanner.hexValue(src[i + 3]) << 8
+            | JsonScanner.hexValue(src[i + 4]) << 4
+            | JsonScanner.hexValue(src[i + 5])
+            : -1;
+        if (unit < 0) {
+          return ~(i - from);
+        }
+        // surrogate pairs are escaped as two consecutive code units, they need no special care:
+        dst[n++] = (char) unit;
+        i += 6;
+      } else {
+        final int escaped = JsonScanner.escaped(c);
+        if (escaped < 0) {
+          return ~(i - from);
+        }
+        dst[n++] = (char) escaped;
+        i += 2;
+      }
+      run = i;
+    }
+    return decodeUtf8(src, run, to, dst, n);
+  }
+
+  /**
+   * Decodes the {@code UTF-8} bytes of the given range into the provided array from the given
+   * index, which must leave at least as many elements as the range has bytes.
+   *
+   * <p>
+   * Malformed input is replaced the way {@code new String(bytes, UTF_8)} replaces it: every maximal
+   * subpart of a well-formed sequence (a valid lead byte followed by the valid continuation bytes
+   * it allows, up to the first one which does not fit) yields a single {@code U+FFFD}, as does
+   * every other invalid byte. Thus, strings decode to the same chars on every path.
+   *
+   * @return the index following the last char decoded
+   */
+  static int decodeUtf8(byte[] src, int from, int to, char[] dst, int offset) {
+    int n = offset;
+    int i = from;
+    while (i < to) {
+      final int b = src[i++];
+      if (b >= 0) {
+        dst[n++] = (char) b;
+        continue;
+      }
+      final int lead = b & 0xFF;
+      final int extra;
+      // the range of the first continuation byte (which excludes overlong forms and code points
+      // beyond U+10FFFF), the rest are always in [0x80, 0xBF]:
+      int lo = 0x80;
+      int hi = 0xBF;
+      int cp;
+      if (lead >= 0xC2 && lead <= 0xDF) {
+        extra = 1;
+        cp = lead & 0x1F;
+      } else if (lead >= 0xE0 && lead <= 0xEF) {
+        extra = 2;
+        cp = lead & 0x0F;
+        if (lead == 0xE0) {
+          lo = 0xA0;
+        }
+      } else if (lead >= 0xF0 && lead <= 0xF4) {
+        extra = 3;
+        cp = lead & 0x07;
+        if (lead == 0xF0) {
+          lo = 0x90;
+        } else if (lead == 0xF4) {
+          hi = 0x8F;
+        }
+      } else {
+        dst[n++] = REPLACEMENT;
+        continue;
+      }
+      int k = 0;
+      while (k < extra && i < to) {
+        final int c = src[i] & 0xFF;
+        if (c < lo || c > hi) {
+          break;
+        }
+        cp = (cp << 6) | (c & 0x3F);
+        i++;
+        k++;
+        lo = 0x80;
+        hi = 0xBF;
+      }
+      if (k < extra || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+        // the byte which does not fit is left to start the next sequence, while an encoded
+        // surrogate is replaced as a whole:
+        dst[n++] = REPLACEMENT;
+      } else if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        dst[n++] = Character.highSurrogate(cp);
+        dst[n++] = Character.lowSurrogate(cp);
+      } else {
+        dst[n++] = (char) cp;
+      }
+    }
+    return n;
+  }
+
+}
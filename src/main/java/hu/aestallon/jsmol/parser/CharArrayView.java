@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+/**
+ * A reusable, read-only view of a range of a {@code char[]}.
+ *
+ * <p>
+ * The view does not copy the characters it is pointed at: it is only valid as long as the
+ * underlying array range is left untouched.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class CharArrayView implements CharSequence {
+
+  private char[] chars = new char[0];
+  private int    offset;
+  private int    length;
+
+  CharArrayView set(char[] chars, int offset, int length) {
+    this.chars = chars;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new StringIndexOutOfBoundsException(index);
+    }
+    return chars[offset + index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new StringIndexOutOfBoundsException("start " + start + ", end " + end);
+    }
+    return new String(chars, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars, offset, length);
+  }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Scans a JSON text made up of characters.
+ *
+ * <p>
+ * The input is read through a fixed-size window, which is refilled from the underlying
+ * {@link Reader} whenever the cursor reaches its end. Tokens may span several windows, thus the
+ * heap needed for scanning is bounded by the window size (and the longest string token), not by
+ * the size of the input.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class CharScanner extends JsonScanner {
+
+  private final Reader  in;
+  private final char[]  buf;
+  private       int     pos;
+  private       int     limit;
+  private       long    base;
+  private       boolean exhausted;
+  private       int     tokenStart;
+  private       int     tokenEnd;
+  private       long    contentOffset;
+  private       boolean escapes;
+  private       char[]  chars = new char[0];
+
+  private final CharArrayView view = new CharArrayView();
+
+  CharScanner(String src) {
+    this(new StringReader(src), Math.max(1, Math.min(src.length(), WINDOW_SIZE)));
+  }
+
+  CharScanner(Reader in) {
+    this(in, WINDOW_SIZE);
+  }
+
+  private CharScanner(Reader in, int windowSize) {
+    this.in = in;
+    this.buf = new char[windowSize];
+  }
+
+  @Override
+  long position() {
+    return base + pos;
+  }
+
+  /**
+   * Slides the window over the next chunk of the input.
+   *
+   * @return {@code true} if there is at least one character available in the new window
+   */
+  private boolean fill() throws IOException {
+    base += limit;
+    pos = 0;
+    limit = 0;
+    if (exhausted) {
+      return false;
+    }
+    final int n = in.read(buf, 0, buf.length);
+    if (n < 0) {
+      exhausted = true;
+      return false;
+    }
+    limit = n;
+    return n > 0 || fill();
+  }
+
+  @Override
+  int peek() throws IOException {
+    return (pos < limit || fill()) ? buf[pos] : EOF;
+  }
+
+  @Override
+  void advance() {
+    pos++;
+  }
+
+  @Override
+  int skipWhitespace() throws IOException {
+    while (pos < limit || fill()) {
+      final char c = buf[pos];
+      if (isWhitespace(c)) {
+        pos++;
+      } else {
+        return c;
+      }
+    }
+    return EOF;
+  }
+
+  @Override
+  String readString() throws IOException {
+    final StringBuilder sb = this.scanString();
+    if (escapes) {
+      final int n = this.unescape(sb);
+      return new String(chars, 0, n);
+    }
+    return (sb == null) ? new String(buf, tokenStart, tokenEnd - tokenStart) : sb.toString();
+  }
+
+  @Override
+  String readKey(JsonSymbolTable symbols) throws IOException {
+    return symbols.intern(this.readChars());
+  }
+
+  @Override
+  CharSequence readChars() throws IOException {
+    final StringBuilder sb = this.scanString();
+    if (escapes) {
+      final int n = this.unescape(sb);
+      return view.set(chars, 0, n);
+    }
+    return (sb == null) ? view.set(buf, tokenStart, tokenEnd - tokenStart) : sb;
+  }
+
+  /**
+   * Consumes a string token. If the token fits in the window, its contents are left in place
+   * between {@code tokenStart} and {@code tokenEnd}, otherwise they are collected in the text
+   * buffer, which is then returned. Whether the contents have any escape sequences is recorded in
+   * {@code escapes}.
+   */
+  private StringBuilder scanString() throws IOException {
+    int start = ++pos;
+    StringBuilder sb = null;
+    contentOffset = base + start;
+    escapes = false;
+    while (true) {
+      if (pos >= limit) {
+        sb = stash(sb, start);
+        start = 0;
+      }
+      final char c = buf[pos];
+      if (c == '"') {
+        if (sb != null) {
+          sb.append(buf, start, pos - start);
+        }
+        tokenStart = start;
+        tokenEnd = pos++;
+        return sb;
+      }
+      if (c == '\\') {
+        escapes = true;
+        // an escape always spans the next character, thus it cannot close the string:
+        if (++pos >= limit) {
+          sb = stash(sb, start);
+          start = 0;
+        }
+      } else if (c < 0x20) {
+        throw error("unescaped control character");
+      }
+      pos++;
+    }
+  }
+
+  /**
+   * Resolves the escape sequences of the string token just scanned into the reusable char buffer.
+   *
+   * @param sb the contents of the token, if they were collected in the text buffer
+   * @return the number of chars decoded
+   */
+  private int unescape(StringBuilder sb) {
+    final int length = (sb == null) ? tokenEnd - tokenStart : sb.length();
+    if (chars.length < length) {
+      chars = new char[Math.max(chars.length * 2, length)];
+    }
+    final int n;
+    if (sb == null) {
+      n = unescape(buf, tokenStart, tokenEnd, chars);
+    } else {
+      // the contents never grow by unescaping, thus they can be resolved in place:
+      sb.getChars(0, length, chars, 0);
+      n = unescape(chars, 0, length, chars);
+    }
+    if (n < 0) {
+      throw invalidEscape(contentOffset + ~n);
+    }
+    return n;
+  }
+
+  /**
+   * Copies the contents of a string token, resolving its escape sequences, into the provided array,
+   * which must have at least as many elements as the range. The destination may be the source
+   * itself, starting at the same index.
+   *
+   * @return the number of chars copied, or the bitwise complement of the index of the first
+   *     invalid escape sequence (relative to the start of the range)
+   */
+  static int unescape(char[] src, int from, int to, char[] dst) {
+    int n = 0;
+    int run = from;
+    int i = from;
+    while (i < to) {
+      if (src[i] != '\\') {
+        i++;
+        continue;
+      }
+      System.arraycopy(src, run, dst, n, i - run);
+      n += i - run;
+      final int c = (i + 1 < to) ? src[i + 1] : -1;
+      if (c == 'u') {
+        final int unit = (i + 6 <= to)
+            ? hexValue(src[i + 2]) << 12
+            | hexValue(src[i + 3]) << 8
+            | hexValue(src[i + 4]) << 4
+            | hexValue(src[i + 5])
+            : -1;
+        if (unit < 0) {
+          return ~(i - from);
+        }
+        dst[n++] = (char) unit;
+        i += 6;
+      } else {
+        final int escaped = escaped(c);
+        if (escaped < 0) {
+          return ~(i - from);
+        }
+        dst[n++] = (char) escaped;
+        i += 2;
+      }
+      run = i;
+    }
+    System.arraycopy(src, run, dst, n, to - run);
+    return n + to - run;
+  }
+
+  @Override
+  void skipString() throws IOException {
+    pos++;
+    while (true) {
+      if (pos >= limit && !fill()) {
+        throw error("unterminated string");
+      }
+      final char c = buf[pos++];
+      if (c == '"') {
+        return;
+      }
+      if (c == '\\') {
+        if (pos >= limit && !fill()) {
+          throw error("unterminated string");
+        }
+        pos++;
+      }
+    }
+  }
+
+  @Override
+  void skipContainer() throws IOException {
+    int depth = 0;
+    do {
+      if (pos >= limit && !fill()) {
+        throw unexpected(EOF, "end of container");
+      }
+      final char c = buf[pos];
+      if (c == '"') {
+        skipString();
+        continue;
+      }
+      if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+      pos++;
+    } while (depth > 0);
+  }
+
+  /**
+   * Appends the part of the current string token visible in the window to the text buffer, and
+   * slides the window on, as the token continues beyond its end.
+   */
+  private StringBuilder stash(StringBuilder sb, int start) throws IOException {
+    final StringBuilder stash = (sb == null) ? resetText() : sb;
+    stash.append(buf, start, pos - start);
+    if (!fill()) {
+      throw error("unterminated string");
+    }
+    return stash;
+  }
+
+}
@@ -0,0 +1,548 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.result.ExErr;
+import hu.aestallon.jsmol.result.Ok;
+import hu.aestallon.jsmol.result.Result;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Parses a {@code UTF-8} encoded JSON input arriving in chunks, without ever blocking.
+ *
+ * <p>
+ * The parser is a resumable state machine: every {@link #feed(ByteBuffer) fed} chunk is parsed
+ * right away, as far as it goes, and the state of the parse is kept until the next chunk arrives.
+ * Thus parsing overlaps with receiving the input, and the work can be spread across several calls
+ * (e.g. the ticks of an event loop). Chunks are never retained: the only bytes copied are those of
+ * a string or number token split between chunks.
+ *
+ * <p>
+ * The input may consist of several JSON texts following each other (optionally separated by
+ * whitespace), as in a stream of messages. The parser either builds a tree from each of them, to be
+ * retrieved by {@link #poll()}, or it reports their events to a {@link JsonHandler}.
+ *
+ * <p>
+ * Once the parser has encountered an error, every later call returns the same error. If a handler
+ * stops the parser, the rest of the input is ignored.
+ *
+ * <p>
+ * As the input is untrusted, the depth of nesting is limited the same way as for
+ * {@link JsonParser} ({@value JsonParser#DEFAULT_MAX_DEPTH} levels by default), so a stream of
+ * opening brackets cannot make the parser grow its stacks without bound.
+ *
+ * <p>
+ * Instances are not thread-safe: chunks must be fed one after the other, although not necessarily
+ * by the same thread.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class IncrementalJsonParser {
+
+  // -----------------------------------------------------------------------------------------------
+  // Literals
+  private static final String NULL_LITERAL  = "null";
+  private static final String TRUE_LITERAL  = "true";
+  private static final String FALSE_LITERAL = "false";
+
+  // -----------------------------------------------------------------------------------------------
+  // Lexical states
+  private static final byte BETWEEN_TOKENS = 0;
+  private static final byte IN_STRING      = 1;
+  private static final byte IN_NUMBER      = 2;
+  private static final byte IN_LITERAL     = 3;
+
+  // -----------------------------------------------------------------------------------------------
+  // Scopes
+  private static final byte DOCUMENT        = 0;
+  private static final byte EMPTY_ARRAY     = 1;
+  private static final byte ARRAY_VALUE     = 2;
+  private static final byte NONEMPTY_ARRAY  = 3;
+  private static final byte EMPTY_OBJECT    = 4;
+  private static final byte OBJECT_NAME     = 5;
+  private static final byte DANGLING_NAME   = 6;
+  private static final byte OBJECT_VALUE    = 7;
+  private static final byte NONEMPTY_OBJECT = 8;
+
+  private final JsonHandler   handler;
+  private final TreeBuilder   builder;
+  private final int           maxDepth;
+  private final NumberScanner number = new NumberScanner();
+  private final CharArrayView view   = new CharArrayView();
+
+  private byte[]  scopes = new byte[32];
+  private int     depth  = 1;
+  private byte    state  = BETWEEN_TOKENS;
+  private long    tokenOffset;
+  private String  literal;
+  private int     literalIndex;
+  private boolean key;
+  private boolean escaped;
+  private boolean escapes;
+  private boolean spanning;
+  private byte[]  scratch = new byte[0];
+  private int     scratchLength;
+  private char[]  chars   = new char[0];
+  private int     completed;
+  private boolean stopped;
+  private boolean ended;
+  private RuntimeException failure;
+
+  // the chunk being parsed:
+  private ByteBuffer buf;
+  private int        pos;
+  private int        limit;
+  private int        tokenStart;
+  private long       base;
+
+  /**
+   * Creates a parser building a tree of every JSON text of the input. The keys of all the trees
+   * built are canonicalised through a single symbol table.
+   */
+  public IncrementalJsonParser() {
+    this(null, JsonParser.DEFAULT_MAX_DEPTH);
+  }
+
+  /**
+   * Creates a parser reporting the events of the input to the given handler.
+   */
+  public IncrementalJsonParser(JsonHandler handler) {
+    this(Objects.requireNonNull(handler), JsonParser.DEFAULT_MAX_DEPTH);
+  }
+
+  private IncrementalJsonParser(JsonHandler handler, int maxDepth) {
+    this.builder = (handler == null)
+        ? new TreeBuilder(() -> this.tokenOffset, new JsonSymbolTable())
+        : null;
+    this.handler = (handler == null) ? builder : handler;
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Returns a new parser of the same kind (building trees or reporting to the same handler),
+   * rejecting input with objects and arrays nested deeper than the provided number of levels.
+   *
+   * @see JsonParser#withMaxDepth(int)
+   */
+  public IncrementalJsonParser withMaxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("invalid depth: " + maxDepth);
+    }
+    return new IncrementalJsonParser((builder == null) ? handler : null, maxDepth);
+  }
+
+  /**
+   * Parses the remaining bytes of the provided chunk.
+   *
+   * <p>
+   * The position of the chunk is advanced over the bytes parsed, which is all of them, unless the
+   * handler stops the parser. The chunk is not referenced after this method returns, thus it may be
+   * reused for the next chunk right away.
+   *
+   * @return the number of JSON texts completed by this chunk
+   */
+  public Result<Integer> feed(ByteBuffer chunk) {
+    final int before = completed;
+    try {
+      if (failure == null && ended) {
+        throw new IllegalStateException("the input has already ended");
+      }
+      if (failure == null && !stopped) {
+        this.scan(chunk);
+      }
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    return (failure == null) ? Ok.of(completed - before) : ExErr.of(failure);
+  }
+
+  /**
+   * Signals that the input is complete, finishing a trailing number (which can only be recognised
+   * as complete at the end of the input).
+   *
+   * @return the number of JSON texts completed by this call (which is either zero or one)
+   */
+  public Result<Integer> endOfInput() {
+    final int before = completed;
+    try {
+      if (failure == null && !stopped && !ended) {
+        ended = true;
+        this.end();
+      }
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    return (failure == null) ? Ok.of(completed - before) : ExErr.of(failure);
+  }
+
+  /**
+   * Returns the next completed JSON text, or {@code null} if there is none (yet).
+   *
+   * @throws IllegalStateException if the parser reports to a handler instead of building trees
+   */
+  public JsonValue poll() {
+    if (builder == null) {
+      throw new IllegalStateException("the parser reports to a handler");
+    }
+    return builder.poll();
+  }
+
+  /**
+   * Returns the number of bytes parsed so far.
+   */
+  public long position() {
+    return base + pos;
+  }
+
+  private void scan(ByteBuffer chunk) {
+    buf = chunk;
+    pos = chunk.position();
+    limit = chunk.limit();
+    base -= pos;
+    tokenStart = pos;
+    try {
+      while (!stopped && pos < limit) {
+        switch (state) {
+          case BETWEEN_TOKENS -> this.scanStructure();
+          case IN_STRING -> this.scanString();
+          case IN_NUMBER -> this.scanNumber();
+          case IN_LITERAL -> this.scanLiteral();
+          default -> throw new IllegalStateException("unknown state: " + state);
+        }
+      }
+      if (state == IN_STRING) {
+        // the string continues in the next chunk:
+        this.append(tokenStart, pos);
+        spanning = true;
+      }
+    } finally {
+      chunk.position(pos);
+      base += pos;
+      pos = 0;
+      buf = null;
+    }
+  }
+
+  private void end() {
+    switch (state) {
+      case IN_STRING -> throw this.error("unterminated string");
+      case IN_LITERAL -> throw this.error("expected literal '" + literal + "'");
+      case IN_NUMBER -> this.completeNumber(JsonScanner.EOF);
+      default -> {}
+    }
+    if (depth > 1) {
+      throw this.unexpected(JsonScanner.EOF, switch (scopes[depth - 1]) {
+        case EMPTY_ARRAY -> "value or ']'";
+        case NONEMPTY_ARRAY -> "',' or ']'";
+        case EMPTY_OBJECT -> "'\"' or '}'";
+        case OBJECT_NAME -> "'\"'";
+        case DANGLING_NAME -> "':'";
+        case NONEMPTY_OBJECT -> "',' or '}'";
+        default -> "value";
+      });
+    }
+  }
+
+  private void scanStructure() {
+    while (pos < limit) {
+      final int b = buf.get(pos) & 0xFF;
+      if (JsonScanner.isWhitespace(b)) {
+        pos++;
+        continue;
+      }
+      switch (scopes[depth - 1]) {
+        case DOCUMENT, ARRAY_VALUE, OBJECT_VALUE -> this.startValue(b);
+        case EMPTY_ARRAY -> {
+          if (b == ']') {
+            this.endContainer(false);
+          } else {
+            this.startValue(b);
+          }
+        }
+        case NONEMPTY_ARRAY -> {
+          if (b == ',') {
+            scopes[depth - 1] = ARRAY_VALUE;
+            pos++;
+            continue;
+          }
+          if (b != ']') {
+            throw this.unexpected(b, "',' or ']'");
+          }
+          this.endContainer(false);
+        }
+        case EMPTY_OBJECT -> {
+          if (b == '}') {
+            this.endContainer(true);
+          } else if (b == '"') {
+            this.startString(true);
+          } else {
+            throw this.unexpected(b, "'\"'");
+          }
+        }
+        case OBJECT_NAME -> {
+          if (b != '"') {
+            throw this.unexpected(b, "'\"'");
+          }
+          this.startString(true);
+        }
+        case DANGLING_NAME -> {
+          if (b != ':') {
+            throw this.unexpected(b, "':'");
+          }
+          scopes[depth - 1] = OBJECT_VALUE;
+          pos++;
+          continue;
+        }
+        case NONEMPTY_OBJECT -> {
+          if (b == ',') {
+            scopes[depth - 1] = OBJECT_NAME;
+            pos++;
+            continue;
+          }
+          if (b != '}') {
+            throw this.unexpected(b, "',' or '}'");
+          }
+          this.endContainer(true);
+        }
+        default -> throw new IllegalStateException("unknown scope: " + scopes[depth - 1]);
+      }
+      // a token has been started or completed:
+      return;
+    }
+  }
+
+  private void startValue(int b) {
+    final byte scope = scopes[depth - 1];
+    if (scope == EMPTY_ARRAY || scope == ARRAY_VALUE) {
+      scopes[depth - 1] = NONEMPTY_ARRAY;
+    } else if (scope == OBJECT_VALUE) {
+      scopes[depth - 1] = NONEMPTY_OBJECT;
+    }
+    tokenOffset = this.position();
+    switch (b) {
+      case '{' -> {
+        pos++;
+        this.push(EMPTY_OBJECT);
+        this.proceed(handler.startObject());
+      }
+      case '[' -> {
+        pos++;
+        this.push(EMPTY_ARRAY);
+        this.proceed(handler.startArray());
+      }
+      case '"' -> this.startString(false);
+      case 't' -> this.startLiteral(TRUE_LITERAL);
+      case 'f' -> this.startLiteral(FALSE_LITERAL);
+      case 'n' -> this.startLiteral(NULL_LITERAL);
+      case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> {
+        number.reset(true);
+        state = IN_NUMBER;
+      }
+      default -> throw this.unexpected(b, "value");
+    }
+  }
+
+  private void endContainer(boolean object) {
+    pos++;
+    depth--;
+    this.proceed(object ? handler.endObject() : handler.endArray());
+    this.valueCompleted();
+  }
+
+  private void startString(boolean key) {
+    tokenOffset = this.position();
+    this.key = key;
+    escaped = false;
+    escapes = false;
+    spanning = false;
+    scratchLength = 0;
+    tokenStart = ++pos;
+    state = IN_STRING;
+  }
+
+  private void scanString() {
+    final boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+    while (pos < limit) {
+      if (!escaped) {
+        while (pos + Long.BYTES <= limit) {
+          final long special = ByteScanner.specials(buf.getLong(pos));
+          if (special != 0L) {
+            pos += ByteScanner.indexOfFirst(special, bigEndian);
+            break;
+          }
+          pos += Long.BYTES;
+        }
+        if (pos >= limit) {
+          return;
+        }
+      }
+      final byte b = buf.get(pos);
+      if (escaped) {
+        escaped = false;
+      } else if (b == '\\') {
+        escaped = true;
+        escapes = true;
+      } else if (b >= 0 && b < 0x20) {
+        throw this.error("unescaped control character");
+      } else if (b == '"') {
+        final CharSequence s = this.chars(tokenStart, pos);
+        pos++;
+        state = BETWEEN_TOKENS;
+        if (key) {
+          scopes[depth - 1] = DANGLING_NAME;
+          this.proceed(handler.key(s));
+        } else {
+          this.proceed(handler.value(s));
+          this.valueCompleted();
+        }
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private void scanNumber() {
+    while (pos < limit) {
+      final int b = buf.get(pos) & 0xFF;
+      if (!number.accept(b)) {
+        this.completeNumber(b);
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private void completeNumber(int next) {
+    if (!number.isComplete()) {
+      throw this.unexpected(next, "digit");
+    }
+    if (!number.complete()) {
+      throw new JsonParseException("number out of range", tokenOffset);
+    }
+    state = BETWEEN_TOKENS;
+    if (number.isIntegral()) {
+      this.proceed(handler.value(number.longValue()));
+    } else if (number.bigValue() == null) {
+      this.proceed(handler.value(number.doubleValue()));
+    } else {
+      this.proceed(handler.value(number.bigValue()));
+    }
+    this.valueCompleted();
+  }
+
+  private void startLiteral(String literal) {
+    this.literal = literal;
+    literalIndex = 0;
+    state = IN_LITERAL;
+  }
+
+  private void scanLiteral() {
+    while (pos < limit) {
+      if (buf.get(pos) != literal.charAt(literalIndex)) {
+        throw this.error("expected literal '" + literal + "'");
+      }
+      pos++;
+      if (++literalIndex == literal.length()) {
+        state = BETWEEN_TOKENS;
+        this.proceed(switch (literal) {
+          case TRUE_LITERAL -> handler.value(true);
+          case FALSE_LITERAL -> handler.value(false);
+          default -> handler.nullValue();
+        });
+        this.valueCompleted();
+        return;
+      }
+    }
+  }
+
+  private void proceed(boolean proceed) {
+    if (!proceed) {
+      stopped = true;
+    }
+  }
+
+  private void valueCompleted() {
+    if (depth == 1) {
+      completed++;
+    }
+  }
+
+  private void push(byte scope) {
+    // the document itself takes the first scope:
+    if (depth > maxDepth) {
+      throw new JsonParseException("nesting deeper than " + maxDepth + " levels", tokenOffset);
+    }
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+  /**
+   * Decodes the contents of the string token ending at the given index of the current chunk.
+   */
+  private CharSequence chars(int from, int to) {
+    final byte[] src;
+    final int start;
+    final int end;
+    if (!spanning && buf.hasArray()) {
+      src = buf.array();
+      start = buf.arrayOffset() + from;
+      end = buf.arrayOffset() + to;
+    } else {
+      this.append(from, to);
+      src = scratch;
+      start = 0;
+      end = scratchLength;
+    }
+    if (chars.length < end - start) {
+      chars = new char[Math.max(chars.length * 2, end - start)];
+    }
+    if (!escapes) {
+      return view.set(chars, 0, ByteScanner.decodeUtf8(src, start, end, chars, 0));
+    }
+    final int n = ByteScanner.unescape(src, start, end, chars);
+    if (n < 0) {
+      // the contents start right after the opening quote:
+      throw JsonScanner.invalidEscape(tokenOffset + 1 + ~n);
+    }
+    return view.set(chars, 0, n);
+  }
+
+  private void append(int from, int to) {
+    final int length = to - from;
+    if (scratchLength + length > scratch.length) {
+      scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+    }
+    buf.get(from, scratch, scratchLength, length);
+    scratchLength += length;
+  }
+
+  private JsonParseException unexpected(int c, String expected) {
+    final String found = (c == JsonScanner.EOF) ? "end of input" : "'" + (char) c + "'";
+    return this.error("unexpected " + found + ", expected " + expected);
+  }
+
+  private JsonParseException error(String message) {
+    return new JsonParseException(message, this.position());
+  }
+
+}
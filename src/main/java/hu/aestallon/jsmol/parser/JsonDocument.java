@@ -0,0 +1,438 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonBoolean;
+import hu.aestallon.jsmol.json.JsonNull;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable, compact representation of a parsed JSON text.
+ *
+ * <p>
+ * Instead of a graph of objects, the document is encoded as a flat {@code long[]} tape, holding a
+ * word for every value (and one for the end of every object and array), in the order of the text:
+ * <ul>
+ *   <li>the top byte of a word tells the kind of the value, the rest is its payload,</li>
+ *   <li>the word of an object or an array holds the index of its closing word (thus a whole subtree
+ *   can be skipped in one step) and the number of its members, and the closing word points back to
+ *   the opening one,</li>
+ *   <li>strings (keys included) are stored in a shared {@code UTF-8} arena, the word holds their
+ *   offset in it, and repeated keys are stored only once,</li>
+ *   <li>numbers are stored inline: integers of at most 56 bits in the word itself, other
+ *   {@code long}s and {@code double}s in the following word.</li>
+ * </ul>
+ * Thus, the footprint of a document is a small multiple of the size of its text (as opposed to the
+ * five to ten times of a tree of {@link JsonValue}s), and traversing it scans consecutive memory.
+ *
+ * <p>
+ * The values of the document are available through {@link JsonValue} views, created on demand:
+ * objects and arrays are read-only {@link JsonObject}s and {@link JsonArray}s, which compare equal
+ * to their counterparts built by the {@link JsonParser}. Looking up a member of an object takes a
+ * scan of its members.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class JsonDocument {
+
+  // -----------------------------------------------------------------------------------------------
+  // Tags
+  static final int OBJECT     = '{';
+  static final int OBJECT_END = '}';
+  static final int ARRAY      = '[';
+  static final int ARRAY_END  = ']';
+  static final int STRING     = '"';
+  static final int SMALL_LONG = 'i';
+  static final int LONG       = 'l';
+  static final int DOUBLE     = 'd';
+  static final int BIG_NUMBER = 'N';
+  static final int TRUE       = 't';
+  static final int FALSE      = 'f';
+  static final int NULL       = 'n';
+
+  private static final int  PAYLOAD_BITS = 56;
+  private static final long PAYLOAD_MASK = (1L << PAYLOAD_BITS) - 1;
+  private static final int  MAX_COUNT    = (1 << 24) - 1;
+
+  /**
+   * Reads the next value of the provided reader into a document.
+   */
+  static JsonDocument read(JsonReader reader) throws IOException {
+    return new Builder().read(reader);
+  }
+
+  private final long[]   tape;
+  private final byte[]   arena;
+  private final Number[] bigNumbers;
+
+  private JsonDocument(long[] tape, byte[] arena, Number[] bigNumbers) {
+    this.tape = tape;
+    this.arena = arena;
+    this.bigNumbers = bigNumbers;
+  }
+
+  /**
+   * Returns a view of the root value of the document.
+   */
+  public JsonValue root() {
+    return this.valueAt(0);
+  }
+
+  /**
+   * Returns the number of bytes the document occupies (not counting the headers of its arrays).
+   */
+  public long footprint() {
+    long bytes = (long) tape.length * Long.BYTES + arena.length;
+    for (Number n : bigNumbers) {
+      bytes += n.toString().length();
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return this.root().toString();
+  }
+
+  // -----------------------------------------------------------------------------------------------
+  // Tape access
+
+  static int tag(long word) {
+    return (int) (word >>> PAYLOAD_BITS);
+  }
+
+  long word(int index) {
+    return tape[index];
+  }
+
+  /**
+   * Returns the index of the value following the one at the provided index.
+   */
+  int next(int index) {
+    return next(tape, index);
+  }
+
+  private static int next(long[] tape, int index) {
+    final long word = tape[index];
+    return switch (tag(word)) {
+      // skipping the whole subtree, including the closing word:
+      case OBJECT, ARRAY -> (int) word + 1;
+      case LONG, DOUBLE -> index + 2;
+      default -> index + 1;
+    };
+  }
+
+  /**
+   * Returns the number of members of the object or array at the provided index.
+   */
+  int count(int index) {
+    final int count = (int) ((tape[index] & PAYLOAD_MASK) >>> 32);
+    if (count < MAX_COUNT) {
+      return count;
+    }
+    // the count did not fit in the word, thus the members have to be counted:
+    final boolean object = tag(tape[index]) == OBJECT;
+    final int end = (int) tape[index];
+    int n = 0;
+    for (int i = index + 1; i < end; i = this.next(i)) {
+      if (object) {
+        i++;
+      }
+      n++;
+    }
+    return n;
+  }
+
+  String stringAt(int index) {
+    final int offset = (int) (tape[index] & PAYLOAD_MASK);
+    final int from = offset + 4;
+    final int to = from + this.length(offset);
+    // the arena is written by the builder only, thus its sequences need no validation, but lone
+    // surrogates (which a standard decoder would replace) must be restored as they were:
+    final char[] chars = new char[to - from];
+    int n = 0;
+    int i = from;
+    while (i < to) {
+      final int b = arena[i];
+      if (b >= 0) {
+        chars[n++] = (char) b;
+        i++;
+      } else if ((b & 0xE0) == 0xC0) {
+        chars[n++] = (char) ((b & 0x1F) << 6 | arena[i + 1] & 0x3F);
+        i += 2;
+      } else if ((b & 0xF0) == 0xE0) {
+        chars[n++] = (char) ((b & 0x0F) << 12 | (arena[i + 1] & 0x3F) << 6 | arena[i + 2] & 0x3F);
+        i += 3;
+      } else {
+        final int cp = (b & 0x07) << 18
+                       | (arena[i + 1] & 0x3F) << 12
+                       | (arena[i + 2] & 0x3F) << 6
+                       | arena[i + 3] & 0x3F;
+        chars[n++] = Character.highSurrogate(cp);
+        chars[n++] = Character.lowSurrogate(cp);
+        i += 4;
+      }
+    }
+    return new String(chars, 0, n);
+  }
+
+  /**
+   * Returns whether the string at the provided index is made up of the given {@code UTF-8} bytes.
+   */
+  boolean stringEquals(int index, byte[] utf8) {
+    final int offset = (int) (tape[index] & PAYLOAD_MASK);
+    final int length = this.length(offset);
+    return length == utf8.length
+           && Arrays.equals(arena, offset + 4, offset + 4 + length, utf8, 0, length);
+  }
+
+  private int length(int offset) {
+    return (arena[offset] & 0xFF)
+           | (arena[offset + 1] & 0xFF) << 8
+           | (arena[offset + 2] & 0xFF) << 16
+           | (arena[offset + 3] & 0xFF) << 24;
+  }
+
+  /**
+   * Returns the provided characters encoded the way the arena stores them.
+   */
+  static byte[] encode(CharSequence chars) {
+    final byte[] bytes = new byte[chars.length() * 3];
+    return Arrays.copyOf(bytes, encode(chars, bytes, 0));
+  }
+
+  /**
+   * Encodes the provided characters as {@code UTF-8} bytes into the given array, which must have
+   * room for three bytes per character. Lone surrogates are encoded as if they were code points, to
+   * be restored when decoded.
+   *
+   * @return the index following the last byte written
+   */
+  private static int encode(CharSequence chars, byte[] dst, int at) {
+    final int length = chars.length();
+    int n = at;
+    for (int i = 0; i < length; i++) {
+      final char c = chars.charAt(i);
+      if (c < 0x80) {
+        dst[n++] = (byte) c;
+      } else if (c < 0x800) {
+        dst[n++] = (byte) (0xC0 | c >> 6);
+        dst[n++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+                 && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, chars.charAt(++i));
+        dst[n++] = (byte) (0xF0 | cp >> 18);
+        dst[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+        dst[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+        dst[n++] = (byte) (0x80 | cp & 0x3F);
+      } else {
+        // lone surrogates are encoded as they are, to be restored when decoded:
+        dst[n++] = (byte) (0xE0 | c >> 12);
+        dst[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+        dst[n++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Returns a view of the value at the provided index.
+   */
+  JsonValue valueAt(int index) {
+    final long word = tape[index];
+    return switch (tag(word)) {
+      case OBJECT -> new JsonObject(new TapeJsonMap(this, index));
+      case ARRAY -> new JsonArray(new TapeJsonList(this, index));
+      case STRING -> new JsonString(this.stringAt(index));
+      // sign extending the payload:
+      case SMALL_LONG -> new JsonNumber((word << 8) >> 8);
+      case LONG -> new JsonNumber(tape[index + 1]);
+      case DOUBLE -> new JsonNumber(Double.longBitsToDouble(tape[index + 1]));
+      case BIG_NUMBER -> new JsonNumber(bigNumbers[(int) (word & PAYLOAD_MASK)]);
+      case TRUE -> new JsonBoolean(true);
+      case FALSE -> new JsonBoolean(false);
+      case NULL -> JsonNull.INSTANCE;
+      default -> throw new IllegalStateException("unknown tag: " + (char) tag(word));
+    };
+  }
+
+  /**
+   * Encodes the tokens of a reader onto a tape.
+   */
+  private static final class Builder {
+
+    private long[]   tape       = new long[256];
+    private int      size;
+    private byte[]   arena      = new byte[1024];
+    private int      arenaSize;
+    private Number[] bigNumbers = new Number[0];
+    private int      bigCount;
+
+    // the openers of the objects and arrays being read, and the keys seen in the objects:
+    private int[]         openers = new int[16];
+    private Set<String>[] keys    = newKeySets(16);
+    private int           depth;
+
+    // repeated keys are stored in the arena only once:
+    private final Map<String, Integer> keyOffsets = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private static Set<String>[] newKeySets(int length) {
+      return (Set<String>[]) new Set<?>[length];
+    }
+
+    private JsonDocument read(JsonReader reader) throws IOException {
+      do {
+        switch (reader.peek()) {
+          case BEGIN_OBJECT, BEGIN_ARRAY -> this.open(reader);
+          case END_OBJECT, END_ARRAY -> this.close(reader);
+          case NAME -> {
+            final long offset = reader.position();
+            final String key = reader.nextName();
+            if (!this.keys[depth - 1].add(key)) {
+              throw new JsonParseException("duplicate key: " + key, offset);
+            }
+            Integer arenaOffset = keyOffsets.get(key);
+            if (arenaOffset == null) {
+              arenaOffset = this.store(key);
+              keyOffsets.put(key, arenaOffset);
+            }
+            this.append(STRING, arenaOffset);
+          }
+          case STRING -> this.append(STRING, this.store(reader.nextChars()));
+          case NUMBER -> this.number(reader);
+          case BOOLEAN -> this.append(reader.nextBoolean() ? TRUE : FALSE, 0L);
+          case NULL -> {
+            reader.nextNull();
+            this.append(NULL, 0L);
+          }
+          // the reader never yields the end of the document in place of a value:
+          default -> throw new IllegalStateException("unexpected token: " + reader.peek());
+        }
+      } while (depth > 0);
+      return new JsonDocument(
+          Arrays.copyOf(tape, size),
+          Arrays.copyOf(arena, arenaSize),
+          Arrays.copyOf(bigNumbers, bigCount));
+    }
+
+    private void open(JsonReader reader) throws IOException {
+      final boolean object = reader.nextToken() == JsonToken.BEGIN_OBJECT;
+      if (depth == openers.length) {
+        openers = Arrays.copyOf(openers, depth * 2);
+        keys = Arrays.copyOf(keys, depth * 2);
+      }
+      if (object) {
+        if (keys[depth] == null) {
+          keys[depth] = new HashSet<>();
+        } else {
+          keys[depth].clear();
+        }
+      }
+      openers[depth++] = size;
+      this.append(object ? OBJECT : ARRAY, 0L);
+    }
+
+    private void close(JsonReader reader) throws IOException {
+      final boolean object = reader.nextToken() == JsonToken.END_OBJECT;
+      final int opener = openers[--depth];
+      int count = 0;
+      for (int i = opener + 1; i < size; i = next(tape, i)) {
+        if (object) {
+          i++;
+        }
+        count++;
+      }
+      tape[opener] |= (long) Math.min(count, MAX_COUNT) << 32 | size;
+      this.append(object ? OBJECT_END : ARRAY_END, opener);
+    }
+
+    private void number(JsonReader reader) throws IOException {
+      if (reader.readNumber()) {
+        final long value = reader.longValue();
+        if ((value << 8) >> 8 == value) {
+          this.append(SMALL_LONG, value & PAYLOAD_MASK);
+        } else {
+          this.append(LONG, 0L);
+          this.append(value);
+        }
+        return;
+      }
+      final Number big = reader.bigValue();
+      if (big == null) {
+        this.append(DOUBLE, 0L);
+        this.append(Double.doubleToRawLongBits(reader.doubleValue()));
+      } else {
+        if (bigCount == bigNumbers.length) {
+          bigNumbers = Arrays.copyOf(bigNumbers, Math.max(4, bigCount * 2));
+        }
+        bigNumbers[bigCount] = big;
+        this.append(BIG_NUMBER, bigCount++);
+      }
+    }
+
+    private void append(int tag, long payload) {
+      this.append((long) tag << PAYLOAD_BITS | payload);
+    }
+
+    private void append(long word) {
+      if (size == tape.length) {
+        tape = Arrays.copyOf(tape, size * 2);
+      }
+      tape[size++] = word;
+    }
+
+    /**
+     * Stores the provided characters in the arena as {@code UTF-8} bytes, prefixed by their number.
+     *
+     * @return the offset of the string in the arena
+     */
+    private int store(CharSequence chars) {
+      final int length = chars.length();
+      // a char never takes more than three bytes (a surrogate pair takes four for two chars):
+      if (arenaSize + 4 + length * 3L > arena.length) {
+        final long needed = arenaSize + 4 + length * 3L;
+        if (needed > Integer.MAX_VALUE - 8) {
+          throw new IllegalStateException("document too large");
+        }
+        arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8,
+            Math.max(arena.length * 2L, needed)));
+      }
+      final int offset = arenaSize;
+      final int n = encode(chars, arena, offset + 4);
+      final int bytes = n - offset - 4;
+      arena[offset] = (byte) bytes;
+      arena[offset + 1] = (byte) (bytes >> 8);
+      arena[offset + 2] = (byte) (bytes >> 16);
+      arena[offset + 3] = (byte) (bytes >> 24);
+      arenaSize = n;
+      return offset;
+    }
+
+  }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.result.Result;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the values at a set of JSON Pointers from JSON texts, without parsing anything else.
+ *
+ * <p>
+ * Pointers follow RFC 6901 (e.g. {@code /order/id}, with {@code ~0} and {@code ~1} standing for
+ * {@code ~} and {@code /} in member names), with one extension: a {@code *} segment matches every
+ * member of an object, and every element of an array (e.g. {@code /order/lines/*}{@code /sku}).
+ * The empty pointer refers to the whole text.
+ *
+ * <p>
+ * The pointers are compiled once, and then matched while the text is being read: every subtree
+ * that cannot contain a match is skipped, without allocating anything. Only the matched values are
+ * built. Skipped subtrees are only checked for balanced brackets and terminated strings: malformed
+ * content within them goes unnoticed.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class JsonExtractor {
+
+  private static final String WILDCARD = "*";
+
+  /**
+   * Compiles the provided pointers (at most 64 of them).
+   *
+   * @throws IllegalArgumentException if any of the pointers is malformed
+   */
+  public static JsonExtractor compile(String... pointers) {
+    final String[] distinct = Arrays.stream(pointers).distinct().toArray(String[]::new);
+    if (distinct.length > Long.SIZE) {
+      throw new IllegalArgumentException("at most " + Long.SIZE + " pointers are supported");
+    }
+    final String[][] segments = new String[distinct.length][];
+    for (int i = 0; i < distinct.length; i++) {
+      segments[i] = parsePointer(distinct[i]);
+    }
+    return new JsonExtractor(distinct, segments);
+  }
+
+  private static String[] parsePointer(String pointer) {
+    if (pointer.isEmpty()) {
+      return new String[0];
+    }
+    if (pointer.charAt(0) != '/') {
+      throw new IllegalArgumentException("pointer must start with '/': " + pointer);
+    }
+    final String[] segments = pointer.substring(1).split("/", -1);
+    for (int i = 0; i < segments.length; i++) {
+      final String segment = segments[i];
+      for (int j = segment.indexOf('~'); j >= 0; j = segment.indexOf('~', j + 1)) {
+        if (j + 1 == segment.length() || (segment.charAt(j + 1) != '0'
+                                          && segment.charAt(j + 1) != '1')) {
+          throw new IllegalArgumentException("invalid escape in pointer: " + pointer);
+        }
+      }
+      segments[i] = segment.replace("~1", "/").replace("~0", "~");
+    }
+    return segments;
+  }
+
+  private final String[]   pointers;
+  private final String[][] segments;
+  private final int[][]    indices;
+  private final long       all;
+
+  private JsonExtractor(String[] pointers, String[][] segments) {
+    this.pointers = pointers;
+    this.segments = segments;
+    this.indices = new int[segments.length][];
+    for (int i = 0; i < segments.length; i++) {
+      indices[i] = Arrays.stream(segments[i]).mapToInt(JsonExtractor::arrayIndex).toArray();
+    }
+    this.all = (pointers.length == Long.SIZE) ? -1L : (1L << pointers.length) - 1;
+  }
+
+  /**
+   * Returns the array index a pointer segment stands for, or {@code -1} if it is not one.
+   */
+  private static int arrayIndex(String segment) {
+    // no leading zeros, and small enough to fit in an int:
+    if (segment.isEmpty()
+        || segment.length() > 9
+        || (segment.length() > 1 && segment.charAt(0) == '0')) {
+      return -1;
+    }
+    for (int i = 0; i < segment.length(); i++) {
+      if (!JsonScanner.isDigit(segment.charAt(i))) {
+        return -1;
+      }
+    }
+    return Integer.parseInt(segment);
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(String s) {
+    return this.extract(JsonReader.of(s));
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(byte[] bytes) {
+    return this.extract(JsonReader.of(bytes));
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(ByteBuffer buffer) {
+    return this.extract(JsonReader.of(buffer));
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(Reader reader) {
+    return this.extract(JsonReader.of(reader));
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(InputStream in) {
+    return this.extract(JsonReader.of(in));
+  }
+
+  public Result<Map<String, List<JsonValue>>> extract(Path path) {
+    return Result.of(() -> {
+      try (JsonReader reader = JsonReader.of(path)) {
+        return this.extractDocument(reader);
+      }
+    });
+  }
+
+  /**
+   * Extracts the values at the compiled pointers from the text read by the provided reader, which
+   * must be positioned at the start of the document.
+   *
+   * @return the matched values of every pointer (in the order of compilation), in document order
+   */
+  public Result<Map<String, List<JsonValue>>> extract(JsonReader reader) {
+    return Result.of(() -> this.extractDocument(reader));
+  }
+
+  private Map<String, List<JsonValue>> extractDocument(JsonReader reader) throws IOException {
+    final List<List<JsonValue>> matches = new ArrayList<>(pointers.length);
+    for (int i = 0; i < pointers.length; i++) {
+      matches.add(new ArrayList<>());
+    }
+    this.walk(reader, all, 0, matches);
+    reader.expect(JsonToken.END_DOCUMENT);
+
+    final Map<String, List<JsonValue>> result = new LinkedHashMap<>();
+    for (int i = 0; i < pointers.length; i++) {
+      result.put(pointers[i], matches.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Matches the value under the cursor.
+   *
+   * @param active the pointers whose first {@code depth} segments match the path of the value
+   */
+  private void walk(JsonReader reader, long active, int depth, List<List<JsonValue>> matches)
+      throws IOException {
+    if (active == 0L) {
+      reader.skipSubtree();
+      return;
+    }
+    if (this.completed(active, depth) != 0L) {
+      // the value itself is needed, the rest of the pointers are matched within it:
+      this.collect(JsonParser.readValue(reader), active, depth, matches);
+      return;
+    }
+    switch (reader.peek()) {
+      case BEGIN_OBJECT -> {
+        reader.nextToken();
+        while (reader.hasNext()) {
+          final long matching = this.matchMember(active, depth, reader.nextChars());
+          this.walk(reader, matching, depth + 1, matches);
+        }
+        reader.nextToken();
+      }
+      case BEGIN_ARRAY -> {
+        reader.nextToken();
+        for (int idx = 0; reader.hasNext(); idx++) {
+          this.walk(reader, this.matchElement(active, depth, idx), depth + 1, matches);
+        }
+        reader.nextToken();
+      }
+      // no remaining pointer can point into a scalar:
+      default -> reader.skipSubtree();
+    }
+  }
+
+  /**
+   * Matches an already built value.
+   */
+  private void collect(JsonValue value, long active, int depth, List<List<JsonValue>> matches) {
+    final long completed = this.completed(active, depth);
+    for (long bits = completed; bits != 0L; bits &= bits - 1) {
+      matches.get(Long.numberOfTrailingZeros(bits)).add(value);
+    }
+    final long rest = active & ~completed;
+    if (rest == 0L) {
+      return;
+    }
+    if (value instanceof JsonObject object) {
+      object.forEach((key, member) -> this.collect(
+          member, this.matchMember(rest, depth, key), depth + 1, matches));
+    } else if (value instanceof JsonArray array) {
+      for (int idx = 0; idx < array.size(); idx++) {
+        this.collect(array.get(idx), this.matchElement(rest, depth, idx), depth + 1, matches);
+      }
+    }
+  }
+
+  private long completed(long active, int depth) {
+    long completed = 0L;
+    for (long bits = active; bits != 0L; bits &= bits - 1) {
+      final int p = Long.numberOfTrailingZeros(bits);
+      if (segments[p].length == depth) {
+        completed |= 1L << p;
+      }
+    }
+    return completed;
+  }
+
+  private long matchMember(long active, int depth, CharSequence key) {
+    long matching = 0L;
+    for (long bits = active; bits != 0L; bits &= bits - 1) {
+      final int p = Long.numberOfTrailingZeros(bits);
+      final String segment = segments[p][depth];
+      if (WILDCARD.equals(segment) || segment.contentEquals(key)) {
+        matching |= 1L << p;
+      }
+    }
+    return matching;
+  }
+
+  private long matchElement(long active, int depth, int idx) {
+    long matching = 0L;
+    for (long bits = active; bits != 0L; bits &= bits - 1) {
+      final int p = Long.numberOfTrailingZeros(bits);
+      if (indices[p][depth] == idx || WILDCARD.equals(segments[p][depth])) {
+        matching |= 1L << p;
+      }
+    }
+    return matching;
+  }
+
+}
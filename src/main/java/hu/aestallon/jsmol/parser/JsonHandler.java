@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+/**
+ * Receives the events of a JSON text as it is being parsed.
+ *
+ * <p>
+ * A handler is the push-style counterpart of a {@link JsonReader}: no tree is built, the parser
+ * calls the handler for every token instead. Numbers are passed unboxed, integral ones as
+ * {@code long}s, the rest as {@code double}s. Names and strings are passed as views into the
+ * parser's buffers: they are only valid during the call, and must be copied (e.g. by calling
+ * {@code toString()}) to be retained.
+ *
+ * <p>
+ * Every callback returns whether parsing should proceed: returning {@code false} stops the parser
+ * right away, without reading the rest of the input. Every callback defaults to doing nothing, so
+ * implementations need only override the events they are interested in.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public interface JsonHandler {
+
+  default boolean startObject() {
+    return true;
+  }
+
+  /**
+   * Called with the name of the next member of the current object.
+   */
+  default boolean key(CharSequence key) {
+    return true;
+  }
+
+  default boolean endObject() {
+    return true;
+  }
+
+  default boolean startArray() {
+    return true;
+  }
+
+  default boolean endArray() {
+    return true;
+  }
+
+  default boolean value(CharSequence s) {
+    return true;
+  }
+
+  default boolean value(long l) {
+    return true;
+  }
+
+  default boolean value(double d) {
+    return true;
+  }
+
+  /**
+   * Called with a number out of the range of both a {@code long} and a {@code double}: a
+   * {@link java.math.BigInteger} or a {@link java.math.BigDecimal}. By default, it is reported as
+   * the nearest {@code double}.
+   */
+  default boolean value(Number n) {
+    return this.value(n.doubleValue());
+  }
+
+  default boolean value(boolean b) {
+    return true;
+  }
+
+  default boolean nullValue() {
+    return true;
+  }
+
+}
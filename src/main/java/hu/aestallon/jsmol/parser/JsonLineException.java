@@ -0,0 +1,41 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+/**
+ * Signals that a line of a newline-delimited JSON input is not well-formed JSON.
+ *
+ * <p>
+ * Besides the offset of the offending position (measured from the start of the whole input), the
+ * exception carries the (1-based) number of the offending line.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public class JsonLineException extends JsonParseException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long line;
+
+  public JsonLineException(String message, long line, long offset) {
+    super(message + " on line " + line, offset);
+    this.line = line;
+  }
+
+  public long line() {
+    return line;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+/**
+ * Signals that the input of a {@link JsonParser} is not well-formed JSON.
+ *
+ * <p>
+ * The exception carries the offset of the offending position, measured from the start of the
+ * input.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public class JsonParseException extends IllegalStateException {
+
+  private static final long   serialVersionUID = 1L;
+  private static final String MSG              = "%s at offset %d";
+
+  private final String reason;
+  private final long   offset;
+
+  public JsonParseException(String message, long offset) {
+    super(MSG.formatted(message, offset));
+    this.reason = message;
+    this.offset = offset;
+  }
+
+  /**
+   * Returns the description of the problem, without its location.
+   */
+  public String reason() {
+    return reason;
+  }
+
+  public long offset() {
+    return offset;
+  }
+}
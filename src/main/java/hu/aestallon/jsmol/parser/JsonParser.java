@@ -15,6 +15,7 @@
  */
 package hu.aestallon.jsmol.parser;
 
+import hu.aestallon.jsmol.json.CompactJsonMap;
 import hu.aestallon.jsmol.json.JsonArray;
 import hu.aestallon.jsmol.json.JsonBoolean;
 import hu.aestallon.jsmol.json.JsonNull;
@@ -22,163 +23,468 @@ import hu.aestallon.jsmol.json.JsonNumber;
 import hu.aestallon.jsmol.json.JsonObject;
 import hu.aestallon.jsmol.json.JsonString;
 import hu.aestallon.jsmol.json.JsonValue;
-import hu.aestallon.jsmol.result.Err;
-import hu.aestallon.jsmol.result.ExErr;
-import hu.aestallon.jsmol.result.Ok;
 import hu.aestallon.jsmol.result.Result;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static hu.aestallon.jsmol.parser.JsonParser.RawStringProcessor.DISCARD;
+import java.util.Objects;
 
 /**
+ * Parses JavaScript Object Notation (JSON) texts into {@link JsonValue}s.
+ *
+ * <p>
+ * The parser is a single-pass recursive descent parser: the kind of every value is decided upon
+ * its first character, and the input is consumed character-by-character without backtracking.
+ * Malformed input yields an {@code Err} wrapping a {@link JsonParseException}.
+ *
+ * <p>
+ * Besides {@code String}s, the parser accepts streaming sources. These are read through a
+ * fixed-size window while parsing, thus the heap needed is bounded by the resulting tree (plus the
+ * window), regardless of the size of the input. Streaming sources are not closed by the parser.
+ *
+ * <p>
+ * Byte inputs are expected to be {@code UTF-8} encoded. They are parsed as bytes, without decoding
+ * the text up front: only the contents of string values are decoded, each exactly once. Offsets
+ * reported for byte inputs are byte offsets.
+ *
+ * <p>
+ * Files are parsed through memory-mapped windows, letting the operating system perform the I/O
+ * without any copying in user space. Thus files larger than {@code 2 GB} (the limit of both a
+ * {@code String} and a single mapping) can be parsed as well.
+ *
+ * <p>
+ * The tree is built on top of a {@link JsonReader}: callers who do not need the whole tree may read
+ * the tokens of the same inputs directly, skipping the parts they are not interested in. Or, they
+ * may have the parser push the events of the text to a {@link JsonHandler}, without building any
+ * values at all.
+ *
+ * <p>
+ * Documents meant to be kept around (such as cached ones) may be parsed into a compact
+ * {@link JsonDocument} instead of a tree, taking a fraction of the heap.
  *
+ * <p>
+ * The keys of objects are canonicalised through a {@link JsonSymbolTable}: every parse uses a table
+ * of its own by default, thus keys repeated across the records of a document share a single
+ * {@code String} instance. A parser may be configured to share a table across all of its parses
+ * instead (which is useful if many small documents of the same shape are parsed), to use tables of
+ * a different size, or to use none at all. Parsers are immutable, and may be used concurrently.
+ *
+ * <p>
+ * Nested objects and arrays are parsed iteratively, on a stack of containers of the parser's own,
+ * thus deeply nested documents cannot exhaust the call stack of the thread. Instead, the depth of
+ * nesting is limited by a configurable number of levels ({@value #DEFAULT_MAX_DEPTH} by default).
+ *
+ * @author Szabolcs Bazil Papp
  */
 public final class JsonParser {
 
-  @FunctionalInterface
-  interface Parser {
-    Result<ParseCursor> parse(ParseCursor cursor);
+  public static final int DEFAULT_MAX_DEPTH = 1000;
+
+  private final JsonSymbolTable sharedSymbols;
+  private final int             symbolTableCapacity;
+  private final int             maxDepth;
+
+  /**
+   * Creates a parser using a symbol table of the default capacity for each parse, and accepting
+   * documents nested at most {@value #DEFAULT_MAX_DEPTH} levels deep.
+   */
+  public JsonParser() {
+    this(null, JsonSymbolTable.DEFAULT_CAPACITY, DEFAULT_MAX_DEPTH);
   }
 
-  @FunctionalInterface
-  interface RawStringProcessor extends Function<String, JsonValue> {
-    RawStringProcessor DISCARD = s -> null;
+  private JsonParser(JsonSymbolTable sharedSymbols, int symbolTableCapacity, int maxDepth) {
+    this.sharedSymbols = sharedSymbols;
+    this.symbolTableCapacity = symbolTableCapacity;
+    this.maxDepth = maxDepth;
   }
 
-  record ParseCursor(String str, int idx, JsonValue res) {
-    Result<ParseCursor> advanceOnLiteral(String lit, JsonValue res) {
-      for (int i = 0; i < lit.length(); i++) {
-        if (lit.charAt(i) != str.charAt(i + idx)) {
-          return new Err<>(this);
-        }
-      }
-      return new Ok<>(new ParseCursor(str, idx + lit.length(), res));
+  /**
+   * Returns a parser using the provided symbol table for all of its parses.
+   */
+  public JsonParser withSymbolTable(JsonSymbolTable symbols) {
+    return new JsonParser(Objects.requireNonNull(symbols), symbolTableCapacity, maxDepth);
+  }
+
+  /**
+   * Returns a parser using a new symbol table of the provided capacity for each parse.
+   *
+   * @param capacity the number of keys a table may hold, or {@code 0} to disable canonicalising
+   *                 keys altogether
+   */
+  public JsonParser withSymbolTableCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("invalid capacity: " + capacity);
     }
+    return new JsonParser(null, capacity, maxDepth);
+  }
 
-    Result<ParseCursor> advanceOnPattern(Pattern ptn, RawStringProcessor resultProcessor) {
-      final Matcher m = ptn.matcher(str);
-      return (m.find(idx) && m.start() == idx)
-          ? new Ok<>(new ParseCursor(
-          str,
-          idx + m.group().length(),
-          resultProcessor.apply(m.group())))
-          : new Err<>(this);
+  /**
+   * Returns a parser rejecting documents with objects and arrays nested deeper than the provided
+   * number of levels (thus a limit of {@code 0} only accepts primitive values).
+   */
+  public JsonParser withMaxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("invalid depth: " + maxDepth);
     }
+    return new JsonParser(sharedSymbols, symbolTableCapacity, maxDepth);
   }
 
-  // -----------------------------------------------------------------------------------------------
-  // Literals and regular expressions
-  private static final String  NULL_LITERAL      = "null";
-  private static final String  TRUE_LITERAL      = "true";
-  private static final String  FALSE_LITERAL     = "false";
-  private static final String  NUM_REGEX         = "-?\\d+(?:\\.\\d+)?";
-  private static final Pattern NUM_PTRN          = Pattern.compile(NUM_REGEX);
-  private static final String  STR_REGEX         = "\\\"(?:(?:\\\\\\\")|[^\\\"])*\\\"";
-  private static final Pattern STR_PTRN          = Pattern.compile(STR_REGEX);
-  private static final String  ELEMENT_SEP_REGEX = "\\,[\\r\\n\\s]*";
-  private static final Pattern ELEMENT_SEP_PTRN  = Pattern.compile(ELEMENT_SEP_REGEX);
-  private static final String  ARRAY_START_REGEX = "\\[[\\r\\n\\s]*";
-  private static final Pattern ARRAY_START_PTRN  = Pattern.compile(ARRAY_START_REGEX);
-  private static final String  ARRAY_END_REGEX   = "[\\r\\n\\s]*\\]";
-  private static final Pattern ARRAY_END_PTRN    = Pattern.compile(ARRAY_END_REGEX);
-  private static final String  OBJ_START_REGEX   = "\\{[\\r\\n\\s]*";
-  private static final Pattern OBJ_START_PTRN    = Pattern.compile(OBJ_START_REGEX);
-  private static final String  OBJ_END_REGEX     = "[\\r\\n\\s]*\\}";
-  private static final Pattern OBJ_END_PTRN      = Pattern.compile(OBJ_END_REGEX);
-  private static final String  ENTRY_SEP_REGEX   = "[\\r\\n\\s]*\\:[\\r\\n\\s]*";
-  private static final Pattern ENTRY_SEP_PTRN    = Pattern.compile(ENTRY_SEP_REGEX);
-
-  // -----------------------------------------------------------------------------------------------
-  // Type specific parser implementations
-  private final Parser NULL_PARSER   = c -> c.advanceOnLiteral(NULL_LITERAL, new JsonNull());
-  private final Parser BOOL_PARSER   = c -> c
-      .advanceOnLiteral(TRUE_LITERAL, new JsonBoolean(true))
-      .or(() -> c.advanceOnLiteral(FALSE_LITERAL, new JsonBoolean(false)));
-  private final Parser NUMBER_PARSER = c -> c.advanceOnPattern(
-      NUM_PTRN,
-      s -> s.contains(".")
-          ? new JsonNumber(Double.parseDouble(s))
-          : new JsonNumber(Long.parseLong(s)));
-  private final Parser STRING_PARSER = c -> c.advanceOnPattern(
-      STR_PTRN,
-      s -> s.length() == 2
-          ? new JsonString("")
-          : new JsonString(s.substring(1, s.length() - 1)));
-  private final Parser ARRAY_PARSER  = c -> c
-      .advanceOnPattern(ARRAY_START_PTRN, DISCARD)
-      .flatMap(cursor -> {
-        final List<JsonValue> list = new ArrayList<>();
-        Result<ParseCursor> result;
-        while ((result = cursor.advanceOnPattern(ARRAY_END_PTRN, DISCARD)).isErr()) {
-          if (!list.isEmpty()) {
-            result = cursor.advanceOnPattern(ELEMENT_SEP_PTRN, DISCARD);
-            if (result.isErr()) {return result;} else {cursor = result.unwrap();}
-          }
-          result = this.parseInternal(cursor);
-          if (result.isErr()) {return result;} else {
-            cursor = result.unwrap();
-            list.add(cursor.res);
-          }
-        }
-        cursor = result.unwrap();
-        final JsonArray jsonArray = new JsonArray(list);
-        return Ok.of(new ParseCursor(cursor.str, cursor.idx, jsonArray));
-      });
-  private final Parser OBJECT_PARSER = c -> c
-      .advanceOnPattern(OBJ_START_PTRN, DISCARD)
-      .flatMap(cursor -> {
-        final Map<String, JsonValue> map = new LinkedHashMap<>();
-        Result<ParseCursor> result;
-        while ((result = cursor.advanceOnPattern(OBJ_END_PTRN, DISCARD)).isErr()) {
-          if (!map.isEmpty()) {
-            result = cursor.advanceOnPattern(ELEMENT_SEP_PTRN, DISCARD);
-            if (result.isErr()) {return result;} else {cursor = result.unwrap();}
-          }
-          result = STRING_PARSER.parse(cursor);
-          if (result.isErr()) {return result;} else {cursor = result.unwrap();}
+  int maxDepth() {
+    return maxDepth;
+  }
 
-          final String key = ((JsonString) cursor.res()).value();
-          if (map.containsKey(key)) {
-            return new ExErr<>(
-                new IllegalStateException("duplicate key: " + key + " at idx: " + cursor.idx));
-          }
+  /**
+   * Returns a parser for values nested one level deeper than the ones this parser parses: its
+   * depth limit is one less.
+   */
+  JsonParser nested() {
+    return new JsonParser(sharedSymbols, symbolTableCapacity, maxDepth - 1);
+  }
 
-          result = cursor.advanceOnPattern(ENTRY_SEP_PTRN, DISCARD);
-          if (result.isErr()) {return result;} else {cursor = result.unwrap();}
+  /**
+   * Returns a parser sharing a single symbol table across all of its parses: either the one this
+   * parser already shares, or a new one of the configured capacity.
+   */
+  JsonParser shareSymbols() {
+    return (sharedSymbols != null || symbolTableCapacity == 0)
+        ? this
+        : this.withSymbolTable(new JsonSymbolTable(symbolTableCapacity));
+  }
 
-          result = this.parseInternal(cursor);
-          if (result.isErr()) {return result;} else {
-            cursor = result.unwrap();
-            map.put(key, cursor.res);
-          }
-        }
-        cursor = result.unwrap();
-        final JsonObject jsonObject = new JsonObject(map);
-        return Ok.of(new ParseCursor(cursor.str, cursor.idx, jsonObject));
-      });
+  /**
+   * Returns the symbol table to be used for a parse, or {@code null} if keys are not to be
+   * canonicalised.
+   */
+  JsonSymbolTable symbols() {
+    if (sharedSymbols != null) {
+      return sharedSymbols;
+    }
+    return (symbolTableCapacity == 0) ? null : new JsonSymbolTable(symbolTableCapacity);
+  }
 
   public Result<JsonValue> parse(String s) {
-    return parseInternal(s).map(ParseCursor::res);
+    return this.parse(JsonReader.of(s));
   }
 
-  private Result<ParseCursor> parseInternal(String s) {
-    return this.parseInternal(new ParseCursor(s, 0, null));
+  public Result<JsonValue> parse(Reader reader) {
+    return this.parse(JsonReader.of(reader));
   }
 
-  private Result<ParseCursor> parseInternal(ParseCursor c) {
-    return NULL_PARSER.parse(c)
-        .or(() -> BOOL_PARSER.parse(c))
-        .or(() -> NUMBER_PARSER.parse(c))
-        .or(() -> STRING_PARSER.parse(c))
-        .or(() -> ARRAY_PARSER.parse(c))
-        .or(() -> OBJECT_PARSER.parse(c));
+  public Result<JsonValue> parse(byte[] bytes) {
+    return this.parse(bytes, 0, bytes.length);
+  }
+
+  public Result<JsonValue> parse(byte[] bytes, int offset, int length) {
+    return this.parse(JsonReader.of(bytes, offset, length));
+  }
+
+  /**
+   * Parses the remaining bytes of the provided buffer in place.
+   *
+   * <p>
+   * Both heap and direct buffers are supported. The position and limit of the buffer are left
+   * untouched.
+   */
+  public Result<JsonValue> parse(ByteBuffer buffer) {
+    return this.parse(JsonReader.of(buffer));
+  }
+
+  public Result<JsonValue> parse(InputStream in) {
+    return this.parse(JsonReader.of(in));
+  }
+
+  /**
+   * Parses the JSON text read from the provided channel, which is expected to be in blocking
+   * mode.
+   */
+  public Result<JsonValue> parse(ReadableByteChannel channel) {
+    return this.parse(JsonReader.of(channel));
+  }
+
+  /**
+   * Parses the {@code UTF-8} encoded JSON file at the provided path, mapping it into memory.
+   */
+  public Result<JsonValue> parse(Path path) {
+    return Result.of(() -> {
+      try (JsonReader reader = JsonReader.of(path)) {
+        return this.readDocument(this.configure(reader));
+      }
+    });
+  }
+
+  /**
+   * Parses the provided JSON text, reporting its events to the given handler instead of building a
+   * tree.
+   *
+   * <p>
+   * The text is validated as it is parsed, thus the handler may already have received some events
+   * by the time an error is encountered.
+   *
+   * @return {@code true} if the whole text was parsed, or {@code false} if the handler stopped the
+   *     parser early
+   */
+  public Result<Boolean> parse(String s, JsonHandler handler) {
+    return this.parse(JsonReader.of(s), handler);
+  }
+
+  public Result<Boolean> parse(Reader reader, JsonHandler handler) {
+    return this.parse(JsonReader.of(reader), handler);
+  }
+
+  public Result<Boolean> parse(byte[] bytes, JsonHandler handler) {
+    return this.parse(JsonReader.of(bytes), handler);
+  }
+
+  public Result<Boolean> parse(ByteBuffer buffer, JsonHandler handler) {
+    return this.parse(JsonReader.of(buffer), handler);
+  }
+
+  public Result<Boolean> parse(InputStream in, JsonHandler handler) {
+    return this.parse(JsonReader.of(in), handler);
+  }
+
+  public Result<Boolean> parse(ReadableByteChannel channel, JsonHandler handler) {
+    return this.parse(JsonReader.of(channel), handler);
+  }
+
+  public Result<Boolean> parse(Path path, JsonHandler handler) {
+    return Result.of(() -> {
+      try (JsonReader reader = JsonReader.of(path)) {
+        return this.push(reader.useMaxDepth(maxDepth), handler);
+      }
+    });
+  }
+
+  /**
+   * Parses the provided {@code UTF-8} encoded JSON text lazily.
+   *
+   * @see #parseLazy(ByteBuffer)
+   */
+  public Result<JsonValue> parseLazy(byte[] bytes) {
+    return this.parseLazy(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Parses the remaining bytes of the provided buffer lazily.
+   *
+   * <p>
+   * The whole text is validated up front, but only the members of the root value are located: the
+   * returned objects and arrays hold nothing but the offsets of their children in the buffer. A
+   * child is parsed on first access (in turn, only locating the members of its own), and it is
+   * memoised afterwards. Thus, the cost of reading a few values out of a large document is
+   * proportional to the paths accessed, rather than to the size of the whole tree.
+   *
+   * <p>
+   * Lazy objects and arrays are read-only, and refer to the buffer as long as they are reachable:
+   * its contents must not be modified in the meantime. (Its position and limit are left untouched,
+   * and may be changed freely.) Problems the up-front validation does not catch (such as duplicate
+   * keys in a nested object) are thrown as {@link JsonParseException}s on first access.
+   */
+  public Result<JsonValue> parseLazy(ByteBuffer buffer) {
+    return Result.of(() -> {
+      final LazySource source = new LazySource(this, buffer.duplicate(), buffer.position());
+      final JsonReader reader = source.readerAt(buffer.position());
+      final JsonValue value = switch (reader.peek()) {
+        case BEGIN_OBJECT -> new JsonObject(LazyJsonMap.read(source, reader));
+        case BEGIN_ARRAY -> new JsonArray(LazyJsonList.read(source, reader));
+        default -> readValue(reader);
+      };
+      reader.expect(JsonToken.END_DOCUMENT);
+      return value;
+    });
+  }
+
+  /**
+   * Parses the provided JSON text into a compact {@link JsonDocument}.
+   */
+  public Result<JsonDocument> parseDocument(String s) {
+    return this.parseDocument(JsonReader.of(s));
+  }
+
+  public Result<JsonDocument> parseDocument(byte[] bytes) {
+    return this.parseDocument(JsonReader.of(bytes));
+  }
+
+  public Result<JsonDocument> parseDocument(ByteBuffer buffer) {
+    return this.parseDocument(JsonReader.of(buffer));
+  }
+
+  public Result<JsonDocument> parseDocument(InputStream in) {
+    return this.parseDocument(JsonReader.of(in));
+  }
+
+  public Result<JsonDocument> parseDocument(Path path) {
+    return Result.of(() -> {
+      try (JsonReader reader = JsonReader.of(path)) {
+        return this.readDocumentTape(this.configure(reader));
+      }
+    });
+  }
+
+  Result<JsonValue> parse(JsonScanner scanner) {
+    return this.parse(new JsonReader(scanner));
+  }
+
+  private Result<JsonValue> parse(JsonReader reader) {
+    return Result.of(() -> this.readDocument(this.configure(reader)));
+  }
+
+  private Result<JsonDocument> parseDocument(JsonReader reader) {
+    return Result.of(() -> this.readDocumentTape(this.configure(reader)));
+  }
+
+  private Result<Boolean> parse(JsonReader reader, JsonHandler handler) {
+    return Result.of(() -> this.push(reader.useMaxDepth(maxDepth), handler));
+  }
+
+  private boolean push(JsonReader reader, JsonHandler handler) throws IOException {
+    JsonToken token;
+    do {
+      token = reader.peek();
+      final boolean proceed = switch (token) {
+        case BEGIN_OBJECT -> {
+          reader.nextToken();
+          yield handler.startObject();
+        }
+        case END_OBJECT -> {
+          reader.nextToken();
+          yield handler.endObject();
+        }
+        case BEGIN_ARRAY -> {
+          reader.nextToken();
+          yield handler.startArray();
+        }
+        case END_ARRAY -> {
+          reader.nextToken();
+          yield handler.endArray();
+        }
+        case NAME -> handler.key(reader.nextChars());
+        case STRING -> handler.value(reader.nextChars());
+        case NUMBER -> push(reader.readNumber(), reader, handler);
+        case BOOLEAN -> handler.value(reader.nextBoolean());
+        case NULL -> {
+          reader.nextNull();
+          yield handler.nullValue();
+        }
+        case END_DOCUMENT -> true;
+      };
+      if (!proceed) {
+        return false;
+      }
+    } while (token != JsonToken.END_DOCUMENT);
+    return true;
+  }
+
+  private static boolean push(boolean integral, JsonReader reader, JsonHandler handler) {
+    if (integral) {
+      return handler.value(reader.longValue());
+    }
+    final Number big = reader.bigValue();
+    return (big == null) ? handler.value(reader.doubleValue()) : handler.value(big);
+  }
+
+  /**
+   * Prepares a reader for parsing a document: sets up the symbol table and the depth limit of this
+   * parser.
+   */
+  private JsonReader configure(JsonReader reader) {
+    return reader.useSymbols(this.symbols()).useMaxDepth(maxDepth);
+  }
+
+  private JsonValue readDocument(JsonReader reader) throws IOException {
+    final JsonValue value = readValue(reader);
+    reader.expect(JsonToken.END_DOCUMENT);
+    return value;
+  }
+
+  private JsonDocument readDocumentTape(JsonReader reader) throws IOException {
+    final JsonDocument document = JsonDocument.read(reader);
+    reader.expect(JsonToken.END_DOCUMENT);
+    return document;
+  }
+
+  /**
+   * Reads the next value of the provided reader, including all of its nested values.
+   *
+   * <p>
+   * Instead of recursing into nested values, the objects and arrays being read are kept on a stack
+   * of their own, along with the keys of the members being read (and their offsets, for reporting
+   * duplicates). A completed value is added to the container on the top of the stack, or returned
+   * if the stack is empty.
+   */
+  @SuppressWarnings("unchecked")
+  static JsonValue readValue(JsonReader reader) throws IOException {
+    Object[] containers = null;
+    String[] keys = null;
+    long[] keyOffsets = null;
+    int depth = 0;
+    while (true) {
+      final JsonValue value;
+      switch (reader.peek()) {
+        case BEGIN_OBJECT, BEGIN_ARRAY -> {
+          if (containers == null) {
+            containers = new Object[16];
+            keys = new String[16];
+            keyOffsets = new long[16];
+          } else if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, depth * 2);
+          }
+          containers[depth++] = (reader.nextToken() == JsonToken.BEGIN_OBJECT)
+              ? new CompactJsonMap()
+              : new ArrayList<JsonValue>();
+          continue;
+        }
+        case NAME -> {
+          keyOffsets[depth - 1] = reader.position();
+          keys[depth - 1] = reader.nextName();
+          continue;
+        }
+        case END_OBJECT -> {
+          reader.nextToken();
+          value = new JsonObject((Map<String, JsonValue>) containers[--depth]);
+        }
+        case END_ARRAY -> {
+          reader.nextToken();
+          value = new JsonArray((List<JsonValue>) containers[--depth]);
+        }
+        case STRING -> value = new JsonString(reader.nextString());
+        case NUMBER -> value = readNumber(reader);
+        case BOOLEAN -> value = new JsonBoolean(reader.nextBoolean());
+        case NULL -> {
+          reader.nextNull();
+          value = JsonNull.INSTANCE;
+        }
+        // the reader never yields the end of the document in place of a value:
+        default -> throw new IllegalStateException("unexpected token: " + reader.peek());
+      }
+      if (depth == 0) {
+        return value;
+      }
+      final Object container = containers[depth - 1];
+      if (container instanceof List<?>) {
+        ((List<JsonValue>) container).add(value);
+      } else if (((Map<String, JsonValue>) container).putIfAbsent(keys[depth - 1], value) != null) {
+        throw new JsonParseException("duplicate key: " + keys[depth - 1], keyOffsets[depth - 1]);
+      }
+    }
+  }
+
+  private static JsonNumber readNumber(JsonReader reader) throws IOException {
+    if (reader.readNumber()) {
+      return new JsonNumber(reader.longValue());
+    }
+    final Number big = reader.bigValue();
+    return (big == null) ? new JsonNumber(reader.doubleValue()) : new JsonNumber(big);
   }
 
 }
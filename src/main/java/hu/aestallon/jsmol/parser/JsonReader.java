@@ -0,0 +1,510 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON text as a stream of {@link JsonToken}s.
+ *
+ * <p>
+ * The reader is pull-based: the caller inspects the next token with {@link #peek()}, and consumes
+ * it either with {@link #nextToken()}, or with one of the typed methods ({@link #nextName()},
+ * {@link #nextString()}, {@link #nextLong()}, etc.) which also return its value. Values are only
+ * decoded when they are asked for: skipped tokens are scanned over without allocating anything.
+ *
+ * <p>
+ * The reader validates the structure of the text as it goes; malformed input is signalled with a
+ * {@link JsonParseException}. A reader must not be used after it has thrown.
+ *
+ * <p>
+ * Readers created from a {@link Path} own the underlying file, and should be {@link #close()
+ * closed}. Closing any other reader is a no-op: the sources they were created from are left open.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class JsonReader implements Closeable {
+
+  // -----------------------------------------------------------------------------------------------
+  // Literals
+  private static final String NULL_LITERAL  = "null";
+  private static final String TRUE_LITERAL  = "true";
+  private static final String FALSE_LITERAL = "false";
+
+  // -----------------------------------------------------------------------------------------------
+  // Scopes
+  private static final byte EMPTY_DOCUMENT    = 0;
+  private static final byte NONEMPTY_DOCUMENT = 1;
+  private static final byte EMPTY_ARRAY       = 2;
+  private static final byte NONEMPTY_ARRAY    = 3;
+  private static final byte EMPTY_OBJECT      = 4;
+  private static final byte DANGLING_NAME     = 5;
+  private static final byte NONEMPTY_OBJECT   = 6;
+
+  public static JsonReader of(String s) {
+    return new JsonReader(new CharScanner(s));
+  }
+
+  public static JsonReader of(Reader reader) {
+    return new JsonReader(new CharScanner(reader));
+  }
+
+  public static JsonReader of(byte[] bytes) {
+    return of(bytes, 0, bytes.length);
+  }
+
+  public static JsonReader of(byte[] bytes, int offset, int length) {
+    return new JsonReader(new ByteScanner(bytes, offset, length));
+  }
+
+  public static JsonReader of(ByteBuffer buffer) {
+    return new JsonReader(new ByteScanner(buffer));
+  }
+
+  public static JsonReader of(InputStream in) {
+    return new JsonReader(ByteScanner.of(in));
+  }
+
+  public static JsonReader of(ReadableByteChannel channel) {
+    return new JsonReader(ByteScanner.of(channel));
+  }
+
+  public static JsonReader of(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new JsonReader(ByteScanner.of(channel, ByteScanner.MAPPED_WINDOW_SIZE), channel);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private final JsonScanner scanner;
+  private final Closeable   resource;
+  private       byte[]      scopes = new byte[32];
+  private       int         depth  = 1;
+  private       JsonToken       peeked;
+  private       JsonSymbolTable symbols;
+  private       int             maxDepth = Integer.MAX_VALUE;
+
+  JsonReader(JsonScanner scanner) {
+    this(scanner, null);
+  }
+
+  private JsonReader(JsonScanner scanner, Closeable resource) {
+    this.scanner = scanner;
+    this.resource = resource;
+    this.scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Makes the reader canonicalise the names it reads through the provided symbol table (or stop
+   * doing so, if it is {@code null}).
+   */
+  JsonReader useSymbols(JsonSymbolTable symbols) {
+    this.symbols = symbols;
+    return this;
+  }
+
+  /**
+   * Makes the reader reject objects and arrays nested deeper than the provided number of levels.
+   */
+  JsonReader useMaxDepth(int maxDepth) {
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * Returns the offset of the cursor from the start of the input. Right after {@link #peek()},
+   * this is the offset of the next token.
+   */
+  public long position() {
+    return scanner.position();
+  }
+
+  /**
+   * Returns the kind of the next token without consuming it.
+   */
+  public JsonToken peek() throws IOException {
+    return (peeked != null) ? peeked : (peeked = this.doPeek());
+  }
+
+  /**
+   * Returns whether the current object or array has more elements.
+   */
+  public boolean hasNext() throws IOException {
+    final JsonToken token = this.peek();
+    return token != JsonToken.END_OBJECT
+           && token != JsonToken.END_ARRAY
+           && token != JsonToken.END_DOCUMENT;
+  }
+
+  /**
+   * Consumes the next token, and returns its kind.
+   *
+   * <p>
+   * Names and scalar values consumed by this method are scanned over, but their values are
+   * discarded: use the typed methods of the reader to read them.
+   */
+  public JsonToken nextToken() throws IOException {
+    final JsonToken token = this.peek();
+    switch (token) {
+      case BEGIN_OBJECT -> {
+        this.push(EMPTY_OBJECT);
+        scanner.advance();
+      }
+      case BEGIN_ARRAY -> {
+        this.push(EMPTY_ARRAY);
+        scanner.advance();
+      }
+      case END_OBJECT, END_ARRAY -> {
+        scanner.advance();
+        depth--;
+      }
+      case NAME, STRING -> scanner.skipString();
+      case NUMBER -> scanner.skipNumber();
+      case BOOLEAN -> this.readBoolean();
+      case NULL -> scanner.expectLiteral(NULL_LITERAL);
+      case END_DOCUMENT -> {}
+    }
+    peeked = null;
+    return token;
+  }
+
+  public void beginObject() throws IOException {
+    this.expect(JsonToken.BEGIN_OBJECT);
+    this.nextToken();
+  }
+
+  public void endObject() throws IOException {
+    this.expect(JsonToken.END_OBJECT);
+    this.nextToken();
+  }
+
+  public void beginArray() throws IOException {
+    this.expect(JsonToken.BEGIN_ARRAY);
+    this.nextToken();
+  }
+
+  public void endArray() throws IOException {
+    this.expect(JsonToken.END_ARRAY);
+    this.nextToken();
+  }
+
+  public String nextName() throws IOException {
+    this.expect(JsonToken.NAME);
+    final String name = (symbols == null) ? scanner.readString() : scanner.readKey(symbols);
+    peeked = null;
+    return name;
+  }
+
+  /**
+   * Consumes the next name, and returns its index among the provided names, or {@code -1} if it is
+   * none of them.
+   *
+   * <p>
+   * The name is compared in place, without being decoded into a {@code String}: readers binding
+   * members to a known set of properties (and skipping the rest) do not allocate for names at all.
+   */
+  public int selectName(String[] names) throws IOException {
+    this.expect(JsonToken.NAME);
+    final CharSequence name = scanner.readChars();
+    peeked = null;
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].contentEquals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public String nextString() throws IOException {
+    this.expect(JsonToken.STRING);
+    final String s = scanner.readString();
+    peeked = null;
+    return s;
+  }
+
+  public boolean nextBoolean() throws IOException {
+    this.expect(JsonToken.BOOLEAN);
+    final boolean b = this.readBoolean();
+    peeked = null;
+    return b;
+  }
+
+  public void nextNull() throws IOException {
+    this.expect(JsonToken.NULL);
+    scanner.expectLiteral(NULL_LITERAL);
+    peeked = null;
+  }
+
+  /**
+   * Consumes the next number, and returns it as a {@code long}.
+   *
+   * @throws JsonParseException if the next token is not a number, it has a fraction part, or it
+   *                            does not fit into a {@code long}
+   */
+  public long nextLong() throws IOException {
+    this.expect(JsonToken.NUMBER);
+    final long start = scanner.position();
+    scanner.readNumber();
+    peeked = null;
+    if (scanner.isIntegral()) {
+      return scanner.longValue();
+    }
+    final double d = scanner.doubleValue();
+    // the cast saturates, so 2^63 would round-trip as Long.MAX_VALUE without the range check:
+    if (d >= 0x1p63 || d < -0x1p63 || (long) d != d || scanner.bigValue() != null) {
+      throw new JsonParseException("expected a long but was " + d, start);
+    }
+    return (long) d;
+  }
+
+  public double nextDouble() throws IOException {
+    this.expect(JsonToken.NUMBER);
+    scanner.readNumber();
+    peeked = null;
+    return scanner.isIntegral() ? scanner.longValue() : scanner.doubleValue();
+  }
+
+  /**
+   * Consumes the next number, and returns it narrowed to an {@code int} the same way
+   * {@link hu.aestallon.jsmol.json.JsonNumber#intValue()} narrows a parsed number: integers keep
+   * their low 32 bits, other numbers lose their fraction part and saturate.
+   */
+  public int nextInt() throws IOException {
+    if (this.readNumber()) {
+      return (int) scanner.longValue();
+    }
+    final Number big = scanner.bigValue();
+    return (big == null) ? (int) scanner.doubleValue() : big.intValue();
+  }
+
+  /**
+   * Consumes the next number, and returns it narrowed to a {@code long} the same way
+   * {@link hu.aestallon.jsmol.json.JsonNumber#longValue()} narrows a parsed number: integers beyond
+   * the range keep their low 64 bits, other numbers lose their fraction part and saturate.
+   *
+   * @see #nextLong() for reading exact values only
+   */
+  public long nextLongNarrowed() throws IOException {
+    if (this.readNumber()) {
+      return scanner.longValue();
+    }
+    final Number big = scanner.bigValue();
+    return (big == null) ? (long) scanner.doubleValue() : big.longValue();
+  }
+
+  /**
+   * Consumes the next name or string, and returns it as a view that is only valid until the next
+   * token is read.
+   */
+  CharSequence nextChars() throws IOException {
+    final JsonToken token = this.peek();
+    if (token != JsonToken.NAME && token != JsonToken.STRING) {
+      throw scanner.error("expected NAME or STRING but was " + token);
+    }
+    final CharSequence chars = scanner.readChars();
+    peeked = null;
+    return chars;
+  }
+
+  /**
+   * Consumes the next number, making its value available through {@link #longValue()},
+   * {@link #doubleValue()} or {@link #bigValue()}.
+   *
+   * @return {@code true} if the number is integral, thus its value is a {@code long}
+   */
+  boolean readNumber() throws IOException {
+    this.expect(JsonToken.NUMBER);
+    scanner.readNumber();
+    peeked = null;
+    return scanner.isIntegral();
+  }
+
+  long longValue() {
+    return scanner.longValue();
+  }
+
+  double doubleValue() {
+    return scanner.doubleValue();
+  }
+
+  /**
+   * Returns the value of the last number read as a {@code BigInteger} if it is an integer out of
+   * the range of a {@code long}, as a {@code BigDecimal} if it is any other number out of the range
+   * of a {@code double}, or {@code null} otherwise.
+   */
+  Number bigValue() {
+    return scanner.bigValue();
+  }
+
+  /**
+   * Consumes the next value, including all of its nested values, and returns it as a tree.
+   */
+  public JsonValue nextValue() throws IOException {
+    return JsonParser.readValue(this);
+  }
+
+  /**
+   * Skips the next value, including all of its nested values. If the next token is a member name,
+   * the whole member is skipped.
+   */
+  public void skipValue() throws IOException {
+    if (this.peek() == JsonToken.NAME) {
+      this.nextToken();
+    }
+    // like the typed next* methods, nothing is consumed if there is no value to skip:
+    final JsonToken token = this.peek();
+    if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+      throw scanner.error("expected value but was " + token);
+    }
+    int level = 0;
+    do {
+      switch (this.nextToken()) {
+        case BEGIN_OBJECT, BEGIN_ARRAY -> level++;
+        case END_OBJECT, END_ARRAY -> level--;
+        case END_DOCUMENT -> throw scanner.unexpected(JsonScanner.EOF, "value");
+        default -> {}
+      }
+    } while (level > 0);
+  }
+
+  /**
+   * Skips the next value like {@link #skipValue()}, but without validating the contents of objects
+   * and arrays: only their brackets are counted (and their strings skipped).
+   */
+  void skipSubtree() throws IOException {
+    final JsonToken token = this.peek();
+    if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY) {
+      scanner.skipContainer();
+      peeked = null;
+    } else {
+      this.skipValue();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (resource != null) {
+      resource.close();
+    }
+  }
+
+  /**
+   * Ensures that the next token is of the expected kind.
+   */
+  void expect(JsonToken expected) throws IOException {
+    final JsonToken token = this.peek();
+    if (token != expected) {
+      throw scanner.error("expected " + expected + " but was " + token);
+    }
+  }
+
+  private JsonToken doPeek() throws IOException {
+    final byte scope = scopes[depth - 1];
+    switch (scope) {
+      case EMPTY_DOCUMENT -> scopes[depth - 1] = NONEMPTY_DOCUMENT;
+      case NONEMPTY_DOCUMENT -> {
+        final int c = scanner.skipWhitespace();
+        if (c != JsonScanner.EOF) {
+          throw scanner.unexpected(c, "end of input");
+        }
+        return JsonToken.END_DOCUMENT;
+      }
+      case EMPTY_ARRAY, NONEMPTY_ARRAY -> {
+        final int c = scanner.skipWhitespace();
+        if (c == ']') {
+          return JsonToken.END_ARRAY;
+        }
+        if (scope == NONEMPTY_ARRAY) {
+          if (c != ',') {
+            throw scanner.unexpected(c, "',' or ']'");
+          }
+          scanner.advance();
+        } else {
+          scopes[depth - 1] = NONEMPTY_ARRAY;
+        }
+      }
+      case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+        int c = scanner.skipWhitespace();
+        if (c == '}') {
+          return JsonToken.END_OBJECT;
+        }
+        if (scope == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw scanner.unexpected(c, "',' or '}'");
+          }
+          scanner.advance();
+          c = scanner.skipWhitespace();
+        }
+        if (c != '"') {
+          throw scanner.unexpected(c, "'\"'");
+        }
+        scopes[depth - 1] = DANGLING_NAME;
+        return JsonToken.NAME;
+      }
+      case DANGLING_NAME -> {
+        scanner.expect(':');
+        scopes[depth - 1] = NONEMPTY_OBJECT;
+      }
+      default -> throw new IllegalStateException("unknown scope: " + scope);
+    }
+    return this.peekValue();
+  }
+
+  private JsonToken peekValue() throws IOException {
+    final int c = scanner.skipWhitespace();
+    return switch (c) {
+      case '{' -> JsonToken.BEGIN_OBJECT;
+      case '[' -> JsonToken.BEGIN_ARRAY;
+      case '"' -> JsonToken.STRING;
+      case 't', 'f' -> JsonToken.BOOLEAN;
+      case 'n' -> JsonToken.NULL;
+      case '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> JsonToken.NUMBER;
+      default -> throw scanner.unexpected(c, "value");
+    };
+  }
+
+  private boolean readBoolean() throws IOException {
+    final boolean b = scanner.peek() == 't';
+    scanner.expectLiteral(b ? TRUE_LITERAL : FALSE_LITERAL);
+    return b;
+  }
+
+  private void push(byte scope) {
+    // the bottom of the stack is the document itself:
+    if (depth > maxDepth) {
+      throw scanner.error("nesting deeper than " + maxDepth + " levels");
+    }
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import java.io.IOException;
+
+/**
+ * Single-pass scanner over a JSON text.
+ *
+ * <p>
+ * The scanner never backtracks: every method inspects the code unit under the cursor and either
+ * consumes the token starting there or throws a {@link JsonParseException}. Whitespace and
+ * separators are consumed inline, without allocating.
+ *
+ * <p>
+ * As every structural character of JSON is {@code ASCII}, the grammar level operations are shared,
+ * and implementations only differ in how they buffer the input and decode string contents: a
+ * {@link CharScanner} works on characters, while a {@link ByteScanner} works on {@code UTF-8}
+ * encoded bytes directly.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+abstract sealed class JsonScanner permits CharScanner, ByteScanner {
+
+  static final int EOF         = -1;
+  static final int WINDOW_SIZE = 1 << 16;
+
+  private final StringBuilder text   = new StringBuilder();
+  private final NumberScanner number = new NumberScanner();
+
+  /**
+   * Returns the offset of the cursor from the start of the input, measured in the code units of
+   * the input (characters or bytes).
+   */
+  abstract long position();
+
+  /**
+   * Returns the code unit under the cursor without consuming it, or {@link #EOF} if the input is
+   * exhausted.
+   */
+  abstract int peek() throws IOException;
+
+  /**
+   * Consumes the code unit under the cursor. Must only be called after {@link #peek()} or
+   * {@link #skipWhitespace()} returned something other than {@link #EOF}.
+   */
+  abstract void advance();
+
+  /**
+   * Consumes insignificant whitespace, and returns the first significant code unit (without
+   * consuming it), or {@link #EOF}.
+   */
+  abstract int skipWhitespace() throws IOException;
+
+  /**
+   * Consumes a string token starting at the opening quote under the cursor, and returns its
+   * contents between the quotes, with escape sequences decoded.
+   *
+   * <p>
+   * Unescaped control characters and malformed escape sequences are rejected. Strings without any
+   * escape sequences (the vast majority) are located by a bulk search, and copied in one step.
+   */
+  abstract String readString() throws IOException;
+
+  /**
+   * Consumes a string token starting at the opening quote under the cursor, and returns the
+   * canonical instance of its contents held by the provided symbol table.
+   */
+  abstract String readKey(JsonSymbolTable symbols) throws IOException;
+
+  /**
+   * Consumes a string token starting at the opening quote under the cursor, and returns its
+   * contents between the quotes as a view, which is only valid until the next token is read.
+   */
+  abstract CharSequence readChars() throws IOException;
+
+  /**
+   * Consumes a string token starting at the opening quote under the cursor, without decoding its
+   * contents.
+   */
+  abstract void skipString() throws IOException;
+
+  /**
+   * Consumes an object or array starting at the bracket under the cursor, only counting brackets
+   * (and skipping strings), without validating its contents otherwise.
+   */
+  abstract void skipContainer() throws IOException;
+
+  /**
+   * Skips whitespace and consumes the expected structural character.
+   */
+  void expect(char expected) throws IOException {
+    final int c = skipWhitespace();
+    if (c != expected) {
+      throw unexpected(c, "'" + expected + "'");
+    }
+    advance();
+  }
+
+  void expectLiteral(String literal) throws IOException {
+    for (int i = 0; i < literal.length(); i++) {
+      if (peek() != literal.charAt(i)) {
+        throw error("expected literal '" + literal + "'");
+      }
+      advance();
+    }
+  }
+
+  /**
+   * Consumes a number token under the cursor, making its value available through
+   * {@link #isIntegral()}, {@link #longValue()}, {@link #doubleValue()} and {@link #bigValue()}.
+   *
+   * <p>
+   * Integral numbers are represented as {@code long}s, while numbers with a fraction or an exponent
+   * part are represented as {@code double}s. Numbers out of the range of these are represented as
+   * {@code BigInteger}s or {@code BigDecimal}s.
+   */
+  void readNumber() throws IOException {
+    final long start = this.position();
+    this.scanNumber(true);
+    if (!number.complete()) {
+      throw new JsonParseException("number out of range", start);
+    }
+  }
+
+  /**
+   * Consumes a number token under the cursor, without interpreting its value.
+   */
+  void skipNumber() throws IOException {
+    this.scanNumber(false);
+  }
+
+  boolean isIntegral() {
+    return number.isIntegral();
+  }
+
+  long longValue() {
+    return number.longValue();
+  }
+
+  double doubleValue() {
+    return number.doubleValue();
+  }
+
+  Number bigValue() {
+    return number.bigValue();
+  }
+
+  private void scanNumber(boolean collect) throws IOException {
+    number.reset(collect);
+    int c;
+    while (number.accept(c = peek())) {
+      advance();
+    }
+    if (!number.isComplete()) {
+      throw unexpected(c, "digit");
+    }
+  }
+
+  /**
+   * Returns the shared text buffer of this scanner, emptied.
+   */
+  StringBuilder resetText() {
+    text.setLength(0);
+    return text;
+  }
+
+  static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  /**
+   * Returns the character the single-character escape sequence {@code \c} stands for, or
+   * {@code -1} if there is no such escape sequence.
+   */
+  static int escaped(int c) {
+    return switch (c) {
+      case '"', '\\', '/' -> c;
+      case 'b' -> '\b';
+      case 'f' -> '\f';
+      case 'n' -> '\n';
+      case 'r' -> '\r';
+      case 't' -> '\t';
+      default -> -1;
+    };
+  }
+
+  /**
+   * Returns the value of the provided hexadecimal digit, or {@code -1} if it is not one.
+   */
+  static int hexValue(int c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    final int lower = c | 0x20;
+    return (lower >= 'a' && lower <= 'f') ? lower - 'a' + 10 : -1;
+  }
+
+  static JsonParseException invalidEscape(long offset) {
+    return new JsonParseException("invalid escape sequence", offset);
+  }
+
+  JsonParseException unexpected(int c, String expected) {
+    final String found = (c == EOF) ? "end of input" : "'" + (char) c + "'";
+    return error("unexpected " + found + ", expected " + expected);
+  }
+
+  JsonParseException error(String message) {
+    return new JsonParseException(message, position());
+  }
+
+}
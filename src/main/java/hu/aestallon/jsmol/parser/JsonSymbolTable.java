@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A bounded cache canonicalising the keys of JSON objects.
+ *
+ * <p>
+ * Keys are looked up straight from the characters or bytes of the input: if a key has been seen
+ * before, the same {@code String} instance is returned, without creating a new one. Besides saving
+ * the heap occupied by duplicate keys, shared instances make map lookups cheaper, as their hash
+ * codes are computed only once, and identical instances are equal right away.
+ *
+ * <p>
+ * The table is a direct-mapped cache of a fixed capacity: a key evicts the previous occupant of its
+ * slot. Keys longer than {@value #MAX_KEY_LENGTH} code units are never cached. The hashes of
+ * characters and {@code UTF-8} bytes agree for {@code ASCII} keys, thus such keys are shared between
+ * character and byte inputs as well.
+ *
+ * <p>
+ * A table may be shared between parsers, and parses running concurrently: at worst, racing
+ * threads evict each other's keys.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class JsonSymbolTable {
+
+  public static final int DEFAULT_CAPACITY = 512;
+  public static final int MAX_KEY_LENGTH   = 64;
+
+  private static final class Entry {
+    private final String key;
+    private final byte[] utf8;
+    private final int    hash;
+
+    private Entry(String key, byte[] utf8, int hash) {
+      this.key = key;
+      this.utf8 = utf8;
+      this.hash = hash;
+    }
+  }
+
+  private final Entry[] entries;
+  private final int     mask;
+
+  public JsonSymbolTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a table of (at least) the provided capacity, rounded up to a power of two.
+   */
+  public JsonSymbolTable(int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("invalid capacity: " + capacity);
+    }
+    final int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.entries = new Entry[size];
+    this.mask = size - 1;
+  }
+
+  public int capacity() {
+    return entries.length;
+  }
+
+  /**
+   * Returns the canonical instance of the provided key.
+   */
+  String intern(CharSequence chars) {
+    final int length = chars.length();
+    if (length > MAX_KEY_LENGTH) {
+      return chars.toString();
+    }
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    final int slot = this.slot(hash);
+    final Entry entry = entries[slot];
+    if (entry != null && entry.hash == hash && entry.key.contentEquals(chars)) {
+      return entry.key;
+    }
+    final String key = chars.toString();
+    entries[slot] = new Entry(key, key.getBytes(StandardCharsets.UTF_8), hash);
+    return key;
+  }
+
+  /**
+   * Returns the canonical instance of the key encoded by the provided {@code UTF-8} bytes.
+   */
+  String intern(byte[] utf8, int from, int to) {
+    if (to - from > MAX_KEY_LENGTH) {
+      return new String(utf8, from, to - from, StandardCharsets.UTF_8);
+    }
+    int hash = 0;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + (utf8[i] & 0xFF);
+    }
+    final int slot = this.slot(hash);
+    final Entry entry = entries[slot];
+    if (entry != null
+        && entry.hash == hash
+        && Arrays.equals(entry.utf8, 0, entry.utf8.length, utf8, from, to)) {
+      return entry.key;
+    }
+    final String key = new String(utf8, from, to - from, StandardCharsets.UTF_8);
+    entries[slot] = new Entry(key, Arrays.copyOfRange(utf8, from, to), hash);
+    return key;
+  }
+
+  private int slot(int hash) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+}
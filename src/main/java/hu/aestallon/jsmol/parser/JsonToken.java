@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+/**
+ * The kinds of tokens a {@link JsonReader} encounters in a JSON text.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public enum JsonToken {
+
+  BEGIN_OBJECT,
+  END_OBJECT,
+  BEGIN_ARRAY,
+  END_ARRAY,
+  /**
+   * The name of an object member.
+   */
+  NAME,
+  STRING,
+  NUMBER,
+  BOOLEAN,
+  NULL,
+  /**
+   * The end of the JSON text: there are no more tokens to read.
+   */
+  END_DOCUMENT
+
+}
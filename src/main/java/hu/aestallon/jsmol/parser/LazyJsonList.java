@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The elements of a lazily parsed JSON array.
+ *
+ * <p>
+ * On first access, the elements of the array are located: they are skipped, only their offsets are
+ * recorded. An element is parsed when it is first accessed, and memoised afterwards. The list is
+ * read-only.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class LazyJsonList extends AbstractList<JsonValue> implements RandomAccess {
+
+  private static final class Index {
+    private final int[]       offsets;
+    private final JsonValue[] values;
+
+    private Index(int[] offsets) {
+      this.offsets = offsets;
+      this.values = new JsonValue[offsets.length];
+    }
+  }
+
+  /**
+   * Reads the array starting at the cursor of the provided reader, consuming it.
+   */
+  static LazyJsonList read(LazySource source, JsonReader reader) throws IOException {
+    final LazyJsonList list = new LazyJsonList(source, source.indexOf(reader));
+    list.index = index(source, reader, true);
+    reader.nextToken();
+    return list;
+  }
+
+  private final    LazySource source;
+  private final    int        start;
+  private volatile Index      index;
+
+  LazyJsonList(LazySource source, int start) {
+    this.source = source;
+    this.start = start;
+  }
+
+  /**
+   * Locates the elements of the array starting at the cursor of the provided reader, leaving the
+   * reader at the end of the array.
+   *
+   * @param validate whether the skipped values are validated, or only their brackets are counted
+   *                 (as they have been validated up front, when the root was read)
+   */
+  private static Index index(LazySource source, JsonReader reader, boolean validate)
+      throws IOException {
+    reader.nextToken();
+    int[] offsets = new int[8];
+    int size = 0;
+    while (reader.hasNext()) {
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      offsets[size++] = source.indexOf(reader);
+      if (validate) {
+        reader.skipValue();
+      } else {
+        reader.skipSubtree();
+      }
+    }
+    return new Index(Arrays.copyOf(offsets, size));
+  }
+
+  private Index index() {
+    Index i = index;
+    if (i == null) {
+      try {
+        index = i = index(source, source.readerAt(start), false);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return i;
+  }
+
+  @Override
+  public JsonValue get(int idx) {
+    final Index i = this.index();
+    JsonValue value = i.values[idx];
+    if (value == null) {
+      i.values[idx] = value = source.valueAt(i.offsets[idx]);
+    }
+    return value;
+  }
+
+  @Override
+  public int size() {
+    return this.index().offsets.length;
+  }
+
+}
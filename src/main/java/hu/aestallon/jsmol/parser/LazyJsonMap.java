@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The members of a lazily parsed JSON object.
+ *
+ * <p>
+ * On first access, the members of the object are located: their keys are read, but their values
+ * are skipped, only their offsets are recorded. A value is parsed when it is first accessed, and
+ * memoised afterwards. The map is read-only, and retains the order of the members.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class LazyJsonMap extends AbstractMap<String, JsonValue> {
+
+  private static final class Index {
+    private final String[]             keys;
+    private final int[]                offsets;
+    private final JsonValue[]          values;
+    private final Map<String, Integer> positions;
+
+    private Index(List<String> keys, List<Integer> offsets, Map<String, Integer> positions) {
+      this.keys = keys.toArray(String[]::new);
+      this.offsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+      this.values = new JsonValue[this.keys.length];
+      this.positions = positions;
+    }
+  }
+
+  /**
+   * Reads the object starting at the cursor of the provided reader, consuming it.
+   */
+  static LazyJsonMap read(LazySource source, JsonReader reader) throws IOException {
+    final LazyJsonMap map = new LazyJsonMap(source, source.indexOf(reader));
+    map.index = index(source, reader, true);
+    reader.nextToken();
+    return map;
+  }
+
+  private final    LazySource source;
+  private final    int        start;
+  private volatile Index      index;
+
+  LazyJsonMap(LazySource source, int start) {
+    this.source = source;
+    this.start = start;
+  }
+
+  /**
+   * Locates the members of the object starting at the cursor of the provided reader, leaving the
+   * reader at the end of the object.
+   *
+   * @param validate whether the skipped values are validated, or only their brackets are counted
+   *                 (as they have been validated up front, when the root was read)
+   */
+  private static Index index(LazySource source, JsonReader reader, boolean validate)
+      throws IOException {
+    reader.nextToken();
+    final List<String> keys = new ArrayList<>();
+    final List<Integer> offsets = new ArrayList<>();
+    final Map<String, Integer> positions = new HashMap<>();
+    while (reader.hasNext()) {
+      final long keyOffset = reader.position();
+      final String key = reader.nextName();
+      if (positions.putIfAbsent(key, keys.size()) != null) {
+        throw new JsonParseException("duplicate key: " + key, keyOffset);
+      }
+      keys.add(key);
+      reader.peek();
+      offsets.add(source.indexOf(reader));
+      if (validate) {
+        reader.skipValue();
+      } else {
+        reader.skipSubtree();
+      }
+    }
+    return new Index(keys, offsets, positions);
+  }
+
+  private Index index() {
+    Index i = index;
+    if (i == null) {
+      try {
+        index = i = index(source, source.readerAt(start), false);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return i;
+  }
+
+  private JsonValue value(Index i, int position) {
+    JsonValue value = i.values[position];
+    if (value == null) {
+      i.values[position] = value = source.valueAt(i.offsets[position]);
+    }
+    return value;
+  }
+
+  @Override
+  public int size() {
+    return this.index().keys.length;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return this.index().positions.containsKey(key);
+  }
+
+  @Override
+  public JsonValue get(Object key) {
+    final Index i = this.index();
+    final Integer position = i.positions.get(key);
+    return (position == null) ? null : this.value(i, position);
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<String> iterator() {
+        return List.of(index().keys).iterator();
+      }
+
+      @Override
+      public int size() {
+        return LazyJsonMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+    };
+  }
+
+  @Override
+  public Set<Entry<String, JsonValue>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<String, JsonValue>> iterator() {
+        final Index i = index();
+        return new Iterator<>() {
+          private int position;
+
+          @Override
+          public boolean hasNext() {
+            return position < i.keys.length;
+          }
+
+          @Override
+          public Entry<String, JsonValue> next() {
+            if (!this.hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final int p = position++;
+            return new SimpleImmutableEntry<>(i.keys[p], value(i, p));
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return LazyJsonMap.this.size();
+      }
+    };
+  }
+
+}
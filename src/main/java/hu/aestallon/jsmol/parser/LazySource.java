@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The input of a lazily parsed tree, shared by all of its lazy objects and arrays.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class LazySource {
+
+  private final JsonParser      parser;
+  private final JsonSymbolTable symbols;
+  private final ByteBuffer      buffer;
+  private final int             origin;
+
+  /**
+   * @param origin the index of the buffer offsets are reported from
+   */
+  LazySource(JsonParser parser, ByteBuffer buffer, int origin) {
+    this.parser = parser;
+    this.symbols = parser.symbols();
+    this.buffer = buffer;
+    this.origin = origin;
+  }
+
+  /**
+   * Returns a reader reading the input from the given index of the buffer.
+   */
+  JsonReader readerAt(int index) {
+    return new JsonReader(new ByteScanner(buffer.duplicate().position(index), origin))
+        .useSymbols(symbols)
+        .useMaxDepth(parser.maxDepth());
+  }
+
+  /**
+   * Returns the index of the buffer the provided reader is at.
+   */
+  int indexOf(JsonReader reader) {
+    return origin + (int) reader.position();
+  }
+
+  /**
+   * Parses the value starting at the given index of the buffer, keeping it lazy if it is an object
+   * or an array.
+   */
+  JsonValue valueAt(int index) {
+    try {
+      return switch (buffer.get(index)) {
+        case '{' -> new JsonObject(new LazyJsonMap(this, index));
+        case '[' -> new JsonArray(new LazyJsonList(this, index));
+        default -> JsonParser.readValue(this.readerAt(index));
+      };
+    } catch (IOException e) {
+      // buffers are never read through I/O:
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Recognises a number token one code unit at a time, and computes its value.
+ *
+ * <p>
+ * The scanner is a resumable state machine: it is fed the code units of the token as they become
+ * available, which makes it usable both by the scanners working on complete windows, and by the
+ * {@link IncrementalJsonParser}, which may receive a token split between several chunks.
+ *
+ * <p>
+ * The full number grammar of RFC 8259 is accepted: an optional minus sign, an integer part without
+ * leading zeros, and optional fraction and exponent parts. The decimal significand is accumulated
+ * while the digits are read, thus computing the value takes no further pass over the token, and
+ * allocates nothing in the common cases:
+ * <ul>
+ *   <li>integers of at most 19 digits are read as {@code long}s, if they fit,</li>
+ *   <li>other numbers with at most 19 significant digits are converted to correctly rounded
+ *   {@code double}s, either exactly in floating point (if both the significand and the power of ten
+ *   are exactly representable), or by the Eisel-Lemire algorithm, multiplying the significand by a
+ *   128-bit approximation of the power of ten.</li>
+ * </ul>
+ * Longer significands (and the very rare cases the Eisel-Lemire algorithm cannot decide) are
+ * converted from the text of the token. Integers out of the range of a {@code long} are represented
+ * as {@link BigInteger}s, and other numbers out of the range of a {@code double} as
+ * {@link BigDecimal}s.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class NumberScanner {
+
+  // -----------------------------------------------------------------------------------------------
+  // States
+  private static final int START         = 0;
+  private static final int SIGN          = 1;
+  private static final int ZERO          = 2;
+  private static final int INTEGER       = 3;
+  private static final int POINT         = 4;
+  private static final int FRACTION      = 5;
+  private static final int EXPONENT_MARK = 6;
+  private static final int EXPONENT_SIGN = 7;
+  private static final int EXPONENT      = 8;
+
+  /**
+   * The number of decimal digits which always fit in an unsigned {@code long}.
+   */
+  private static final int MAX_DIGITS     = 19;
+  /**
+   * The magnitude beyond which explicit exponents are not accumulated any further: any number with
+   * such an exponent is either zero or infinite as a {@code double}, regardless of its significand.
+   */
+  private static final int EXPONENT_LIMIT = 100_000;
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private final StringBuilder text = new StringBuilder();
+  private       boolean       collect;
+  private       int           state;
+
+  // the decimal value accumulated: significand * 10^(exponent + exponentAdjustment)
+  private boolean negative;
+  private long    significand;
+  private int     digits;
+  private boolean truncated;
+  private int     exponentAdjustment;
+  private boolean negativeExponent;
+  private int     exponent;
+
+  private long   longValue;
+  private double doubleValue;
+  private Number bigValue;
+
+  /**
+   * Prepares the scanner for a new token.
+   *
+   * @param collect whether the value of the token is going to be needed
+   */
+  void reset(boolean collect) {
+    this.collect = collect;
+    this.state = START;
+    this.text.setLength(0);
+    this.negative = false;
+    this.significand = 0L;
+    this.digits = 0;
+    this.truncated = false;
+    this.exponentAdjustment = 0;
+    this.negativeExponent = false;
+    this.exponent = 0;
+  }
+
+  /**
+   * Offers the next code unit of the input to the scanner.
+   *
+   * @return {@code true} if the code unit continues the number, or {@code false} if it is not part
+   *     of it (in which case the number is either complete, or malformed)
+   */
+  boolean accept(int c) {
+    final boolean digit = JsonScanner.isDigit(c);
+    switch (state) {
+      case START -> {
+        if (c == '-') {
+          negative = true;
+          state = SIGN;
+        } else if (digit) {
+          this.integerDigit(c);
+        } else {
+          return false;
+        }
+      }
+      case SIGN -> {
+        if (!digit) {
+          return false;
+        }
+        this.integerDigit(c);
+      }
+      case ZERO -> {
+        if (c == '.') {
+          state = POINT;
+        } else if (c == 'e' || c == 'E') {
+          state = EXPONENT_MARK;
+        } else {
+          return false;
+        }
+      }
+      case INTEGER -> {
+        if (digit) {
+          this.integerDigit(c);
+        } else if (c == '.') {
+          state = POINT;
+        } else if (c == 'e' || c == 'E') {
+          state = EXPONENT_MARK;
+        } else {
+          return false;
+        }
+      }
+      case POINT -> {
+        if (!digit) {
+          return false;
+        }
+        this.fractionDigit(c);
+        state = FRACTION;
+      }
+      case FRACTION -> {
+        if (digit) {
+          this.fractionDigit(c);
+        } else if (c == 'e' || c == 'E') {
+          state = EXPONENT_MARK;
+        } else {
+          return false;
+        }
+      }
+      case EXPONENT_MARK -> {
+        if (c == '-' || c == '+') {
+          negativeExponent = c == '-';
+          state = EXPONENT_SIGN;
+        } else if (digit) {
+          this.exponentDigit(c);
+        } else {
+          return false;
+        }
+      }
+      case EXPONENT_SIGN, EXPONENT -> {
+        if (!digit) {
+          return false;
+        }
+        this.exponentDigit(c);
+      }
+      default -> throw new IllegalStateException("unknown state: " + state);
+    }
+    if (collect) {
+      text.append((char) c);
+    }
+    return true;
+  }
+
+  private void integerDigit(int c) {
+    if (c == '0' && state != INTEGER) {
+      // a leading zero may only be followed by a fraction or an exponent:
+      state = ZERO;
+      return;
+    }
+    state = INTEGER;
+    if (!collect) {
+      return;
+    }
+    if (digits < MAX_DIGITS) {
+      significand = significand * 10 + (c - '0');
+      digits++;
+    } else {
+      truncated = true;
+      exponentAdjustment++;
+    }
+  }
+
+  private void fractionDigit(int c) {
+    if (!collect) {
+      return;
+    }
+    if (digits < MAX_DIGITS) {
+      if (significand != 0 || c != '0') {
+        significand = significand * 10 + (c - '0');
+        digits++;
+      }
+      exponentAdjustment--;
+    } else {
+      truncated = true;
+    }
+  }
+
+  private void exponentDigit(int c) {
+    state = EXPONENT;
+    if (collect && exponent < EXPONENT_LIMIT) {
+      exponent = exponent * 10 + (c - '0');
+    }
+  }
+
+  /**
+   * Returns whether the code units accepted so far make up a complete number.
+   */
+  boolean isComplete() {
+    return state == ZERO || state == INTEGER || state == FRACTION || state == EXPONENT;
+  }
+
+  /**
+   * Computes the value of the (complete) number, making it available through {@link #longValue()},
+   * {@link #doubleValue()} or {@link #bigValue()}.
+   *
+   * @return {@code false} if the number is beyond any representation (such as an exponent out of
+   *     the range of an {@code int})
+   */
+  boolean complete() {
+    bigValue = null;
+    if (state == ZERO || state == INTEGER) {
+      if (!truncated && (digits < MAX_DIGITS || Long.compareUnsigned(
+          significand, negative ? Long.MIN_VALUE : Long.MAX_VALUE) <= 0)) {
+        longValue = negative ? -significand : significand;
+        return true;
+      }
+      bigValue = new BigInteger(text.toString());
+      doubleValue = bigValue.doubleValue();
+      return true;
+    }
+
+    double d = truncated
+        ? Double.NaN
+        : toDouble(significand, (negativeExponent ? -exponent : exponent) + exponentAdjustment);
+    if (Double.isNaN(d)) {
+      d = Math.abs(Double.parseDouble(text.toString()));
+    }
+    if (Double.isInfinite(d)) {
+      try {
+        bigValue = new BigDecimal(text.toString());
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    doubleValue = negative ? -d : d;
+    return true;
+  }
+
+  /**
+   * Returns whether the number is integral and fits in a {@code long}, thus it is represented as
+   * one.
+   */
+  boolean isIntegral() {
+    return (state == ZERO || state == INTEGER) && bigValue == null;
+  }
+
+  long longValue() {
+    return longValue;
+  }
+
+  /**
+   * Returns the value of a number with a fraction or an exponent, or the nearest {@code double} to
+   * any other number.
+   */
+  double doubleValue() {
+    return doubleValue;
+  }
+
+  /**
+   * Returns the value of the number as a {@link BigInteger} if it is an integer out of the range of
+   * a {@code long}, as a {@link BigDecimal} if it is any other number out of the range of a
+   * {@code double}, or {@code null} otherwise.
+   */
+  Number bigValue() {
+    return bigValue;
+  }
+
+  /**
+   * Returns the {@code double} nearest to {@code w * 10^q}, or {@code NaN} if it cannot be decided
+   * without resorting to arbitrary precision.
+   *
+   * @param w an unsigned significand
+   * @param q the decimal exponent
+   */
+  static double toDouble(long w, int q) {
+    if (w == 0L) {
+      return 0.0;
+    }
+    if (q >= -22 && q <= 22 && w >= 0L && w <= 1L << 53) {
+      // both w and 10^|q| are exact, thus their product (or quotient) is correctly rounded:
+      final double d = w;
+      return (q < 0) ? d / POWERS_OF_TEN[-q] : d * POWERS_OF_TEN[q];
+    }
+    return EiselLemire.toDouble(w, q);
+  }
+
+  /**
+   * The Eisel-Lemire algorithm (see Daniel Lemire: Number Parsing at a Gigabyte per Second).
+   *
+   * <p>
+   * The table of the powers of five is computed when it is first needed, as most numbers are
+   * converted without it.
+   */
+  private static final class EiselLemire {
+
+    private static final int  SMALLEST_POWER   = -342;
+    private static final int  LARGEST_POWER    = 308;
+    private static final int  MANTISSA_BITS    = 52;
+    private static final int  MINIMUM_EXPONENT = -1023;
+    private static final int  INFINITE_POWER   = 0x7FF;
+    private static final long PRECISION_MASK   = -1L >>> (MANTISSA_BITS + 3);
+
+    private static final long[] HIGH = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+    private static final long[] LOW  = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+
+    static {
+      // 5^q truncated to its 128 most significant bits, or, for negative q, the 128 most
+      // significant bits of 2^b / 5^-q rounded up:
+      final BigInteger five = BigInteger.valueOf(5);
+      for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+        BigInteger c;
+        if (q < 0) {
+          final BigInteger power = five.pow(-q);
+          final int z = power.bitLength();
+          final int b = (q >= -27) ? z + 127 : 2 * z + 128;
+          c = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+        } else {
+          c = five.pow(q);
+          c = c.shiftLeft(Math.max(0, 128 - c.bitLength()));
+        }
+        c = c.shiftRight(Math.max(0, c.bitLength() - 128));
+        HIGH[q - SMALLEST_POWER] = c.shiftRight(64).longValue();
+        LOW[q - SMALLEST_POWER] = c.longValue();
+      }
+    }
+
+    private static double toDouble(long w, int q) {
+      if (q < SMALLEST_POWER) {
+        return 0.0;
+      }
+      if (q > LARGEST_POWER) {
+        return Double.POSITIVE_INFINITY;
+      }
+      final int lz = Long.numberOfLeadingZeros(w);
+      w <<= lz;
+
+      final int index = q - SMALLEST_POWER;
+      long high = unsignedMultiplyHigh(w, HIGH[index]);
+      long low = w * HIGH[index];
+      if ((high & PRECISION_MASK) == PRECISION_MASK) {
+        // the product may be off by one in the bits that matter, the next 64 bits decide:
+        final long secondHigh = unsignedMultiplyHigh(w, LOW[index]);
+        low += secondHigh;
+        if (Long.compareUnsigned(secondHigh, low) > 0) {
+          high++;
+        }
+        if (low == -1L && (q < -27 || q > 55)) {
+          return Double.NaN;
+        }
+      }
+
+      final int upperBit = (int) (high >>> 63);
+      final int shift = upperBit + 64 - MANTISSA_BITS - 3;
+      long mantissa = high >>> shift;
+      int power2 = power(q) + upperBit - lz - MINIMUM_EXPONENT;
+      if (power2 <= 0) {
+        // subnormal:
+        if (-power2 + 1 >= 64) {
+          return 0.0;
+        }
+        mantissa >>>= -power2 + 1;
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        power2 = (mantissa < 1L << MANTISSA_BITS) ? 0 : 1;
+        return Double.longBitsToDouble(((long) power2 << MANTISSA_BITS) | mantissa);
+      }
+      if (Long.compareUnsigned(low, 1L) <= 0
+          && q >= -4 && q <= 23
+          && (mantissa & 3) == 1
+          && mantissa << shift == high) {
+        // exactly halfway between two doubles: round to even
+        mantissa &= ~1L;
+      }
+      mantissa += mantissa & 1;
+      mantissa >>>= 1;
+      if (mantissa >= 2L << MANTISSA_BITS) {
+        mantissa = 1L << MANTISSA_BITS;
+        power2++;
+      }
+      mantissa &= ~(1L << MANTISSA_BITS);
+      if (power2 >= INFINITE_POWER) {
+        return Double.POSITIVE_INFINITY;
+      }
+      return Double.longBitsToDouble(((long) power2 << MANTISSA_BITS) | mantissa);
+    }
+
+    /**
+     * Returns {@code floor(log2(10^q)) + 63}.
+     */
+    private static int power(int q) {
+      return (((152170 + 65536) * q) >> 16) + 63;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+      return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+  }
+
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.result.ExErr;
+import hu.aestallon.jsmol.result.Result;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses large {@code UTF-8} encoded inputs on several threads of a {@link ForkJoinPool}.
+ *
+ * <p>
+ * Newline-delimited inputs (also known as JSON Lines or NDJSON) are split at line boundaries into
+ * chunks, which are then parsed in parallel, each line by the configured {@link JsonParser}. The
+ * results are streamed back as the chunks complete: either in the order of the lines, or in the
+ * order they become available. Only a bounded number of chunks are in flight at any time, thus the
+ * memory needed is independent of the size of the input (as long as the results are not retained
+ * by the caller).
+ *
+ * <p>
+ * A malformed line does not abort the rest of the input: it yields an {@code Err} wrapping a
+ * {@link JsonLineException}, carrying both the number of the line, and the offset of the problem.
+ * Blank lines are skipped.
+ *
+ * <p>
+ * A single, huge top-level array is parsed in two phases. First, a fast structural scan (tracking
+ * only nesting depth, and whether the cursor is inside a string) finds the boundaries of the
+ * elements of the array. Then, the elements are parsed in parallel, and assembled in their original
+ * order. The result is identical to that of the sequential {@link JsonParser}: inputs which are not
+ * arrays, and malformed inputs are handed to the sequential parser, thus errors are reported
+ * exactly the same way.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class ParallelJsonParser {
+
+  private static final int  MIN_CHUNK_SIZE = 1 << 16;
+  private static final int  MAX_CHUNK_SIZE = 1 << 24;
+  private static final byte NEWLINE        = '\n';
+
+  /**
+   * A buffer holding a part of the input, and the offset of its first byte in the input.
+   */
+  private record Segment(ByteBuffer buffer, long base) {}
+
+  /**
+   * A range of whole lines of a segment, and its index among the chunks of the input.
+   */
+  private record Chunk(Segment segment, int from, int to, int index) {}
+
+  /**
+   * The results of the lines of a chunk, and the number of its lines. Malformed lines are only
+   * numbered once the lines of every preceding chunk are counted: until then, their results are
+   * left empty, and their errors are kept apart.
+   */
+  private record ParsedChunk(int index, List<Result<JsonValue>> results, long lines,
+                             List<LineError> errors) {}
+
+  /**
+   * The error of a malformed line, the position of its result, and the number of the line within
+   * its chunk (starting from zero).
+   */
+  private record LineError(int position, long line, String reason, long offset) {}
+
+  private final JsonParser   parser;
+  private final JsonParser   elementParser;
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a parser with the default configuration, running in the common pool.
+   */
+  public ParallelJsonParser() {
+    this(new JsonParser(), ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a parser running the provided parser in the provided pool. Unless the parser is
+   * configured otherwise, the lines and elements parsed share a single symbol table.
+   */
+  public ParallelJsonParser(JsonParser parser, ForkJoinPool pool) {
+    this.parser = parser.shareSymbols();
+    // the elements of a top-level array are nested one level deep:
+    this.elementParser = this.parser.nested();
+    this.pool = pool;
+  }
+
+  /**
+   * Parses every line of the remaining bytes of the provided buffer.
+   *
+   * <p>
+   * The position and limit of the buffer are left untouched, and reported offsets are measured
+   * from its position.
+   *
+   * @param ordered whether the results have to follow the order of the lines
+   */
+  public Stream<Result<JsonValue>> parseLines(ByteBuffer buffer, boolean ordered) {
+    final Segment segment = new Segment(buffer, -buffer.position());
+    return this.parseLines(List.of(segment), buffer.position(), buffer.limit(), ordered);
+  }
+
+  /**
+   * Parses every line of the file at the provided path, mapping it into memory.
+   *
+   * <p>
+   * The file is mapped in segments, thus files larger than {@code 2 GB} are supported, provided
+   * that none of their lines is longer than a single segment.
+   *
+   * @param ordered whether the results have to follow the order of the lines
+   */
+  public Stream<Result<JsonValue>> parseLines(Path path, boolean ordered) throws IOException {
+    final List<Segment> segments = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      long offset = 0L;
+      while (offset < size) {
+        final long length = Math.min(ByteScanner.MAPPED_WINDOW_SIZE, size - offset);
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        int end = (int) length;
+        if (offset + length < size) {
+          // end the segment after its last newline, so no line is split between segments:
+          while (end > 0 && mapped.get(end - 1) != NEWLINE) {
+            end--;
+          }
+          if (end == 0) {
+            throw new IOException("line at offset " + offset + " is longer than a segment");
+          }
+        }
+        segments.add(new Segment(mapped.limit(end), offset));
+        offset += end;
+      }
+    }
+    return this.parseLines(segments, -1, -1, ordered);
+  }
+
+  /**
+   * Parses the lines of the provided segments. The bounds apply to a single segment, and are
+   * ignored if negative.
+   */
+  private Stream<Result<JsonValue>> parseLines(List<Segment> segments, int from, int to,
+                                               boolean ordered) {
+    final List<Chunk> chunks = new ArrayList<>();
+    for (Segment segment : segments) {
+      final int start = (from < 0) ? 0 : from;
+      final int end = (to < 0) ? segment.buffer().limit() : to;
+      final int chunkSize = this.chunkSize(end - start);
+      int chunkStart = start;
+      while (chunkStart < end) {
+        int chunkEnd = (int) Math.min((long) chunkStart + chunkSize, end);
+        chunkEnd = this.lineEnd(segment.buffer(), chunkEnd, end);
+        chunks.add(new Chunk(segment, chunkStart, chunkEnd, chunks.size()));
+        chunkStart = chunkEnd;
+      }
+    }
+
+    final ChunkIterator iterator = new ChunkIterator(chunks, ordered);
+    return StreamSupport
+        .stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator,
+                Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0)),
+            false)
+        .onClose(iterator::cancel)
+        .flatMap(List::stream);
+  }
+
+  /**
+   * Parses the remaining bytes of the provided buffer, parsing the elements of a top-level array in
+   * parallel.
+   *
+   * <p>
+   * The position and limit of the buffer are left untouched.
+   */
+  public Result<JsonValue> parseArray(ByteBuffer buffer) {
+    final StructuralIndex index = new StructuralIndex();
+    index.scan(buffer, -buffer.position());
+    return (index.isArray() && parser.maxDepth() > 0)
+        ? this.parseElements(index, (start, end) -> buffer.slice(
+            (int) start + buffer.position(),
+            (int) (end - start)))
+            .or(() -> parser.parse(buffer))
+        : parser.parse(buffer);
+  }
+
+  /**
+   * Parses the {@code UTF-8} encoded JSON file at the provided path, mapping it into memory, and
+   * parsing the elements of a top-level array in parallel.
+   */
+  public Result<JsonValue> parseArray(Path path) {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      final List<ByteBuffer> windows = new ArrayList<>();
+      final StructuralIndex index = new StructuralIndex();
+      for (long offset = 0L; offset < size; offset += ByteScanner.MAPPED_WINDOW_SIZE) {
+        final long length = Math.min(ByteScanner.MAPPED_WINDOW_SIZE, size - offset);
+        final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        windows.add(window);
+        index.scan(window, offset);
+      }
+      if (index.isArray() && parser.maxDepth() > 0) {
+        final Result<JsonValue> array = this.parseElements(index, (start, end) -> {
+          final int w = (int) (start / ByteScanner.MAPPED_WINDOW_SIZE);
+          final long base = w * ByteScanner.MAPPED_WINDOW_SIZE;
+          return (end <= base + windows.get(w).limit())
+              ? windows.get(w).slice((int) (start - base), (int) (end - start))
+              // the element spans two windows:
+              : channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        });
+        if (array.isOk()) {
+          return array;
+        }
+      }
+    } catch (IOException e) {
+      return ExErr.of(e);
+    }
+    return parser.parse(path);
+  }
+
+  /**
+   * Slices the range of an element out of the input.
+   */
+  @FunctionalInterface
+  private interface ElementSlicer {
+    ByteBuffer slice(long start, long end) throws IOException;
+  }
+
+  /**
+   * Parses the elements found by the provided index in parallel.
+   *
+   * @return the array of the elements, or an {@code Err} if any of them is malformed (the error
+   *     itself is to be reported by the sequential parser)
+   */
+  private Result<JsonValue> parseElements(StructuralIndex index, ElementSlicer slicer) {
+    final JsonValue[] elements = new JsonValue[index.count];
+    final ForkJoinTask<?> task = new ElementTask(index, slicer, elements, 0, index.count);
+    return Result.of(() -> {
+      pool.invoke(task);
+      return new JsonArray(new ArrayList<>(Arrays.asList(elements)));
+    });
+  }
+
+  /**
+   * Parses a range of elements, splitting it in halves while it is large.
+   */
+  private final class ElementTask extends RecursiveAction {
+
+    private static final long serialVersionUID   = 1L;
+    private static final int  ELEMENT_BATCH_SIZE = 1 << 16;
+
+    private final StructuralIndex index;
+    private final ElementSlicer   slicer;
+    private final JsonValue[]     elements;
+    private final int             from;
+    private final int             to;
+
+    private ElementTask(StructuralIndex index, ElementSlicer slicer, JsonValue[] elements,
+                        int from, int to) {
+      this.index = index;
+      this.slicer = slicer;
+      this.elements = elements;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1 && index.ends[to - 1] - index.starts[from] > ELEMENT_BATCH_SIZE) {
+        final int mid = (from + to) >>> 1;
+        invokeAll(
+            new ElementTask(index, slicer, elements, from, mid),
+            new ElementTask(index, slicer, elements, mid, to));
+        return;
+      }
+      for (int i = from; i < to; i++) {
+        final ByteBuffer element;
+        try {
+          element = slicer.slice(index.starts[i], index.ends[i]);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        elements[i] = elementParser.parse(new ByteScanner(element)).unwrap();
+      }
+    }
+
+  }
+
+  /**
+   * Finds the boundaries of the elements of a top-level array, without parsing them.
+   *
+   * <p>
+   * The scan only tracks the nesting depth, and whether the cursor is inside a string (and right
+   * after an escape character in it), which is enough to tell the commas separating the elements
+   * of the top-level array. The input may be scanned in consecutive windows.
+   */
+  private static final class StructuralIndex {
+
+    private long[]  starts = new long[1024];
+    private long[]  ends   = new long[1024];
+    private int     count;
+    private int     depth;
+    private boolean started;
+    private boolean closed;
+    private boolean inString;
+    private boolean escaped;
+    private boolean blank = true;
+    private boolean malformed;
+
+    private void scan(ByteBuffer window, long base) {
+      final int limit = window.limit();
+      for (int i = window.position(); i < limit && !malformed; i++) {
+        final byte b = window.get(i);
+        if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (b == '\\') {
+            escaped = true;
+          } else if (b == '"') {
+            inString = false;
+          }
+        } else if (closed || !started) {
+          if (JsonScanner.isWhitespace(b)) {
+            continue;
+          }
+          if (closed || b != '[') {
+            malformed = true;
+          } else {
+            started = true;
+            depth = 1;
+            starts[0] = base + i + 1;
+          }
+        } else {
+          if (blank && b != ']' && !JsonScanner.isWhitespace(b)) {
+            blank = false;
+          }
+          switch (b) {
+            case '"' -> inString = true;
+            case '[', '{' -> depth++;
+            case ']', '}' -> {
+              if (--depth == 0) {
+                malformed = b != ']';
+                closed = true;
+                ends[count++] = base + i;
+              }
+            }
+            case ',' -> {
+              if (depth == 1) {
+                this.next(base + i);
+              }
+            }
+            default -> {}
+          }
+        }
+      }
+    }
+
+    private void next(long comma) {
+      ends[count++] = comma;
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      starts[count] = comma + 1;
+    }
+
+    private boolean isArray() {
+      if (!closed || malformed) {
+        return false;
+      }
+      if (blank) {
+        // the only "element" of an empty array is whitespace (if anything):
+        count = 0;
+      }
+      return true;
+    }
+
+  }
+
+  private int chunkSize(int length) {
+    final long perTask = length / (pool.getParallelism() * 8L);
+    return (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, perTask));
+  }
+
+  /**
+   * Returns the index after the first newline at or after the provided index, or the end.
+   */
+  private int lineEnd(ByteBuffer buffer, int index, int end) {
+    while (index < end) {
+      if (buffer.get(index++) == NEWLINE) {
+        return index;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Parses the lines of a chunk, counting them as it goes.
+   */
+  private ParsedChunk parseChunk(Chunk chunk) {
+    final ByteBuffer buffer = chunk.segment().buffer();
+    final List<Result<JsonValue>> results = new ArrayList<>();
+    final List<LineError> errors = new ArrayList<>(0);
+    long line = 0L;
+    int start = chunk.from();
+    while (start < chunk.to()) {
+      int end = start;
+      while (end < chunk.to() && buffer.get(end) != NEWLINE) {
+        end++;
+      }
+      if (!isBlank(buffer, start, end)) {
+        final Result<JsonValue> result =
+            parser.parse(new ByteScanner(buffer.slice(start, end - start)));
+        final Object[] error = new Object[1];
+        result.errMatch(e -> error[0] = e);
+        if (error[0] instanceof JsonParseException e) {
+          errors.add(new LineError(results.size(), line, e.reason(),
+              chunk.segment().base() + start + e.offset()));
+          results.add(null);
+        } else {
+          results.add(result);
+        }
+      }
+      start = end + 1;
+      line++;
+    }
+    return new ParsedChunk(chunk.index(), results, line, errors);
+  }
+
+  private static boolean isBlank(ByteBuffer buffer, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!JsonScanner.isWhitespace(buffer.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static <T> T join(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("interrupted while waiting for a chunk");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      if (e.getCause() instanceof Error err) {
+        throw err;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Submits the chunks to the pool as they are consumed, keeping a bounded number of them in
+   * flight, and hands out their results either in order, or as they complete.
+   *
+   * <p>
+   * The lines of the chunks are counted while they are parsed. A chunk with malformed lines is held
+   * back until every chunk before it has completed, so that its lines can be numbered; the rest
+   * are handed out as soon as they complete.
+   */
+  private final class ChunkIterator implements Iterator<List<Result<JsonValue>>> {
+
+    private final Iterator<Chunk>                    chunks;
+    private final boolean                            ordered;
+    private final int                                window;
+    private final Deque<Future<ParsedChunk>>         inFlight = new ArrayDeque<>();
+    private final CompletionService<ParsedChunk>     completion;
+    private final Deque<List<Result<JsonValue>>>     ready    = new ArrayDeque<>();
+    private final Map<Integer, ParsedChunk>          held     = new HashMap<>();
+    // the line counts of the chunks completed out of order, and the ones counted so far:
+    private final Map<Integer, Long>                 counts   = new HashMap<>();
+    private       int                                counted;
+    private       long                               nextLine = 1L;
+
+    private ChunkIterator(List<Chunk> chunks, boolean ordered) {
+      this.chunks = chunks.iterator();
+      this.ordered = ordered;
+      this.window = pool.getParallelism() * 2;
+      // (completed chunks are only queued for taking, if they may be taken out of order:)
+      this.completion = ordered ? null : new ExecutorCompletionService<>(pool);
+    }
+
+    @Override
+    public boolean hasNext() {
+      this.topUp();
+      return !ready.isEmpty() || !inFlight.isEmpty() || !held.isEmpty();
+    }
+
+    @Override
+    public List<Result<JsonValue>> next() {
+      while (ready.isEmpty()) {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        this.complete(this.take());
+        this.topUp();
+      }
+      return ready.poll();
+    }
+
+    private ParsedChunk take() {
+      if (ordered) {
+        return join(inFlight.poll());
+      }
+      final Future<ParsedChunk> done;
+      try {
+        done = completion.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("interrupted while waiting for a chunk");
+      }
+      inFlight.remove(done);
+      return join(done);
+    }
+
+    /**
+     * Counts the lines of a completed chunk, and makes it (and the chunks held back for it) ready
+     * once their lines can be numbered.
+     */
+    private void complete(ParsedChunk chunk) {
+      counts.put(chunk.index(), chunk.lines());
+      if (chunk.errors().isEmpty()) {
+        ready.add(chunk.results());
+      } else {
+        held.put(chunk.index(), chunk);
+      }
+      Long lines;
+      while ((lines = counts.remove(counted)) != null) {
+        final ParsedChunk numbered = held.remove(counted);
+        if (numbered != null) {
+          for (LineError e : numbered.errors()) {
+            numbered.results().set(e.position(),
+                ExErr.of(new JsonLineException(e.reason(), nextLine + e.line(), e.offset())));
+          }
+          ready.add(numbered.results());
+        }
+        nextLine += lines;
+        counted++;
+      }
+    }
+
+    private void topUp() {
+      while (inFlight.size() < window && chunks.hasNext()) {
+        final Chunk chunk = chunks.next();
+        final Callable<ParsedChunk> task = () -> parseChunk(chunk);
+        inFlight.add(ordered ? pool.submit(task) : completion.submit(task));
+      }
+    }
+
+    private void cancel() {
+      inFlight.forEach(f -> f.cancel(false));
+      inFlight.clear();
+    }
+
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * The elements of an array of a {@link JsonDocument}.
+ *
+ * <p>
+ * The list is a read-only view of the tape: its elements are decoded from the tape whenever they
+ * are accessed. Iterating the list walks the tape; on the first access by index, the indices of
+ * the elements on the tape are recorded.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class TapeJsonList extends AbstractList<JsonValue> implements RandomAccess {
+
+  private final    JsonDocument document;
+  private final    int          start;
+  private volatile int[]        offsets;
+
+  TapeJsonList(JsonDocument document, int start) {
+    this.document = document;
+    this.start = start;
+  }
+
+  private int[] offsets() {
+    int[] o = offsets;
+    if (o == null) {
+      o = new int[document.count(start)];
+      for (int k = 0, i = start + 1; k < o.length; k++, i = document.next(i)) {
+        o[k] = i;
+      }
+      offsets = o;
+    }
+    return o;
+  }
+
+  @Override
+  public JsonValue get(int index) {
+    return document.valueAt(this.offsets()[index]);
+  }
+
+  @Override
+  public int size() {
+    return document.count(start);
+  }
+
+  @Override
+  public Iterator<JsonValue> iterator() {
+    return new Iterator<>() {
+      private final int end = (int) document.word(start);
+      private       int i   = start + 1;
+
+      @Override
+      public boolean hasNext() {
+        return i < end;
+      }
+
+      @Override
+      public JsonValue next() {
+        if (i >= end) {
+          throw new NoSuchElementException();
+        }
+        final JsonValue value = document.valueAt(i);
+        i = document.next(i);
+        return value;
+      }
+    };
+  }
+
+}
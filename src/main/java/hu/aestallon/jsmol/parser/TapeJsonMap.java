@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The members of an object of a {@link JsonDocument}.
+ *
+ * <p>
+ * The map is a read-only view of the tape: its keys and values are decoded from the tape whenever
+ * they are accessed. Looking up a key scans the members, comparing their encoded keys.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class TapeJsonMap extends AbstractMap<String, JsonValue> {
+
+  private final JsonDocument document;
+  private final int          start;
+
+  TapeJsonMap(JsonDocument document, int start) {
+    this.document = document;
+    this.start = start;
+  }
+
+  /**
+   * Returns the index of the value of the member with the provided key, or {@code -1} if there is
+   * no such member.
+   */
+  private int indexOf(Object key) {
+    if (!(key instanceof String s)) {
+      return -1;
+    }
+    final byte[] utf8 = JsonDocument.encode(s);
+    final int end = (int) document.word(start);
+    for (int i = start + 1; i < end; i = document.next(i + 1)) {
+      if (document.stringEquals(i, utf8)) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public JsonValue get(Object key) {
+    final int index = this.indexOf(key);
+    return (index < 0) ? null : document.valueAt(index);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return this.indexOf(key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return document.count(start);
+  }
+
+  @Override
+  public Set<Entry<String, JsonValue>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<String, JsonValue>> iterator() {
+        return new Iterator<>() {
+          private final int end = (int) document.word(start);
+          private       int i   = start + 1;
+
+          @Override
+          public boolean hasNext() {
+            return i < end;
+          }
+
+          @Override
+          public Entry<String, JsonValue> next() {
+            if (i >= end) {
+              throw new NoSuchElementException();
+            }
+            final Entry<String, JsonValue> entry = new SimpleImmutableEntry<>(
+                document.stringAt(i),
+                document.valueAt(i + 1));
+            i = document.next(i + 1);
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return TapeJsonMap.this.size();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.CompactJsonMap;
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonBoolean;
+import hu.aestallon.jsmol.json.JsonNull;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Builds {@link JsonValue} trees from the events it receives, and collects the completed root
+ * values in a queue.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class TreeBuilder implements JsonHandler {
+
+  private final LongSupplier     tokenOffset;
+  private final JsonSymbolTable  symbols;
+  private final Deque<JsonValue> completed  = new ArrayDeque<>();
+  private       Object[]         containers = new Object[32];
+  private       String[]         keys       = new String[32];
+  private       int              depth;
+
+  /**
+   * @param tokenOffset supplies the offset of the token currently reported, used for reporting
+   *                    duplicate keys
+   * @param symbols     the table canonicalising keys
+   */
+  TreeBuilder(LongSupplier tokenOffset, JsonSymbolTable symbols) {
+    this.tokenOffset = tokenOffset;
+    this.symbols = symbols;
+  }
+
+  /**
+   * Returns the next completed root value, or {@code null} if there is none.
+   */
+  JsonValue poll() {
+    return completed.poll();
+  }
+
+  @Override
+  public boolean startObject() {
+    this.push(new CompactJsonMap());
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean key(CharSequence key) {
+    final String name = symbols.intern(key);
+    if (((Map<String, JsonValue>) containers[depth - 1]).containsKey(name)) {
+      throw new JsonParseException("duplicate key: " + name, tokenOffset.getAsLong());
+    }
+    keys[depth - 1] = name;
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean endObject() {
+    return this.add(new JsonObject((Map<String, JsonValue>) this.pop()));
+  }
+
+  @Override
+  public boolean startArray() {
+    this.push(new ArrayList<JsonValue>());
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean endArray() {
+    return this.add(new JsonArray((List<JsonValue>) this.pop()));
+  }
+
+  @Override
+  public boolean value(CharSequence s) {
+    return this.add(new JsonString(s.toString()));
+  }
+
+  @Override
+  public boolean value(long l) {
+    return this.add(new JsonNumber(l));
+  }
+
+  @Override
+  public boolean value(double d) {
+    return this.add(new JsonNumber(d));
+  }
+
+  @Override
+  public boolean value(Number n) {
+    return this.add(new JsonNumber(n));
+  }
+
+  @Override
+  public boolean value(boolean b) {
+    return this.add(new JsonBoolean(b));
+  }
+
+  @Override
+  public boolean nullValue() {
+    return this.add(JsonNull.INSTANCE);
+  }
+
+  private void push(Object container) {
+    if (depth == containers.length) {
+      containers = Arrays.copyOf(containers, depth * 2);
+      keys = Arrays.copyOf(keys, depth * 2);
+    }
+    containers[depth++] = container;
+  }
+
+  private Object pop() {
+    final Object container = containers[--depth];
+    containers[depth] = null;
+    keys[depth] = null;
+    return container;
+  }
+
+  @SuppressWarnings("unchecked")
+  private boolean add(JsonValue value) {
+    if (depth == 0) {
+      completed.add(value);
+      return true;
+    }
+    final Object container = containers[depth - 1];
+    if (container instanceof List<?> list) {
+      ((List<JsonValue>) list).add(value);
+    } else {
+      ((Map<String, JsonValue>) container).put(keys[depth - 1], value);
+    }
+    return true;
+  }
+
+}
@@ -20,9 +20,11 @@ import hu.aestallon.jsmol.json.JsonComplex;
 import hu.aestallon.jsmol.json.JsonObject;
 import hu.aestallon.jsmol.json.JsonValue;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Facilitates the comparison of two JSON values.
@@ -52,8 +54,10 @@ public class JsonComparator {
       case JsonComplex<?> complex -> switch (complex) {
         case JsonArray arrLeft -> {
           if (right instanceof JsonArray arrRight) {
+            // hashed once, instead of scanning the left array for every element on the right:
+            final Set<JsonValue> leftValues = new HashSet<>(arrLeft.value());
             List<JsonValue> resultValues = arrRight.iter()
-                .filter(json -> !arrLeft.contains(json))
+                .filter(json -> !leftValues.contains(json))
                 .map(json -> compare(null, json))
                 .filter(Objects::nonNull)
                 .toList();
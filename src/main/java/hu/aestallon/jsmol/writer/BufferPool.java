@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of the byte buffers of writers, shared by all threads.
+ *
+ * <p>
+ * Acquiring a buffer takes the first one found in the pool (or allocates one, if the pool is
+ * empty), and releasing it puts it back into the first free slot (or leaves it to the garbage
+ * collector, if the pool is full). Thus in the steady state, where writers are closed after use,
+ * writing allocates no buffers at all.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class BufferPool {
+
+  private static final int SLOTS = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+
+  private static final AtomicReferenceArray<byte[]> buffers = new AtomicReferenceArray<>(SLOTS);
+
+  private BufferPool() {}
+
+  static byte[] acquire() {
+    for (int i = 0; i < SLOTS; i++) {
+      if (buffers.get(i) != null) {
+        final byte[] buffer = buffers.getAndSet(i, null);
+        if (buffer != null) {
+          return buffer;
+        }
+      }
+    }
+    return new byte[JsonOutput.BUFFER_SIZE];
+  }
+
+  static void release(byte[] buffer) {
+    for (int i = 0; i < SLOTS; i++) {
+      if (buffers.get(i) == null && buffers.compareAndSet(i, null, buffer)) {
+        return;
+      }
+    }
+  }
+
+}
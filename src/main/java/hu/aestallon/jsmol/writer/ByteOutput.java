@@ -0,0 +1,268 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a JSON text as {@code UTF-8} encoded bytes.
+ *
+ * <p>
+ * Characters are encoded straight into the buffer, without a {@code CharsetEncoder} or an
+ * intermediate {@code String}: runs of {@code ASCII} characters (the bulk of most texts) are copied
+ * by a tight loop, while the rest are encoded one by one. The buffer is either borrowed from the
+ * {@link BufferPool} (and returned on {@link #close()}), and handed to a {@link Sink} whenever it
+ * is full, or it is the array of a buffer supplied by the caller, written in place.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class ByteOutput extends JsonOutput {
+
+  /**
+   * Receives the contents of the buffer.
+   */
+  interface Sink {
+
+    void write(byte[] bytes, int length) throws IOException;
+
+    void flush() throws IOException;
+
+  }
+
+  static ByteOutput of(OutputStream out) {
+    return new ByteOutput(new Sink() {
+      @Override
+      public void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        out.flush();
+      }
+    });
+  }
+
+  static ByteOutput of(WritableByteChannel channel) {
+    return new ByteOutput(new Sink() {
+      @Override
+      public void write(byte[] bytes, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+
+      @Override
+      public void flush() {}
+    });
+  }
+
+  /**
+   * Returns an output writing into the remaining space of the provided buffer, advancing its
+   * position as the output is flushed.
+   *
+   * @throws BufferOverflowException (when writing) if the output does not fit the buffer
+   */
+  static ByteOutput of(ByteBuffer target) {
+    if (target.hasArray() && !target.isReadOnly()) {
+      return new ByteOutput(target);
+    }
+    return new ByteOutput(new Sink() {
+      @Override
+      public void write(byte[] bytes, int length) {
+        target.put(bytes, 0, length);
+      }
+
+      @Override
+      public void flush() {}
+    });
+  }
+
+  private final Sink       sink;
+  private final ByteBuffer target;
+  private final int        start;
+  private final byte[]     digits = new byte[Schubfach.MAX_LENGTH];
+  private       byte[]     buf;
+  private       int        pos;
+  private       int        limit;
+
+  private ByteOutput(Sink sink) {
+    this.sink = sink;
+    this.target = null;
+    this.start = 0;
+    this.buf = BufferPool.acquire();
+    this.limit = buf.length;
+  }
+
+  private ByteOutput(ByteBuffer target) {
+    this.sink = null;
+    this.target = target;
+    this.buf = target.array();
+    this.start = target.arrayOffset();
+    this.pos = start + target.position();
+    this.limit = start + target.limit();
+  }
+
+  /**
+   * Hands the buffer to the sink, if it has room for less than the provided number of bytes.
+   */
+  private void require(int n) throws IOException {
+    if (limit - pos < n) {
+      if (sink == null) {
+        throw new BufferOverflowException();
+      }
+      sink.write(buf, pos);
+      pos = 0;
+    }
+  }
+
+  @Override
+  void write(char c) throws IOException {
+    this.require(1);
+    buf[pos++] = (byte) c;
+  }
+
+  @Override
+  void write(String ascii) throws IOException {
+    final int length = ascii.length();
+    int i = 0;
+    while (i < length) {
+      this.require(1);
+      final int end = i + Math.min(length - i, limit - pos);
+      while (i < end) {
+        buf[pos++] = (byte) ascii.charAt(i++);
+      }
+    }
+  }
+
+  @Override
+  void writeString(CharSequence s) throws IOException {
+    this.write('"');
+    final int length = s.length();
+    int i = 0;
+    while (i < length) {
+      // copies ASCII characters as long as the buffer has room:
+      final int end = i + Math.min(length - i, limit - pos);
+      char c;
+      while (i < end && (c = s.charAt(i)) < 0x80 && !isSpecial(c)) {
+        buf[pos++] = (byte) c;
+        i++;
+      }
+      if (i == length) {
+        break;
+      }
+      // ...then encodes the character stopping it (if any), which takes at most 6 bytes:
+      this.require(6);
+      c = s.charAt(i++);
+      if (c < 0x80) {
+        if (isSpecial(c)) {
+          this.escape(c);
+        } else {
+          buf[pos++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xC0 | c >> 6);
+        buf[pos++] = (byte) (0x80 | c & 0x3F);
+      } else if (!Character.isSurrogate(c)) {
+        buf[pos++] = (byte) (0xE0 | c >> 12);
+        buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+        buf[pos++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i < length
+                 && Character.isLowSurrogate(s.charAt(i))) {
+        final int cp = Character.toCodePoint(c, s.charAt(i++));
+        buf[pos++] = (byte) (0xF0 | cp >> 18);
+        buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+        buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+        buf[pos++] = (byte) (0x80 | cp & 0x3F);
+      } else {
+        this.escape(c);
+      }
+    }
+    this.write('"');
+  }
+
+  /**
+   * Writes the escape sequence of the provided character, for which the buffer has room.
+   */
+  private void escape(char c) {
+    buf[pos++] = '\\';
+    final char escape = shortEscape(c);
+    if (escape != 0) {
+      buf[pos++] = (byte) escape;
+    } else {
+      buf[pos++] = 'u';
+      buf[pos++] = (byte) hexDigit(c >> 12);
+      buf[pos++] = (byte) hexDigit(c >> 8);
+      buf[pos++] = (byte) hexDigit(c >> 4);
+      buf[pos++] = (byte) hexDigit(c);
+    }
+  }
+
+  @Override
+  void writeLong(long l) throws IOException {
+    if (limit - pos < MAX_LONG_LENGTH) {
+      this.require(stringSize(l));
+    }
+    pos = formatLong(l, buf, pos);
+  }
+
+  @Override
+  void writeDouble(double d) throws IOException {
+    if (limit - pos < Schubfach.MAX_LENGTH) {
+      // near the end of the buffer, only the exact length may be required:
+      final int n = Schubfach.write(d, digits, 0);
+      this.require(n);
+      System.arraycopy(digits, 0, buf, pos, n);
+      pos += n;
+      return;
+    }
+    pos = Schubfach.write(d, buf, pos);
+  }
+
+  @Override
+  void flush() throws IOException {
+    if (sink == null) {
+      target.position(pos - start);
+      return;
+    }
+    if (pos > 0) {
+      sink.write(buf, pos);
+      pos = 0;
+    }
+    sink.flush();
+  }
+
+  @Override
+  void close() throws IOException {
+    if (buf == null) {
+      return;
+    }
+    try {
+      this.flush();
+    } finally {
+      if (sink != null) {
+        BufferPool.release(buf);
+      }
+      buf = null;
+    }
+  }
+
+}
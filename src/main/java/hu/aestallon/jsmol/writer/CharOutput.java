@@ -0,0 +1,215 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writes a JSON text as characters.
+ *
+ * <p>
+ * The output is collected in a fixed-size buffer, which is handed to a {@link Sink} whenever it is
+ * full. Surrogate pairs are never split between two buffers, thus targets encoding the characters
+ * (such as an {@code OutputStreamWriter}) never see half of a pair.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class CharOutput extends JsonOutput {
+
+  /**
+   * Receives the contents of the buffer.
+   */
+  interface Sink {
+
+    void write(char[] chars, int length) throws IOException;
+
+    void flush() throws IOException;
+
+  }
+
+  static CharOutput of(Appendable out, int bufferSize) {
+    final Flushable flushable = (out instanceof Flushable f) ? f : null;
+    final Sink sink;
+    if (out instanceof StringBuilder sb) {
+      sink = new AppendableSink(flushable) {
+        @Override
+        public void write(char[] chars, int length) {
+          sb.append(chars, 0, length);
+        }
+      };
+    } else if (out instanceof Writer w) {
+      sink = new AppendableSink(flushable) {
+        @Override
+        public void write(char[] chars, int length) throws IOException {
+          w.write(chars, 0, length);
+        }
+      };
+    } else {
+      sink = new AppendableSink(flushable) {
+        @Override
+        public void write(char[] chars, int length) throws IOException {
+          out.append(CharBuffer.wrap(chars, 0, length));
+        }
+      };
+    }
+    return new CharOutput(sink, bufferSize);
+  }
+
+  private final Sink   sink;
+  private final char[] buf;
+  private final byte[] digits = new byte[Schubfach.MAX_LENGTH];
+  private       int    pos;
+
+  private CharOutput(Sink sink, int bufferSize) {
+    this.sink = sink;
+    this.buf = new char[bufferSize];
+  }
+
+  /**
+   * Hands the buffer to the sink, if it has room for less than the provided number of characters.
+   */
+  private void require(int n) throws IOException {
+    if (buf.length - pos < n) {
+      sink.write(buf, pos);
+      pos = 0;
+    }
+  }
+
+  @Override
+  void write(char c) throws IOException {
+    this.require(1);
+    buf[pos++] = c;
+  }
+
+  @Override
+  void write(String ascii) throws IOException {
+    this.chars(ascii, 0, ascii.length());
+  }
+
+  @Override
+  void writeString(CharSequence s) throws IOException {
+    this.write('"');
+    final int length = s.length();
+    int run = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = s.charAt(i);
+      if (!isSpecial(c)) {
+        continue;
+      }
+      if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        i++;
+        continue;
+      }
+      this.chars(s, run, i);
+      this.escape(c);
+      run = i + 1;
+    }
+    this.chars(s, run, length);
+    this.write('"');
+  }
+
+  /**
+   * Copies a range of characters (which needs no escaping) to the buffer, in as many steps as
+   * needed.
+   */
+  private void chars(CharSequence s, int from, int to) throws IOException {
+    int i = from;
+    while (i < to) {
+      this.require(2);
+      int n = Math.min(to - i, buf.length - pos);
+      if (n < to - i && Character.isHighSurrogate(s.charAt(i + n - 1))) {
+        // the pair is left for the next buffer:
+        n--;
+      }
+      if (s instanceof String str) {
+        str.getChars(i, i + n, buf, pos);
+      } else {
+        for (int k = 0; k < n; k++) {
+          buf[pos + k] = s.charAt(i + k);
+        }
+      }
+      pos += n;
+      i += n;
+    }
+  }
+
+  private void escape(char c) throws IOException {
+    this.require(6);
+    buf[pos++] = '\\';
+    final char escape = shortEscape(c);
+    if (escape != 0) {
+      buf[pos++] = escape;
+    } else {
+      buf[pos++] = 'u';
+      buf[pos++] = hexDigit(c >> 12);
+      buf[pos++] = hexDigit(c >> 8);
+      buf[pos++] = hexDigit(c >> 4);
+      buf[pos++] = hexDigit(c);
+    }
+  }
+
+  @Override
+  void writeLong(long l) throws IOException {
+    this.digits(formatLong(l, digits, 0));
+  }
+
+  @Override
+  void writeDouble(double d) throws IOException {
+    this.digits(Schubfach.write(d, digits, 0));
+  }
+
+  /**
+   * Copies the first {@code n} {@code ASCII} characters of the digit buffer to the buffer.
+   */
+  private void digits(int n) throws IOException {
+    this.require(n);
+    for (int i = 0; i < n; i++) {
+      buf[pos + i] = (char) digits[i];
+    }
+    pos += n;
+  }
+
+  @Override
+  void flush() throws IOException {
+    if (pos > 0) {
+      sink.write(buf, pos);
+      pos = 0;
+    }
+    sink.flush();
+  }
+
+  private abstract static class AppendableSink implements Sink {
+
+    private final Flushable flushable;
+
+    private AppendableSink(Flushable flushable) {
+      this.flushable = flushable;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (flushable != null) {
+        flushable.flush();
+      }
+    }
+
+  }
+
+}
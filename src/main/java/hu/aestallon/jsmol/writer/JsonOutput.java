@@ -0,0 +1,160 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import java.io.IOException;
+
+/**
+ * Buffered output of the tokens of a JSON text.
+ *
+ * <p>
+ * Every structural character and literal of JSON is {@code ASCII}, thus only string contents need
+ * to be encoded: implementations differ in the code units they buffer, and in where they send the
+ * buffer once it is full. The grammar (where separators go) is the business of the
+ * {@link JsonWriter}.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+abstract sealed class JsonOutput permits CharOutput, ByteOutput {
+
+  static final int BUFFER_SIZE     = 1 << 13;
+  static final int MAX_LONG_LENGTH = 20;
+
+  /**
+   * The two {@code ASCII} digits of every number in {@code [0, 100)}, at the index twice the
+   * number.
+   */
+  private static final byte[] DIGIT_PAIRS = new byte[200];
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+      DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+    }
+  }
+
+  /**
+   * Writes a single {@code ASCII} character.
+   */
+  abstract void write(char c) throws IOException;
+
+  /**
+   * Writes a text made up of {@code ASCII} characters only, such as a literal.
+   */
+  abstract void write(String ascii) throws IOException;
+
+  /**
+   * Writes the provided text as a string token: enclosed in quotes, with quotes, backslashes,
+   * control characters and unpaired surrogates escaped, as per RFC 8259.
+   */
+  abstract void writeString(CharSequence s) throws IOException;
+
+  /**
+   * Writes the decimal digits of the provided integer, without allocating.
+   */
+  abstract void writeLong(long l) throws IOException;
+
+  /**
+   * Writes the provided (finite) double in the layout of {@link Double#toString(double)}, with the
+   * fewest digits which still read back as the same double, without allocating.
+   */
+  abstract void writeDouble(double d) throws IOException;
+
+  /**
+   * Sends the buffered output to the target, and flushes the target, if it is flushable.
+   */
+  abstract void flush() throws IOException;
+
+  /**
+   * Flushes the output, and releases the resources it holds. The output must not be used
+   * afterwards.
+   */
+  void close() throws IOException {
+    this.flush();
+  }
+
+  /**
+   * Returns whether the provided character must be escaped in a string token, or (being a
+   * surrogate) must be checked for being paired.
+   */
+  static boolean isSpecial(char c) {
+    return c < 0x20 || c == '"' || c == '\\' || Character.isSurrogate(c);
+  }
+
+  /**
+   * Returns the character following the backslash in the short escape sequence of the provided
+   * character, or {@code 0} if it has none.
+   */
+  static char shortEscape(char c) {
+    return switch (c) {
+      case '"' -> '"';
+      case '\\' -> '\\';
+      case '\b' -> 'b';
+      case '\f' -> 'f';
+      case '\n' -> 'n';
+      case '\r' -> 'r';
+      case '\t' -> 't';
+      default -> 0;
+    };
+  }
+
+  static char hexDigit(int value) {
+    return "0123456789abcdef".charAt(value & 0xF);
+  }
+
+  /**
+   * Returns the number of characters of the decimal representation of the provided integer.
+   */
+  static int stringSize(long l) {
+    // working on the negative value, as it has the larger range:
+    final long x = (l < 0) ? l : -l;
+    int digits = 1;
+    for (long p = -10; digits < 19 && x <= p; p *= 10) {
+      digits++;
+    }
+    return (l < 0) ? digits + 1 : digits;
+  }
+
+  /**
+   * Writes the decimal representation of the provided integer into the array as {@code ASCII},
+   * two digits at a time, starting at the provided index.
+   *
+   * @return the index following the last digit
+   */
+  static int formatLong(long l, byte[] dst, int at) {
+    final int end = at + stringSize(l);
+    // the digits are written from the last one, working on the negative value:
+    long x = (l < 0) ? l : -l;
+    int i = end;
+    while (x <= -100) {
+      final int pair = (int) (100 * (x / 100) - x);
+      x /= 100;
+      dst[--i] = DIGIT_PAIRS[2 * pair + 1];
+      dst[--i] = DIGIT_PAIRS[2 * pair];
+    }
+    if (x <= -10) {
+      dst[--i] = DIGIT_PAIRS[-2 * (int) x + 1];
+      dst[--i] = DIGIT_PAIRS[-2 * (int) x];
+    } else {
+      dst[--i] = (byte) ('0' - x);
+    }
+    if (l < 0) {
+      dst[--i] = '-';
+    }
+    return end;
+  }
+
+}
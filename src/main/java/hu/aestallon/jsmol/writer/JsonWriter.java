@@ -0,0 +1,359 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonBoolean;
+import hu.aestallon.jsmol.json.JsonNull;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes a JSON text, token by token, or a whole {@link JsonValue} tree at once.
+ *
+ * <p>
+ * The writer is the counterpart of the {@code JsonReader}: the caller opens and closes objects and
+ * arrays ({@link #beginObject()}, {@link #name(String)}, {@link #endObject()}, ...) and writes
+ * primitive values in between, while the writer takes care of the separators, and rejects calls
+ * which would make the text malformed with an {@link IllegalStateException}. Strings are escaped
+ * as per RFC 8259, and the text is written without any insignificant whitespace.
+ *
+ * <p>
+ * The output is written through a single reusable buffer, straight to the target: characters to an
+ * {@link Appendable}, and {@code UTF-8} encoded bytes to an {@link OutputStream}, a
+ * {@link WritableByteChannel} or a {@link ByteBuffer}. Bytes are encoded directly, without an
+ * intermediate {@code String} or a {@code CharsetEncoder}, into buffers borrowed from a shared
+ * pool, thus writers which are closed after use allocate no buffers in the steady state. Trees are
+ * walked iteratively, thus writing a value takes constant heap (besides a small frame per level of
+ * nesting), however large the value is.
+ *
+ * <p>
+ * The buffered output is sent to the target when the buffer is full, and on {@link #flush()}.
+ * {@link #close() Closing} a writer flushes it, and returns its buffer to the pool, but (as with
+ * readers) leaves the target open.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+public final class JsonWriter implements Flushable, Closeable {
+
+  // -----------------------------------------------------------------------------------------------
+  // Literals
+  private static final String NULL_LITERAL  = "null";
+  private static final String TRUE_LITERAL  = "true";
+  private static final String FALSE_LITERAL = "false";
+
+  // -----------------------------------------------------------------------------------------------
+  // Scopes
+  private static final byte EMPTY_DOCUMENT    = 0;
+  private static final byte NONEMPTY_DOCUMENT = 1;
+  private static final byte EMPTY_ARRAY       = 2;
+  private static final byte NONEMPTY_ARRAY    = 3;
+  private static final byte EMPTY_OBJECT      = 4;
+  private static final byte DANGLING_NAME     = 5;
+  private static final byte NONEMPTY_OBJECT   = 6;
+
+  private static final int TO_STRING_BUFFER_SIZE = 1 << 9;
+
+  public static JsonWriter of(Appendable out) {
+    return new JsonWriter(CharOutput.of(out, JsonOutput.BUFFER_SIZE));
+  }
+
+  public static JsonWriter of(OutputStream out) {
+    return new JsonWriter(ByteOutput.of(out));
+  }
+
+  public static JsonWriter of(WritableByteChannel channel) {
+    return new JsonWriter(ByteOutput.of(channel));
+  }
+
+  /**
+   * Returns a writer writing into the remaining space of the provided buffer, advancing its
+   * position as the writer is flushed. The text is encoded straight into the array of heap buffers.
+   *
+   * <p>
+   * Writing more than the buffer has room for throws a {@link BufferOverflowException}.
+   */
+  public static JsonWriter of(ByteBuffer target) {
+    return new JsonWriter(ByteOutput.of(target));
+  }
+
+  /**
+   * Returns the provided value as a JSON text.
+   */
+  public static String toJson(JsonValue value) {
+    final StringBuilder sb = new StringBuilder();
+    try (JsonWriter writer = new JsonWriter(CharOutput.of(sb, TO_STRING_BUFFER_SIZE))) {
+      writer.value(value);
+    } catch (IOException e) {
+      // a string builder never throws:
+      throw new UncheckedIOException(e);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the provided value as a JSON text, encoded in {@code UTF-8}.
+   */
+  public static byte[] toBytes(JsonValue value) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonWriter writer = of(bytes)) {
+      writer.value(value);
+    } catch (IOException e) {
+      // a byte array output stream never throws:
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private final JsonOutput out;
+  private       byte[]     scopes = new byte[32];
+  private       int        depth  = 1;
+
+  private JsonWriter(JsonOutput out) {
+    this.out = out;
+    this.scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    this.beforeValue();
+    this.push(EMPTY_OBJECT);
+    out.write('{');
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    final byte scope = scopes[depth - 1];
+    if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+      throw new IllegalStateException((scope == DANGLING_NAME)
+          ? "the value of the member is missing"
+          : "not in an object");
+    }
+    depth--;
+    out.write('}');
+    return this;
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    this.beforeValue();
+    this.push(EMPTY_ARRAY);
+    out.write('[');
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    final byte scope = scopes[depth - 1];
+    if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY) {
+      throw new IllegalStateException("not in an array");
+    }
+    depth--;
+    out.write(']');
+    return this;
+  }
+
+  /**
+   * Writes the name of the next member of the current object.
+   */
+  public JsonWriter name(String name) throws IOException {
+    final byte scope = scopes[depth - 1];
+    if (scope == NONEMPTY_OBJECT) {
+      out.write(',');
+    } else if (scope != EMPTY_OBJECT) {
+      throw new IllegalStateException((scope == DANGLING_NAME)
+          ? "the value of the member is missing"
+          : "not in an object");
+    }
+    out.writeString(name);
+    out.write(':');
+    scopes[depth - 1] = DANGLING_NAME;
+    return this;
+  }
+
+  public JsonWriter value(CharSequence s) throws IOException {
+    this.beforeValue();
+    out.writeString(s);
+    return this;
+  }
+
+  public JsonWriter value(long l) throws IOException {
+    this.beforeValue();
+    out.writeLong(l);
+    return this;
+  }
+
+  /**
+   * Writes the provided number, which must be finite: JSON has no representation for
+   * {@code NaN}s and infinities.
+   *
+   * @throws IllegalArgumentException if the number is not finite
+   */
+  public JsonWriter value(double d) throws IOException {
+    if (!Double.isFinite(d)) {
+      throw new IllegalArgumentException("not a finite number: " + d);
+    }
+    this.beforeValue();
+    out.writeDouble(d);
+    return this;
+  }
+
+  /**
+   * Writes the provided number: {@code long}s, {@code int}s and {@code double}s as with the
+   * primitive overloads, any other kind of number in the form of its {@code toString()}.
+   */
+  public JsonWriter value(Number n) throws IOException {
+    if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+      return this.value(n.longValue());
+    }
+    if (n instanceof Double d) {
+      return this.value(d.doubleValue());
+    }
+    // floats are written in their own (shortest) form:
+    if (n instanceof Float f && !Float.isFinite(f)) {
+      throw new IllegalArgumentException("not a finite number: " + f);
+    }
+    this.beforeValue();
+    out.write(n.toString());
+    return this;
+  }
+
+  public JsonWriter value(boolean b) throws IOException {
+    this.beforeValue();
+    out.write(b ? TRUE_LITERAL : FALSE_LITERAL);
+    return this;
+  }
+
+  public JsonWriter nullValue() throws IOException {
+    this.beforeValue();
+    out.write(NULL_LITERAL);
+    return this;
+  }
+
+  /**
+   * Writes the provided value, with all the values it contains.
+   */
+  public JsonWriter value(JsonValue value) throws IOException {
+    // the iterators of the objects and arrays being written, innermost last:
+    Iterator<?>[] iterators = null;
+    int open = 0;
+    JsonValue next = value;
+    while (true) {
+      if (next instanceof JsonObject o) {
+        this.beginObject();
+        iterators = push(iterators, open++, o.entrySet().iterator());
+      } else if (next instanceof JsonArray a) {
+        this.beginArray();
+        iterators = push(iterators, open++, a.iterator());
+      } else {
+        this.primitive(next);
+      }
+      // finds the next value to write, closing the objects and arrays which have been exhausted:
+      next = null;
+      while (next == null && open > 0) {
+        final Iterator<?> it = iterators[open - 1];
+        final Object element;
+        if (!it.hasNext()) {
+          iterators[--open] = null;
+          if (scopes[depth - 1] == EMPTY_ARRAY || scopes[depth - 1] == NONEMPTY_ARRAY) {
+            this.endArray();
+          } else {
+            this.endObject();
+          }
+        } else if ((element = it.next()) instanceof Map.Entry<?, ?> member) {
+          this.name((String) member.getKey());
+          next = (JsonValue) member.getValue();
+        } else {
+          next = (JsonValue) element;
+        }
+      }
+      if (next == null) {
+        return this;
+      }
+    }
+  }
+
+  private static Iterator<?>[] push(Iterator<?>[] iterators, int open, Iterator<?> it) {
+    final Iterator<?>[] stack = (iterators == null)
+        ? new Iterator<?>[16]
+        : (open == iterators.length) ? Arrays.copyOf(iterators, open * 2) : iterators;
+    stack[open] = it;
+    return stack;
+  }
+
+  private void primitive(JsonValue value) throws IOException {
+    switch (value) {
+      case JsonString s -> this.value(s.value());
+      case JsonNumber n -> {
+        if (n.isIntegral()) {
+          this.value(n.longValue());
+        } else if (n.isDouble()) {
+          this.value(n.doubleValue());
+        } else {
+          this.value(n.value());
+        }
+      }
+      case JsonBoolean b -> this.value(b.value().booleanValue());
+      case JsonNull ignored -> this.nullValue();
+      default -> throw new IllegalArgumentException("not a primitive value: " + value.getClass());
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Flushes the writer, and releases its buffer. The writer must not be used afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private void beforeValue() throws IOException {
+    switch (scopes[depth - 1]) {
+      case EMPTY_DOCUMENT -> scopes[depth - 1] = NONEMPTY_DOCUMENT;
+      case NONEMPTY_DOCUMENT -> throw new IllegalStateException("the document has a value already");
+      case EMPTY_ARRAY -> scopes[depth - 1] = NONEMPTY_ARRAY;
+      case NONEMPTY_ARRAY -> out.write(',');
+      case DANGLING_NAME -> scopes[depth - 1] = NONEMPTY_OBJECT;
+      default -> throw new IllegalStateException("the name of the member is missing");
+    }
+  }
+
+  private void push(byte scope) {
+    // the bottom of the stack is the document itself:
+    if (depth == scopes.length) {
+      scopes = Arrays.copyOf(scopes, depth * 2);
+    }
+    scopes[depth++] = scope;
+  }
+
+}
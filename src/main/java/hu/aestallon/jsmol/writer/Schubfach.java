@@ -0,0 +1,239 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import java.math.BigInteger;
+
+/**
+ * Formats {@code double}s in their shortest decimal form which converts back to the same
+ * {@code double}, after Raffaello Giulietti's Schubfach algorithm.
+ *
+ * <p>
+ * Among the decimals of the fewest digits within the rounding interval of a {@code double}, the
+ * one closest to it is chosen, and it is written in the layout of {@link Double#toString(double)}:
+ * in plain notation if its magnitude is in {@code [10^-3, 10^7)}, otherwise in computerised
+ * scientific notation, with at least one digit after the point in both cases. The digits are
+ * computed with a few 64-bit multiplications by a 126-bit approximation of a power of ten, and are
+ * written straight into the provided array, without allocating.
+ *
+ * <p>
+ * The table of the powers of ten is computed when the class is first used.
+ *
+ * @author Szabolcs Bazil Papp
+ */
+final class Schubfach {
+
+  /**
+   * The length of the longest text written, such as {@code -2.2250738585072014E-308}.
+   */
+  static final int MAX_LENGTH = 24;
+
+  private static final int  PRECISION   = 53;
+  private static final int  Q_MIN       = -1074;
+  private static final long C_MIN       = 1L << (PRECISION - 1);
+  private static final long C_TINY      = 3;
+  private static final long T_MASK      = (1L << (PRECISION - 1)) - 1;
+  private static final int  BQ_MASK     = 0x7FF;
+  private static final long MASK_63     = (1L << 63) - 1;
+  private static final int  K_MIN       = -324;
+  private static final int  K_MAX       = 292;
+
+  // floor(10^-k * 2^r) + 1, where r makes it a 126-bit number, split into two 63-bit halves:
+  private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+  private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+  static {
+    final BigInteger ten = BigInteger.TEN;
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      final int e = -k;
+      final int shift = 125 - flog2pow10(e);
+      final BigInteger g = (e >= 0)
+          ? shift(ten.pow(e), shift)
+          : BigInteger.ONE.shiftLeft(shift).divide(ten.pow(-e));
+      final BigInteger rounded = g.add(BigInteger.ONE);
+      G1[k - K_MIN] = rounded.shiftRight(63).longValue();
+      G0[k - K_MIN] = rounded.longValue() & MASK_63;
+    }
+  }
+
+  private static BigInteger shift(BigInteger n, int shift) {
+    return (shift >= 0) ? n.shiftLeft(shift) : n.shiftRight(-shift);
+  }
+
+  private Schubfach() {}
+
+  /**
+   * Writes the provided finite {@code double} into the array, starting at the provided index.
+   *
+   * @return the index following the last character written
+   */
+  static int write(double v, byte[] dst, int at) {
+    final long bits = Double.doubleToRawLongBits(v);
+    int i = at;
+    if (bits < 0) {
+      dst[i++] = '-';
+    }
+    final long t = bits & T_MASK;
+    final int bq = (int) (bits >>> (PRECISION - 1)) & BQ_MASK;
+    if (bq != 0) {
+      // a normal value:
+      final int mq = -Q_MIN + 1 - bq;
+      final long c = C_MIN | t;
+      if (0 < mq && mq < PRECISION) {
+        // integers are exact, and need no rounding:
+        final long f = c >> mq;
+        if (f << mq == c) {
+          return digits(f, 0, dst, i);
+        }
+      }
+      return toDecimal(-mq, c, 0, dst, i);
+    }
+    if (t != 0) {
+      // a subnormal value:
+      return (t < C_TINY) ? toDecimal(Q_MIN, 10 * t, -1, dst, i) : toDecimal(Q_MIN, t, 0, dst, i);
+    }
+    dst[i++] = '0';
+    dst[i++] = '.';
+    dst[i++] = '0';
+    return i;
+  }
+
+  private static int toDecimal(int q, long c, int dk, byte[] dst, int at) {
+    final int out = (int) c & 0x1;
+    final long cb = c << 2;
+    final long cbr = cb + 2;
+    final long cbl;
+    final int k;
+    if (c != C_MIN | q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // the gap below the value is half of the one above:
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    final int h = q + flog2pow10(-k) + 2;
+
+    final long g1 = G1[k - K_MIN];
+    final long g0 = G0[k - K_MIN];
+    final long vb = rop(g1, g0, cb << h);
+    final long vbl = rop(g1, g0, cbl << h);
+    final long vbr = rop(g1, g0, cbr << h);
+
+    final long s = vb >> 2;
+    if (s >= 100) {
+      // one digit less may be enough:
+      final long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      final long tp10 = sp10 + 10;
+      final boolean upin = vbl + out <= sp10 << 2;
+      final boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return digits(upin ? sp10 : tp10, k, dst, at);
+      }
+    }
+    final long t = s + 1;
+    final boolean uin = vbl + out <= s << 2;
+    final boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return digits(uin ? s : t, k + dk, dst, at);
+    }
+    // both are in the interval, the closer one wins (ties to the even one):
+    final long cmp = vb - (s + t << 1);
+    return digits((cmp < 0 || cmp == 0 && (s & 1) == 0) ? s : t, k + dk, dst, at);
+  }
+
+  /**
+   * Returns {@code g * cp} rounded to odd, where {@code g} is the 126-bit number made of the
+   * halves.
+   */
+  private static long rop(long g1, long g0, long cp) {
+    final long x1 = Math.multiplyHigh(g0, cp);
+    final long y0 = g1 * cp;
+    final long y1 = Math.multiplyHigh(g1, cp);
+    final long z = (y0 >>> 1) + x1;
+    final long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+  /**
+   * Writes the decimal {@code f * 10^e}.
+   */
+  private static int digits(long f, int e, byte[] dst, int at) {
+    long digits = f;
+    int exponent = e;
+    while (digits % 100 == 0) {
+      digits /= 100;
+      exponent += 2;
+    }
+    if (digits % 10 == 0) {
+      digits /= 10;
+      exponent++;
+    }
+    final int n = JsonOutput.stringSize(digits);
+    // the exponent of the first digit:
+    final int scientific = exponent + n - 1;
+    int i = at;
+    if (scientific >= 7 || scientific < -3) {
+      // d.ddd, then the exponent:
+      JsonOutput.formatLong(digits, dst, i + 1);
+      dst[i] = dst[i + 1];
+      dst[i + 1] = '.';
+      i += n + 1;
+      if (n == 1) {
+        dst[i++] = '0';
+      }
+      dst[i++] = 'E';
+      return JsonOutput.formatLong(scientific, dst, i);
+    }
+    if (scientific < 0) {
+      // 0.00ddd:
+      dst[i++] = '0';
+      dst[i++] = '.';
+      for (int z = -1; z > scientific; z--) {
+        dst[i++] = '0';
+      }
+      return JsonOutput.formatLong(digits, dst, i);
+    }
+    if (n <= scientific + 1) {
+      // ddd00.0:
+      i = JsonOutput.formatLong(digits, dst, i);
+      for (int z = n; z <= scientific; z++) {
+        dst[i++] = '0';
+      }
+      dst[i++] = '.';
+      dst[i++] = '0';
+      return i;
+    }
+    // dd.ddd:
+    JsonOutput.formatLong(digits, dst, i + 1);
+    System.arraycopy(dst, i + 1, dst, i, scientific + 1);
+    dst[i + scientific + 1] = '.';
+    return i + n + 1;
+  }
+
+  private static int flog10pow2(int e) {
+    return (int) (e * 661_971_961_083L >> 41);
+  }
+
+  private static int flog10threeQuartersPow2(int e) {
+    return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  private static int flog2pow10(int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+
+}
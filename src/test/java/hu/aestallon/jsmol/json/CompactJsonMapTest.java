@@ -0,0 +1,111 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import hu.aestallon.jsmol.parser.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactJsonMapTest {
+
+  @Test
+  void compactMapsBehaveLikeLinkedHashMaps() {
+    final Map<String, JsonValue> compact = new CompactJsonMap();
+    final Map<String, JsonValue> expected = new LinkedHashMap<>();
+    // grows well beyond the threshold, and shrinks back:
+    for (int i = 0; i < 3 * CompactJsonMap.THRESHOLD; i++) {
+      final String key = "k" + (i * 7 % 5) + i;
+      assertEquals(expected.put(key, new JsonNumber(i)), compact.put(key, new JsonNumber(i)));
+      assertEquals(expected, compact);
+      assertEquals(expected.hashCode(), compact.hashCode());
+      assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(compact.keySet()));
+    }
+    assertEquals(new JsonNumber(3L), compact.put("k13", JsonNull.INSTANCE));
+    assertEquals(JsonNull.INSTANCE, compact.putIfAbsent("k13", new JsonNumber(0L)));
+    assertEquals(JsonNull.INSTANCE, compact.remove("k13"));
+    assertNull(compact.remove("k13"));
+    assertNull(compact.get(null));
+    compact.clear();
+    assertTrue(compact.isEmpty());
+  }
+
+  @Test
+  void smallMapsKeepInsertionOrderAcrossUpdates() {
+    final CompactJsonMap m = new CompactJsonMap();
+    m.put("a", new JsonNumber(1L));
+    m.put("b", new JsonNumber(2L));
+    m.put("c", new JsonNumber(3L));
+    assertNull(m.putIfAbsent("d", new JsonNumber(4L)));
+    assertEquals(new JsonNumber(2L), m.put("b", new JsonNumber(20L)));
+    assertEquals(new JsonNumber(1L), m.remove("a"));
+    assertEquals(List.of("b", "c", "d"), new ArrayList<>(m.keySet()));
+    assertEquals(new JsonNumber(20L), m.get("b"));
+    assertFalse(m.containsKey("a"));
+    assertFalse(m.containsKey(1));
+
+    final Iterator<Map.Entry<String, JsonValue>> it = m.entrySet().iterator();
+    it.next().setValue(JsonNull.INSTANCE);
+    it.next();
+    it.remove();
+    assertEquals(Map.of("b", JsonNull.INSTANCE, "d", new JsonNumber(4L)), m);
+    assertThrows(NullPointerException.class, () -> m.put("e", null));
+  }
+
+  @Test
+  void entrySetViewsFollowTheMapAcrossRepresentations() {
+    final CompactJsonMap m = new CompactJsonMap();
+    m.put("k0", new JsonNumber(0));
+    final Set<Map.Entry<String, JsonValue>> entries = m.entrySet();
+    final Map<String, JsonValue> unmodifiable = Collections.unmodifiableMap(m);
+    final Set<Map.Entry<String, JsonValue>> wrapped = unmodifiable.entrySet();
+    final Iterator<Map.Entry<String, JsonValue>> it = entries.iterator();
+    it.next();
+    final Map<String, JsonValue> expected = new LinkedHashMap<>(m);
+    for (int i = 1; i <= CompactJsonMap.THRESHOLD + 2; i++) {
+      m.put("k" + i, new JsonNumber(i));
+      expected.put("k" + i, new JsonNumber(i));
+    }
+    assertFalse(it.hasNext());
+    assertThrows(ConcurrentModificationException.class, it::next);
+    assertEquals(expected.entrySet(), entries);
+    assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(entries));
+    assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(wrapped));
+
+    m.clear();
+    m.put("a", JsonNull.INSTANCE);
+    assertEquals(List.of(Map.entry("a", JsonNull.INSTANCE)), new ArrayList<>(entries));
+  }
+
+  @Test
+  void parsedObjectsAreBackedByCompactMaps() {
+    final JsonObject o = (JsonObject) new JsonParser().parse("{\"a\": 1, \"b\": {\"c\": true}}")
+        .unwrap();
+    assertInstanceOf(CompactJsonMap.class, o.value());
+    assertInstanceOf(CompactJsonMap.class, ((JsonObject) o.get("b")).value());
+    assertEquals("{\"a\":1,\"b\":{\"c\":true}}", o.toString());
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import hu.aestallon.jsmol.parser.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonNumberTest {
+
+  @Test
+  void numbersAreStoredInlineAndReadWithoutBoxing() {
+    final JsonNumber l = new JsonNumber(-42L);
+    assertTrue(l.isIntegral());
+    assertEquals(-42L, l.longValue());
+    assertEquals(-42.0, l.doubleValue());
+    assertEquals(Long.valueOf(-42L), l.value());
+    assertEquals("-42", l.toString());
+
+    final JsonNumber d = new JsonNumber(2.5);
+    assertFalse(d.isIntegral());
+    assertEquals(2L, d.longValue());
+    assertEquals(2.5, d.doubleValue());
+    assertEquals(Double.valueOf(2.5), d.value());
+    assertEquals("2.5", d.toString());
+
+    final BigDecimal exact = new BigDecimal("0.1000000000000000000000001");
+    final JsonNumber big = new JsonNumber(exact);
+    assertFalse(big.isIntegral());
+    assertSame(exact, big.value());
+    assertEquals(exact.toString(), big.toString());
+    assertEquals(new JsonNumber(new BigInteger("12")), new JsonNumber(new BigInteger("12")));
+  }
+
+  @Test
+  void numbersAreEqualIfTheyHoldTheSameValueInTheSameRepresentation() {
+    assertEquals(new JsonNumber(7L), new JsonNumber(Long.valueOf(7L)));
+    assertEquals(new JsonNumber(7L), new JsonNumber(Integer.valueOf(7)));
+    assertEquals(new JsonNumber(-7L).hashCode(), new JsonNumber(Integer.valueOf(-7)).hashCode());
+    assertEquals(Long.valueOf(-7L).hashCode(), new JsonNumber(-7L).hashCode());
+    assertEquals(Double.valueOf(0.1).hashCode(), new JsonNumber(0.1).hashCode());
+    assertEquals(Integer.valueOf(7), new JsonNumber(Integer.valueOf(7)).value());
+    assertEquals(new JsonNumber(0.1), new JsonNumber(Double.valueOf(0.1)));
+    assertNotEquals(new JsonNumber(1L), new JsonNumber(1.0));
+    assertNotEquals(new JsonNumber(1L), new JsonNumber(BigInteger.ONE));
+    assertNotEquals(new JsonNumber(0.0), new JsonNumber(-0.0));
+  }
+
+  @Test
+  void typedGettersReadNumbersOfContainers() {
+    final JsonObject o = (JsonObject) new JsonParser()
+        .parse("{\"id\": 9007199254740993, \"ratio\": 0.25, \"ns\": [1, 2.5], \"s\": \"x\"}")
+        .unwrap();
+    assertEquals(9007199254740993L, o.getLong("id"));
+    assertEquals(0.25, o.getDouble("ratio"));
+    assertEquals(new JsonNumber(0.25), o.getNumber("ratio"));
+    final JsonArray ns = (JsonArray) o.get("ns");
+    assertEquals(1L, ns.getLong(0));
+    assertEquals(2.5, ns.getDouble(1));
+    assertThrows(NoSuchElementException.class, () -> o.getLong("s"));
+    assertThrows(NoSuchElementException.class, () -> o.getLong("missing"));
+    assertThrows(IndexOutOfBoundsException.class, () -> ns.getLong(2));
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentJsonListTest {
+
+  @Test
+  void updatedCopiesBehaveLikeArrayLists() {
+    final Random random = new Random(19);
+    final List<JsonValue> expected = new ArrayList<>();
+    PersistentJsonList list = PersistentJsonList.empty();
+    // spans three levels of the trie:
+    for (int i = 0; i < 40_000; i++) {
+      final PersistentJsonList previous = list;
+      if (!expected.isEmpty() && random.nextInt(4) == 0) {
+        final int index = random.nextInt(expected.size());
+        expected.set(index, new JsonNumber(i));
+        list = list.withIndex(index, new JsonNumber(i));
+        assertEquals(expected.get(index), list.get(index));
+        assertNotEquals(list.get(index), previous.get(index));
+      } else {
+        expected.add(new JsonNumber(i));
+        list = list.with(new JsonNumber(i));
+        assertEquals(expected.size() - 1, previous.size());
+      }
+      assertEquals(expected.size(), list.size());
+    }
+    assertEquals(expected, list);
+    assertEquals(expected, PersistentJsonList.of(expected));
+    assertSame(list, PersistentJsonList.of(list));
+    assertThrows(IndexOutOfBoundsException.class, () -> PersistentJsonList.empty().get(0));
+    assertThrows(UnsupportedOperationException.class, () -> PersistentJsonList.empty()
+        .add(JsonNull.INSTANCE));
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.json;
+
+import hu.aestallon.jsmol.parser.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentJsonMapTest {
+
+  @Test
+  void updatedCopiesBehaveLikeLinkedHashMaps() {
+    final Random random = new Random(19);
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      keys.add("key" + i);
+    }
+    // "Aa" and "BB" have the same hash code, thus these keys all collide:
+    for (int i = 0; i < 16; i++) {
+      keys.add(((i & 1) == 0 ? "Aa" : "BB") + ((i & 2) == 0 ? "Aa" : "BB")
+               + ((i & 4) == 0 ? "Aa" : "BB") + ((i & 8) == 0 ? "Aa" : "BB"));
+    }
+
+    final Map<String, JsonValue> expected = new LinkedHashMap<>();
+    PersistentJsonMap map = PersistentJsonMap.empty();
+    for (int i = 0; i < 5000; i++) {
+      final String key = keys.get(random.nextInt(keys.size()));
+      final PersistentJsonMap previous = map;
+      final Map<String, JsonValue> snapshot = new LinkedHashMap<>(expected);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.without(key);
+      } else {
+        expected.put(key, new JsonNumber(i));
+        map = map.with(key, new JsonNumber(i));
+      }
+      assertEquals(snapshot, previous);
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected.get(key), map.get(key));
+      assertEquals(expected.containsKey(key), map.containsKey(key));
+      if (i % 100 == 0) {
+        assertEquals(expected, map);
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(map.keySet()));
+      }
+    }
+    assertSame(map, PersistentJsonMap.of(map));
+    assertEquals(expected, PersistentJsonMap.of(expected));
+    assertThrows(UnsupportedOperationException.class, () -> PersistentJsonMap.empty()
+        .put("a", JsonNull.INSTANCE));
+  }
+
+  @Test
+  void objectCopiesShareUnchangedMembers() {
+    final JsonObject original = (JsonObject) new JsonParser()
+        .parse("{\"a\": {\"b\": [1, 2, 3]}, \"c\": 1}")
+        .unwrap();
+    final JsonObject copy = original.with("c", new JsonNumber(2L)).with("d", JsonNull.INSTANCE);
+    assertEquals(new JsonNumber(1L), original.get("c"));
+    assertFalse(original.containsKey("d"));
+    assertEquals("{\"a\":{\"b\":[1,2,3]},\"c\":2,\"d\":null}", copy.toString());
+    assertSame(original.get("a"), copy.get("a"));
+    assertEquals(original, copy.without("d").with("c", new JsonNumber(1L)));
+
+    final JsonArray array = (JsonArray) ((JsonObject) original.get("a")).get("b");
+    final JsonArray changed = array.withIndex(1, new JsonString("x")).with(JsonNull.INSTANCE);
+    assertEquals("[1,2,3]", array.toString());
+    assertEquals("[1,\"x\",3,null]", changed.toString());
+    assertThrows(IndexOutOfBoundsException.class, () -> array.withIndex(3, JsonNull.INSTANCE));
+  }
+
+  @Test
+  void frozenTreesAreEqualToTheirMutableOriginals() {
+    final JsonObject parsed = (JsonObject) new JsonParser()
+        .parse("{\"a\": [{\"b\": 1}, {\"b\": 2}], \"c\": \"d\"}")
+        .unwrap();
+    assertFalse(parsed.isFrozen());
+    final JsonObject frozen = parsed.freeze();
+    assertTrue(frozen.isFrozen());
+    assertTrue(frozen.get("a").isFrozen());
+    assertSame(frozen, frozen.freeze());
+    assertEquals(parsed, frozen);
+    assertEquals(frozen, parsed);
+    assertEquals(parsed.hashCode(), frozen.hashCode());
+    assertEquals(parsed.toString(), frozen.toString());
+
+    final JsonObject changed = frozen.with("c", new JsonString("e"));
+    assertTrue(changed.isFrozen());
+    assertNotEquals(frozen, changed);
+    assertNotEquals(frozen.hashCode(), changed.hashCode());
+    assertEquals(frozen, changed.with("c", new JsonString("d")));
+    assertFalse(frozen.with("x", parsed).isFrozen());
+    assertTrue(((JsonArray) frozen.get("a")).containsAll(((JsonArray) parsed.get("a")).value()));
+  }
+
+}
@@ -20,8 +20,12 @@ import hu.aestallon.jsmol.marshaller.ArrayMapper;
 import hu.aestallon.jsmol.marshaller.JsonTypeMapper;
 import hu.aestallon.jsmol.marshaller.JsonTypeMapperProvider;
 import hu.aestallon.jsmol.marshaller.JsonValueMapper;
+import hu.aestallon.jsmol.marshaller.TypeConversionException;
+import hu.aestallon.jsmol.parser.JsonParseException;
 import hu.aestallon.jsmol.parser.JsonParser;
+import hu.aestallon.jsmol.parser.JsonReader;
 import hu.aestallon.jsmol.result.Result;
+import hu.aestallon.jsmol.writer.JsonWriter;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -32,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.*;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -278,4 +283,111 @@ class JsonMarshallerTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  void writingEmitsTheSameJsonAsMarshallingWithoutBuildingATree() throws Exception {
+    record Measurement(String name, long count, double value, boolean valid,
+                       List<Double> samples) {}
+    record Series(String id, Measurement latest, List<Measurement> history) {}
+    final Measurement m1 = new Measurement("cpu", 3, 0.1, true, List.of(1.5, -2e-7, 1e23));
+    final Measurement m2 = new Measurement("m\u00e9m \"o\"", -1, 1e300, false, List.of());
+    final Series series = new Series("s1", m1, List.of(m1, m2));
+
+    final JsonTypeMapper<Series> mapper = jsonTypeMapperProvider.provide(Series.class).unwrap();
+    final StringBuilder written = new StringBuilder();
+    try (JsonWriter writer = JsonWriter.of(written)) {
+      mapper.write(series, writer);
+    }
+    final JsonValue json = parser.parse(written.toString()).unwrap();
+    Assertions.assertEquals(mapper.marshall(series).unwrap(), json);
+    Assertions.assertEquals(series, mapper.unmarshall(json).unwrap());
+
+    final StringBuilder nothing = new StringBuilder();
+    try (JsonWriter writer = JsonWriter.of(nothing)) {
+      mapper.write(null, writer);
+    }
+    Assertions.assertEquals("null", nothing.toString());
+
+    final JsonValueMapper valueMapper = new JsonValueMapper();
+    final Object objectMap = valueMapper.unmarshall(json).unwrap();
+    final StringBuilder rewritten = new StringBuilder();
+    try (JsonWriter writer = JsonWriter.of(rewritten)) {
+      valueMapper.write(objectMap, writer);
+    }
+    Assertions.assertEquals(json, parser.parse(rewritten.toString()).unwrap());
+  }
+
+  @Test
+  void writingAnUnsupportedValueFailsAsDocumented() throws Exception {
+    final JsonValueMapper valueMapper = new JsonValueMapper();
+    try (JsonWriter writer = JsonWriter.of(new StringBuilder())) {
+      final IllegalStateException e = Assertions.assertThrows(
+          IllegalStateException.class,
+          () -> valueMapper.write(Map.of("a", List.of(new Object())), writer));
+      Assertions.assertInstanceOf(TypeConversionException.class, e.getCause());
+    }
+  }
+
+  @Test
+  void readingFillsObjectsStraightFromTheTokens() throws Exception {
+    record Owner(String name, int age) {}
+    record Dog(String name, Owner owner, double weight, boolean good, List<String> tricks) {}
+    record Household(String nickname, List<Dog> dogs) {}
+    final String json = """
+        {"ignored": {"deeply": [1, {"nested": "\\\\"}]},
+         "dogs": [
+           {"name": "Rex", "owner": {"name": "John", "age": 42, "x": null}, "weight": 12.5,
+            "good": true, "tricks": ["sit", "roll"]},
+           {"good": false, "name": "Bl\\u00f6ki", "owner": null, "weight": 3, "tricks": null,
+            "unknown": [[], {}]}
+         ],
+         "nickname": "home"}
+        """;
+    final Household expected = new Household("home", List.of(
+        new Dog("Rex", new Owner("John", 42), 12.5, true, List.of("sit", "roll")),
+        new Dog("Bl\u00f6ki", null, 3.0, false, null)));
+    Assertions.assertEquals(expected,
+        jsonTypeMapperProvider.fromJson(json.getBytes(UTF_8), Household.class).unwrap());
+    Assertions.assertEquals(expected,
+        jsonTypeMapperProvider.fromJson(json, Household.class).unwrap());
+    Assertions.assertEquals(expected, parser.parse(json)
+        .flatMap(tree -> jsonTypeMapperProvider.provide(Household.class)
+            .flatMap(mapper -> mapper.unmarshall(tree)))
+        .unwrap());
+    Assertions.assertNull(jsonTypeMapperProvider.fromJson("null", Household.class).unwrap());
+
+    Assertions.assertTrue(jsonTypeMapperProvider
+        .fromJson("{\"nickname\": 1}", Household.class)
+        .isErr());
+    Assertions.assertTrue(jsonTypeMapperProvider
+        .fromJson("{\"nickname\": \"home\"} []", Household.class)
+        .isErr());
+
+    // duplicates are rejected whether read from tokens or from a tree:
+    final String duplicate = "{\"nickname\": \"a\", \"dogs\": [], \"nickname\": \"b\"}";
+    Assertions.assertTrue(jsonTypeMapperProvider.fromJson(duplicate, Household.class).isErr());
+    Assertions.assertTrue(parser.parse(duplicate).isErr());
+
+    // and numbers are narrowed the same way:
+    record Counter(int count, long total) {}
+    for (String count : new String[] {
+        "7", "-2.9", "4294967297", "1e20", "9223372036854775808", "-9223372036854775809"}) {
+      final String counter = "{\"count\": " + count + ", \"total\": " + count + "}";
+      Assertions.assertEquals(
+          parser.parse(counter)
+              .flatMap(tree -> jsonTypeMapperProvider.provide(Counter.class)
+                  .flatMap(mapper -> mapper.unmarshall(tree)))
+              .unwrap(),
+          jsonTypeMapperProvider.fromJson(counter, Counter.class).unwrap());
+    }
+
+    final var personMapper = new ObjectMapper<>(Person::new)
+        .bind(Person.FIRST_NAME, stringMapper, Person::getFirstName, Person::setFirstName)
+        .bind(Person.LAST_NAME, stringMapper, Person::getLastName, Person::setLastName);
+    final Person person = personMapper.read(JsonReader.of(
+        "{\"middleName\": \"J\", \"lastName\": \"Kenobi\", \"firstName\": \"Obi-Wan\"}"));
+    Assertions.assertEquals(new Person().setFirstName("Obi-Wan").setLastName("Kenobi"), person);
+    Assertions.assertThrows(JsonParseException.class, () -> personMapper.read(JsonReader.of(
+        "{\"lastName\": \"Kenobi\", \"lastName\": \"Skywalker\"}")));
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonNumber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static hu.aestallon.jsmol.parser.JsonParserTest.errorOf;
+import static hu.aestallon.jsmol.parser.JsonParserTest.readResource;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalJsonParserTest {
+
+  private final JsonParser parser = new JsonParser();
+
+  private static int feed(IncrementalJsonParser incremental, String chunk) {
+    return incremental.feed(ByteBuffer.wrap(chunk.getBytes(UTF_8))).unwrap();
+  }
+
+  @Test
+  void feedingByteByByteYieldsTheSameTree() throws Exception {
+    final String text = readResource("/test01.json")
+                        + "{\"név\": \"Rákóczy-krémes\", \"cake\": \"🍰\", \"e\": \"a\\\"b\"}";
+    final byte[] bytes = text.getBytes(UTF_8);
+    final IncrementalJsonParser incremental = new IncrementalJsonParser();
+    // a single, reused chunk buffer:
+    final ByteBuffer chunk = ByteBuffer.allocateDirect(1);
+    int completed = 0;
+    for (byte b : bytes) {
+      completed += incremental.feed(chunk.clear().put(b).flip()).unwrap();
+      assertFalse(chunk.hasRemaining());
+    }
+    completed += incremental.endOfInput().unwrap();
+
+    assertEquals(2, completed);
+    final String second = text.substring(text.lastIndexOf("{\"név\""));
+    assertEquals(parser.parse(readResource("/test01.json")).unwrap(), incremental.poll());
+    assertEquals(parser.parse(second).unwrap(), incremental.poll());
+    assertNull(incremental.poll());
+  }
+
+  @Test
+  void valuesAreAvailableAsSoonAsTheyAreComplete() {
+    final IncrementalJsonParser incremental = new IncrementalJsonParser();
+    assertEquals(0, feed(incremental, "[1, 2"));
+    assertNull(incremental.poll());
+    assertEquals(1, feed(incremental, "]\n{\"a\": tr"));
+    assertEquals(parser.parse("[1, 2]").unwrap(), incremental.poll());
+    assertEquals(1, feed(incremental, "ue} 4"));
+    assertEquals(parser.parse("{\"a\": true}").unwrap(), incremental.poll());
+    // a number can only be completed by what follows it:
+    assertNull(incremental.poll());
+    assertEquals(1, feed(incremental, "2 "));
+    assertEquals(new JsonNumber(42L), incremental.poll());
+    assertEquals(0, feed(incremental, "-7.5"));
+    assertEquals(1, (int) incremental.endOfInput().unwrap());
+    assertEquals(new JsonNumber(-7.5), incremental.poll());
+  }
+
+  @Test
+  void errorsAreReportedWithOffsetsAndPersist() {
+    final IncrementalJsonParser incremental = new IncrementalJsonParser();
+    assertTrue(incremental.feed(ByteBuffer.wrap("{\"a\": [1,".getBytes(UTF_8))).isOk());
+    final Object error = errorOf(incremental.feed(ByteBuffer.wrap(" 2}".getBytes(UTF_8))));
+    assertEquals(11L, assertInstanceOf(JsonParseException.class, error).offset());
+    assertSame(error, errorOf(incremental.feed(ByteBuffer.wrap("]}".getBytes(UTF_8)))));
+    assertSame(error, errorOf(incremental.endOfInput()));
+
+    final IncrementalJsonParser duplicate = new IncrementalJsonParser();
+    final Object dupError = errorOf(duplicate.feed(ByteBuffer.wrap(
+        "{\"a\": 1, \"a\": 2}".getBytes(UTF_8))));
+    assertEquals(9L, assertInstanceOf(JsonParseException.class, dupError).offset());
+
+    final IncrementalJsonParser truncated = new IncrementalJsonParser();
+    assertTrue(truncated.feed(ByteBuffer.wrap("[\"abc".getBytes(UTF_8))).isOk());
+    assertInstanceOf(JsonParseException.class, errorOf(truncated.endOfInput()));
+  }
+
+  @Test
+  void nestingIsLimitedAcrossChunks() {
+    final IncrementalJsonParser incremental = new IncrementalJsonParser();
+    final byte[] brackets = "[".repeat(JsonParser.DEFAULT_MAX_DEPTH / 2).getBytes(UTF_8);
+    assertTrue(incremental.feed(ByteBuffer.wrap(brackets)).isOk());
+    assertTrue(incremental.feed(ByteBuffer.wrap(brackets)).isOk());
+    final Object error = errorOf(incremental.feed(ByteBuffer.wrap(brackets)));
+    assertEquals(
+        JsonParser.DEFAULT_MAX_DEPTH,
+        assertInstanceOf(JsonParseException.class, error).offset());
+
+    final JsonParserTest.RecordingHandler handler = new JsonParserTest.RecordingHandler();
+    final IncrementalJsonParser shallow = new IncrementalJsonParser(handler).withMaxDepth(1);
+    assertEquals(1, (int) shallow.feed(ByteBuffer.wrap("[1] ".getBytes(UTF_8))).unwrap());
+    final Object shallowError = errorOf(shallow.feed(ByteBuffer.wrap("[[1]]".getBytes(UTF_8))));
+    assertEquals(5L, assertInstanceOf(JsonParseException.class, shallowError).offset());
+    assertEquals(List.of("[", "long:1", "]", "["), handler.events);
+  }
+
+  @Test
+  void handlersMayStopTheParser() {
+    final JsonParserTest.RecordingHandler handler = new JsonParserTest.RecordingHandler();
+    handler.limit = 2;
+    final IncrementalJsonParser incremental = new IncrementalJsonParser(handler);
+    final ByteBuffer chunk = ByteBuffer.wrap("[\"a\", \"b\"]".getBytes(UTF_8));
+    assertEquals(0, (int) incremental.feed(chunk).unwrap());
+    assertEquals(List.of("[", "string:a"), handler.events);
+    assertEquals(4, chunk.position());
+    assertThrows(IllegalStateException.class, incremental::poll);
+  }
+
+  @Test
+  void feedingAfterTheEndOfInputFails() {
+    final IncrementalJsonParser incremental = new IncrementalJsonParser();
+    assertEquals(0, (int) incremental.endOfInput().unwrap());
+    assertTrue(incremental.feed(ByteBuffer.wrap("1".getBytes(UTF_8))).isErr());
+  }
+
+}
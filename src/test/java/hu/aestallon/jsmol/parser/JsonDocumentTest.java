@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static hu.aestallon.jsmol.parser.JsonParserTest.errorOf;
+import static hu.aestallon.jsmol.parser.JsonParserTest.readResource;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonDocumentTest {
+
+  private final JsonParser parser = new JsonParser();
+
+  @Test
+  void documentsAreEqualToTheTreesOfTheSameText() throws Exception {
+    final String text = readResource("/test01.json");
+    final JsonValue expected = parser.parse(text).unwrap();
+    final JsonDocument document = parser.parseDocument(text.getBytes(UTF_8)).unwrap();
+    assertEquals(expected, document.root());
+    assertEquals(document.root(), expected);
+    assertEquals(expected.hashCode(), document.root().hashCode());
+    assertEquals(expected.toString(), document.toString());
+
+    final String values = "[\"a\\\"\\u00e9 🍰\", \"\\ud800\", -12, 36028797018963968, -1.5e-7, "
+                          + "123456789012345678901234567890, true, false, null, {}, [], [[]]]";
+    assertEquals(parser.parse(values).unwrap(), parser.parseDocument(values).unwrap().root());
+    assertEquals(new JsonString("x"), parser.parseDocument("\"x\"").unwrap().root());
+  }
+
+  @Test
+  void viewsNavigateTheTape() {
+    final JsonDocument document = parser.parseDocument(
+        "{\"a\": [1, {\"b\": [2, 3]}, 4.5], \"c\": {\"d\": null}, \"é\": 7}").unwrap();
+    final JsonObject root = assertInstanceOf(JsonObject.class, document.root());
+    assertEquals(3, root.size());
+    assertEquals(List.of("a", "c", "é"), new ArrayList<>(root.keySet()));
+    assertEquals(new JsonNumber(7L), root.get("é"));
+    assertTrue(root.containsKey("c"));
+    assertFalse(root.containsKey("b"));
+    assertNull(root.get("b"));
+
+    final JsonArray a = assertInstanceOf(JsonArray.class, root.get("a"));
+    assertEquals(3, a.size());
+    assertEquals(new JsonNumber(4.5), a.get(2));
+    final JsonObject nested = assertInstanceOf(JsonObject.class, a.get(1));
+    assertEquals(new JsonNumber(3L), ((JsonArray) nested.get("b")).get(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> a.get(3));
+    assertThrows(UnsupportedOperationException.class, () -> root.put("x", a));
+    final JsonArray big = (JsonArray) parser.parseDocument("[123456789012345678901, \"\\udc00\"]")
+        .unwrap().root();
+    assertEquals(new JsonNumber(new BigInteger("123456789012345678901")), big.get(0));
+    assertEquals(new JsonString("\udc00"), big.get(1));
+    final JsonObject surrogates =
+        (JsonObject) parser.parseDocument("{\"\\ud800\": 1}").unwrap().root();
+    assertEquals(new JsonNumber(1L), surrogates.get("\ud800"));
+  }
+
+  @Test
+  void documentsAreCompact() {
+    final StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+          .append(",\"name\":\"item number ").append(i).append("\",\"ratio\":").append(i / 7.0)
+          .append(",\"tags\":[\"x\",\"y\"]}");
+    }
+    final String text = sb.append(']').toString();
+    final JsonDocument document = parser.parseDocument(text).unwrap();
+    assertTrue(document.footprint() < 2L * text.length(), "footprint: " + document.footprint());
+    assertEquals(parser.parse(text).unwrap(), document.root());
+  }
+
+  @Test
+  void malformedTextsAreRejected() {
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parseDocument("{\"a\": 1, \"a\": 2}")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parseDocument("[1, 2")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parseDocument("[1] 2")));
+    assertInstanceOf(
+        JsonParseException.class,
+        errorOf(parser.withMaxDepth(1).parseDocument("[[1]]")));
+  }
+
+}
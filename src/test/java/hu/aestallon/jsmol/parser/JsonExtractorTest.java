@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static hu.aestallon.jsmol.parser.JsonParserTest.errorOf;
+import static hu.aestallon.jsmol.parser.JsonParserTest.readResource;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonExtractorTest {
+
+  private static final String ORDER = """
+      {
+        "meta": {"skipped": [1, {"deep": ["x"]}]},
+        "order": {
+          "id": 42,
+          "lines": [
+            {"sku": "A-1", "qty": 2},
+            {"qty": 1},
+            {"sku": "B-2", "qty": 5}
+          ],
+          "a/b": true,
+          "m~n": null
+        }
+      }""";
+
+  private final JsonParser parser = new JsonParser();
+
+  @Test
+  void extractingPointersWorks() {
+    final JsonExtractor extractor = JsonExtractor.compile(
+        "/order/id", "/order/lines/*/sku", "/order/lines/1", "/order/a~1b", "/order/m~0n",
+        "/missing", "/order/id/nope");
+    final Map<String, List<JsonValue>> result = extractor.extract(ORDER).unwrap();
+
+    assertEquals(List.of(new JsonNumber(42L)), result.get("/order/id"));
+    assertEquals(
+        List.of(new JsonString("A-1"), new JsonString("B-2")),
+        result.get("/order/lines/*/sku"));
+    assertEquals(List.of(parser.parse("{\"qty\": 1}").unwrap()), result.get("/order/lines/1"));
+    assertEquals(List.of(parser.parse("true").unwrap()), result.get("/order/a~1b"));
+    assertEquals(List.of(parser.parse("null").unwrap()), result.get("/order/m~0n"));
+    assertEquals(List.of(), result.get("/missing"));
+    assertEquals(List.of(), result.get("/order/id/nope"));
+    assertEquals(extractor.extract(ORDER.getBytes(UTF_8)).unwrap(), result);
+  }
+
+  @Test
+  void pointersWithinMatchedValuesAreMatchedAsWell() throws Exception {
+    final String text = readResource("/test01.json");
+    final JsonExtractor extractor = JsonExtractor.compile("", "/facilities", "/facilities/*");
+    final Map<String, List<JsonValue>> result = extractor.extract(text).unwrap();
+
+    final JsonValue whole = parser.parse(text).unwrap();
+    assertEquals(List.of(whole), result.get(""));
+    assertEquals(List.of(((Map<?, ?>) whole).get("facilities")), result.get("/facilities"));
+    assertEquals(
+        List.copyOf(((Map<?, ?>) ((Map<?, ?>) whole).get("facilities")).values()),
+        result.get("/facilities/*"));
+  }
+
+  @Test
+  void malformedInputAndPointersAreRejected() {
+    final JsonExtractor extractor = JsonExtractor.compile("/a");
+    final Object error = errorOf(extractor.extract("{\"b\": [1, 2], \"a\": [1, 2}"));
+    assertEquals(24L, assertInstanceOf(JsonParseException.class, error).offset());
+    assertInstanceOf(JsonParseException.class, errorOf(extractor.extract("{\"b\": [1, \"2]}")));
+    // skipped subtrees are only checked for balanced brackets:
+    assertTrue(extractor.extract("{\"b\": [1 2 true}, \"a\": 1}").isOk());
+
+    assertThrows(IllegalArgumentException.class, () -> JsonExtractor.compile("a"));
+    assertThrows(IllegalArgumentException.class, () -> JsonExtractor.compile("/a~2"));
+  }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonBoolean;
+import hu.aestallon.jsmol.json.JsonNull;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.result.Result;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonParserTest {
+
+  private final JsonParser parser = new JsonParser();
+
+  static String readResource(String name) throws Exception {
+    InputStream resource = JsonParserTest.class.getResourceAsStream(name);
+    assertNotNull(resource);
+    try (var reader = new BufferedReader(new InputStreamReader(resource))) {
+      return reader.lines().collect(joining());
+    }
+  }
+
+  /**
+   * Hands out its contents one character at a time, so every token spans several windows.
+   */
+  static final class TrickleReader extends Reader {
+    private final String s;
+    private       int    idx;
+
+    TrickleReader(String s) {this.s = s;}
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (idx >= s.length()) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      cbuf[off] = s.charAt(idx++);
+      return 1;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /**
+   * Hands out its contents one byte at a time, splitting multibyte sequences between windows.
+   */
+  static final class TrickleInputStream extends InputStream {
+    private final byte[] bytes;
+    private       int    idx;
+
+    TrickleInputStream(byte[] bytes) {this.bytes = bytes;}
+
+    @Override
+    public int read() {
+      return (idx < bytes.length) ? bytes[idx++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (idx >= bytes.length) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      b[off] = bytes[idx++];
+      return 1;
+    }
+  }
+
+  static Object errorOf(Result<?> result) {
+    assertTrue(result.isErr());
+    final AtomicReference<Object> error = new AtomicReference<>();
+    result.errMatch(error::set);
+    return error.get();
+  }
+
+  @Test
+  void parsingPrimitivesWorks() {
+    assertEquals(JsonNull.INSTANCE, parser.parse("null").unwrap());
+    assertEquals(new JsonBoolean(true), parser.parse("true").unwrap());
+    assertEquals(new JsonBoolean(false), parser.parse(" false ").unwrap());
+    assertEquals(new JsonNumber(42L), parser.parse("42").unwrap());
+    assertEquals(new JsonNumber(-3.25), parser.parse("-3.25").unwrap());
+    assertEquals(new JsonString("abc"), parser.parse("\"abc\"").unwrap());
+  }
+
+  @Test
+  void parsingNumbersFollowsTheFullGrammar() {
+    assertEquals(new JsonNumber(1e10), parser.parse("1e10").unwrap());
+    assertEquals(new JsonNumber(-0.5e-3), parser.parse("-0.5E-3").unwrap());
+    assertEquals(new JsonNumber(250.0), parser.parse("2.5e+2").unwrap());
+    assertEquals(new JsonNumber(0L), parser.parse("-0").unwrap());
+    assertEquals(new JsonNumber(0.1), parser.parse("0.1".getBytes(UTF_8)).unwrap());
+    assertEquals(new JsonNumber(2.2250738585072014E-308), parser.parse("22.250738585072014e-309")
+        .unwrap());
+    assertEquals(new JsonNumber(4.9e-324), parser.parse("4.9e-324").unwrap());
+    assertEquals(new JsonNumber(0.30000000000000004),
+        parser.parse("0.3000000000000000444089209850062616169452667236328125").unwrap());
+    assertEquals(new JsonNumber(Long.MIN_VALUE), parser.parse("-9223372036854775808").unwrap());
+
+    assertEquals(
+        new JsonNumber(new BigInteger("9223372036854775808")),
+        parser.parse("9223372036854775808").unwrap());
+    assertEquals(new JsonNumber(new BigDecimal("-1.5e400")), parser.parse("-1.5e400").unwrap());
+    assertEquals(new JsonNumber(0.0), parser.parse("1e-400").unwrap());
+
+    for (String malformed : List.of("01", "-", "1.", ".5", "+1", "1e", "1e+", "1.e5", "--1")) {
+      assertInstanceOf(JsonParseException.class, errorOf(parser.parse(malformed)), malformed);
+    }
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("1e99999999999")));
+  }
+
+  @Test
+  void parsingComplexValuesToleratesWhitespaceEverywhere() {
+    final JsonValue json = parser.parse(" {\n\t\"a\" : [ 1 , 2 ,3 ] ,\r\n \"b\":{ } , \"c\" : [] } ")
+        .unwrap();
+    final JsonObject obj = assertInstanceOf(JsonObject.class, json);
+    assertEquals(List.of("a", "b", "c"), List.copyOf(obj.keySet()));
+    assertEquals(
+        new JsonArray(List.of(new JsonNumber(1L), new JsonNumber(2L), new JsonNumber(3L))),
+        obj.get("a"));
+    assertEquals(JsonObject.EMPTY, obj.get("b"));
+    assertEquals(new JsonArray(List.of()), obj.get("c"));
+  }
+
+  @Test
+  void parsingTestResourceWorks() throws Exception {
+    final JsonValue json = parser.parse(readResource("/test01.json")).unwrap();
+    final JsonObject company = assertInstanceOf(JsonObject.class, json);
+    assertEquals(new JsonString("Acme Corporation"), company.get("companyName"));
+
+    final JsonObject facilities = assertInstanceOf(JsonObject.class, company.get("facilities"));
+    final JsonArray rooms = assertInstanceOf(JsonArray.class, facilities.get("conferenceRooms"));
+    assertEquals(new JsonNumber(50L), ((JsonObject) rooms.get(1)).get("capacity"));
+  }
+
+  @Test
+  void malformedInputYieldsErrWithOffset() {
+    final Object error = errorOf(parser.parse("{\"a\": [1, 2}"));
+    final JsonParseException e = assertInstanceOf(JsonParseException.class, error);
+    assertEquals(11L, e.offset());
+
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("nul")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("\"abc")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("{\"a\" 1}")));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("[1] [2]")));
+  }
+
+  @Test
+  void duplicateKeysAreRejected() {
+    final Object error = errorOf(parser.parse("{\"a\": 1, \"a\": 2}"));
+    final JsonParseException e = assertInstanceOf(JsonParseException.class, error);
+    assertEquals(9L, e.offset());
+  }
+
+  @Test
+  void parsingStreamingSourcesYieldsTheSameTree() throws Exception {
+    final String text = readResource("/test01.json");
+    final JsonValue expected = parser.parse(text).unwrap();
+    final byte[] bytes = text.getBytes(UTF_8);
+
+    assertEquals(expected, parser.parse(new StringReader(text)).unwrap());
+    assertEquals(expected, parser.parse(new TrickleReader(text)).unwrap());
+    assertEquals(expected, parser.parse(new ByteArrayInputStream(bytes)).unwrap());
+    assertEquals(
+        expected,
+        parser.parse(Channels.newChannel(new ByteArrayInputStream(bytes))).unwrap());
+  }
+
+  @Test
+  void tokensSpanningSeveralWindowsAreParsed() {
+    final String longString = "ab\\\"".repeat(JsonScanner.WINDOW_SIZE / 2);
+    final String text = "[\"" + longString + "\", 1234567.5, " + "[], ".repeat(1000) + "0]";
+
+    final JsonArray array = assertInstanceOf(JsonArray.class, parser.parse(text).unwrap());
+    assertEquals(new JsonString("ab\"".repeat(JsonScanner.WINDOW_SIZE / 2)), array.get(0));
+    assertEquals(new JsonNumber(1234567.5), array.get(1));
+    assertEquals(1003, array.size());
+    assertEquals(array, parser.parse(new StringReader(text)).unwrap());
+    assertEquals(array, parser.parse(new TrickleReader(text)).unwrap());
+  }
+
+  @Test
+  void parsingUtf8BytesYieldsTheSameTree() {
+    final String text = "{\"név\": \"Rákóczy-krémes\", \"cake\": \"\uD83C\uDF70\", \"n\": [1, 2.5]}";
+    final JsonValue expected = parser.parse(text).unwrap();
+    final byte[] bytes = text.getBytes(UTF_8);
+
+    assertEquals(expected, parser.parse(bytes).unwrap());
+    final byte[] padded = ("[[" + text + "]]").getBytes(UTF_8);
+    assertEquals(expected, parser.parse(padded, 2, bytes.length).unwrap());
+    assertEquals(expected, parser.parse(new TrickleInputStream(bytes)).unwrap());
+
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    assertEquals(expected, parser.parse(direct).unwrap());
+    assertEquals(0, direct.position());
+    assertEquals(bytes.length, direct.limit());
+  }
+
+  @Test
+  void byteInputsReportByteOffsets() {
+    final Object error = errorOf(parser.parse("{\"é\": x}".getBytes(UTF_8)));
+    final JsonParseException e = assertInstanceOf(JsonParseException.class, error);
+    assertEquals(7L, e.offset());
+  }
+
+  @Test
+  void parsingMemoryMappedFilesWorks() throws Exception {
+    final String text = readResource("/test01.json");
+    final JsonValue expected = parser.parse(text).unwrap();
+    final Path file = Files.createTempFile("jsmol", ".json");
+    try {
+      Files.writeString(file, text, UTF_8);
+      assertEquals(expected, parser.parse(file).unwrap());
+      // map the file in tiny windows, so tokens span several mappings:
+      try (FileChannel channel = FileChannel.open(file)) {
+        assertEquals(expected, parser.parse(ByteScanner.of(channel, 7L)).unwrap());
+      }
+
+      Files.writeString(file, "[1, 2, 3}", UTF_8);
+      final Object error = errorOf(parser.parse(file));
+      assertEquals(8L, assertInstanceOf(JsonParseException.class, error).offset());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * Records every event as a string, copying the views it receives.
+   */
+  static final class RecordingHandler implements JsonHandler {
+    final List<String> events = new ArrayList<>();
+    int limit = Integer.MAX_VALUE;
+
+    private boolean record(String event) {
+      events.add(event);
+      return events.size() < limit;
+    }
+
+    @Override public boolean startObject() {return record("{");}
+
+    @Override public boolean key(CharSequence key) {return record("key:" + key);}
+
+    @Override public boolean endObject() {return record("}");}
+
+    @Override public boolean startArray() {return record("[");}
+
+    @Override public boolean endArray() {return record("]");}
+
+    @Override public boolean value(CharSequence s) {return record("string:" + s);}
+
+    @Override public boolean value(long l) {return record("long:" + l);}
+
+    @Override public boolean value(double d) {return record("double:" + d);}
+
+    @Override public boolean value(boolean b) {return record("boolean:" + b);}
+
+    @Override public boolean nullValue() {return record("null");}
+  }
+
+  @Test
+  void handlersReceiveTheEventsOfTheText() {
+    final String text = "{\"név\": [1, -2.5, \"\uD83C\uDF70\"], \"b\": {\"c\": null, \"d\": true}}";
+    final List<String> expected = List.of(
+        "{", "key:név", "[", "long:1", "double:-2.5", "string:\uD83C\uDF70", "]",
+        "key:b", "{", "key:c", "null", "key:d", "boolean:true", "}", "}");
+
+    final RecordingHandler fromString = new RecordingHandler();
+    assertTrue(parser.parse(text, fromString).unwrap());
+    assertEquals(expected, fromString.events);
+
+    final byte[] bytes = text.getBytes(UTF_8);
+    final RecordingHandler fromTrickle = new RecordingHandler();
+    assertTrue(parser.parse(new TrickleInputStream(bytes), fromTrickle).unwrap());
+    assertEquals(expected, fromTrickle.events);
+
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    final RecordingHandler fromDirect = new RecordingHandler();
+    assertTrue(parser.parse(direct, fromDirect).unwrap());
+    assertEquals(expected, fromDirect.events);
+  }
+
+  @Test
+  void handlersMayStopTheParserEarly() {
+    final RecordingHandler handler = new RecordingHandler();
+    handler.limit = 3;
+    // the text is malformed after the stopping point, but it is never read:
+    assertFalse(parser.parse("[1, 2, 3, }", handler).unwrap());
+    assertEquals(List.of("[", "long:1", "long:2"), handler.events);
+
+    final Object error = errorOf(parser.parse("[1, 2, 3, }", new JsonHandler() {}));
+    assertEquals(10L, assertInstanceOf(JsonParseException.class, error).offset());
+  }
+
+  @Test
+  void decodingUtf8IntoCharsMatchesTheJdk() {
+    final byte[] bytes = "aé\u20AC\uD83C\uDF70z".getBytes(UTF_8);
+    final byte[][] inputs = {bytes, {(byte) 0xC3}, {(byte) 0xE2, (byte) 0x82, 'a'}, {(byte) 0xFF}};
+    for (byte[] input : inputs) {
+      final char[] chars = new char[input.length];
+      final int n = ByteScanner.decodeUtf8(input, 0, input.length, chars, 0);
+      assertEquals(new String(input, UTF_8), new String(chars, 0, n));
+    }
+  }
+
+  @Test
+  void escapeSequencesAreDecoded() throws Exception {
+    final String text = "{\"k\\ty\": [\"plain text, long enough for a few words\", "
+                        + "\"q\\\"b\\\\s\\/\\b\\f\\n\\r\\t\", \"\\u00e9t\\u00C9 \\ud83c\\udf70 🍰\"]}";
+    final JsonValue expected = new JsonObject(Map.of("k\ty", new JsonArray(List.of(
+        new JsonString("plain text, long enough for a few words"),
+        new JsonString("q\"b\\s/\b\f\n\r\t"),
+        new JsonString("étÉ 🍰 🍰")))));
+    final byte[] bytes = text.getBytes(UTF_8);
+    assertEquals(expected, parser.parse(text).unwrap());
+    assertEquals(expected, parser.parse(new TrickleReader(text)).unwrap());
+    assertEquals(expected, parser.parse(bytes).unwrap());
+    assertEquals(expected, parser.parse(new TrickleInputStream(bytes)).unwrap());
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    assertEquals(expected, parser.parse(direct).unwrap());
+    assertEquals(expected, parser.parse(direct.order(ByteOrder.LITTLE_ENDIAN)).unwrap());
+    assertEquals(expected, parser.parse(expected.toString()).unwrap());
+
+    final JsonParseException e = assertInstanceOf(
+        JsonParseException.class,
+        errorOf(parser.parse("[\"ab\\x\"]".getBytes(UTF_8))));
+    assertEquals(4L, e.offset());
+    assertEquals(4L, ((JsonParseException) errorOf(parser.parse("[\"ab\\u12G4\"]"))).offset());
+    assertEquals(3L, ((JsonParseException) errorOf(parser.parse("[\"a\tb\"]"))).offset());
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse("\"a\nb\"".getBytes(UTF_8))));
+  }
+
+  @Test
+  void searchingStringsWordByWordFindsEverySpecialByte() {
+    final Random random = new Random(7);
+    for (int i = 0; i < 10_000; i++) {
+      final long word = random.nextLong();
+      long expected = 0L;
+      for (int k = 0; k < Long.BYTES; k++) {
+        final int b = (int) (word >>> (k * 8)) & 0xFF;
+        if (b == '"' || b == '\\' || b < 0x20) {
+          expected |= 0x80L << (k * 8);
+        }
+      }
+      assertEquals(expected, ByteScanner.specials(word));
+    }
+  }
+
+  @Test
+  void deeplyNestedDocumentsDoNotExhaustTheStack() {
+    final int depth = 200_000;
+    final String text = "{\"a\":[".repeat(depth) + "1" + "]}".repeat(depth);
+    final JsonParser unlimited = parser.withMaxDepth(Integer.MAX_VALUE);
+    JsonValue value = unlimited.parse(text.getBytes(UTF_8)).unwrap();
+    for (int i = 0; i < depth; i++) {
+      value = ((JsonArray) ((JsonObject) value).get("a")).get(0);
+    }
+    assertEquals(new JsonNumber(1L), value);
+    assertTrue(unlimited.parse(text, new JsonHandler() {}).unwrap());
+
+    // every level of the text is made up of an object and an array:
+    final Object error = errorOf(parser.parse(text));
+    assertEquals(JsonParser.DEFAULT_MAX_DEPTH / 2 * 6L, ((JsonParseException) error).offset());
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parseLazy(text.getBytes(UTF_8))));
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parse(text, new JsonHandler() {})));
+
+    final JsonParser shallow = parser.withMaxDepth(2);
+    assertTrue(shallow.parse("[[], {\"a\": 1}]").isOk());
+    assertInstanceOf(JsonParseException.class, errorOf(shallow.parse("[[[]]]")));
+    assertInstanceOf(JsonParseException.class, errorOf(shallow.parse("[{\"a\": []}]")));
+    assertTrue(parser.withMaxDepth(0).parse("42").isOk());
+    assertInstanceOf(JsonParseException.class, errorOf(parser.withMaxDepth(0).parse("[]")));
+    assertThrows(IllegalArgumentException.class, () -> parser.withMaxDepth(-1));
+  }
+
+  @Test
+  void repeatedKeysShareASingleInstance() throws Exception {
+    final String text = "[{\"name\": 1}, {\"name\": 2}]";
+    final JsonArray records = assertInstanceOf(JsonArray.class, parser.parse(text).unwrap());
+    assertSame(firstKey(records.get(0)), firstKey(records.get(1)));
+    final JsonArray fromBytes = (JsonArray) parser.parse(text.getBytes(UTF_8)).unwrap();
+    assertSame(firstKey(fromBytes.get(0)), firstKey(fromBytes.get(1)));
+    assertEquals(records, fromBytes);
+
+    final JsonSymbolTable symbols = new JsonSymbolTable(16);
+    final JsonParser sharing = parser.withSymbolTable(symbols);
+    assertSame(
+        firstKey(sharing.parse("{\"key\": 1}").unwrap()),
+        firstKey(sharing.parse("{\"key\": 2}".getBytes(UTF_8)).unwrap()));
+    assertNotSame(
+        firstKey(parser.parse("{\"key\": 1}").unwrap()),
+        firstKey(parser.parse("{\"key\": 2}").unwrap()));
+
+    final JsonParser disabled = parser.withSymbolTableCapacity(0);
+    final JsonArray plain = (JsonArray) disabled.parse(text).unwrap();
+    assertNotSame(firstKey(plain.get(0)), firstKey(plain.get(1)));
+    assertEquals(records, plain);
+
+    assertEquals(16, symbols.capacity());
+    assertEquals(8, new JsonSymbolTable(5).capacity());
+    assertThrows(IllegalArgumentException.class, () -> new JsonSymbolTable(0));
+  }
+
+  private static String firstKey(JsonValue value) {
+    return ((JsonObject) value).keySet().iterator().next();
+  }
+
+  @Test
+  void parsingLazilyYieldsAnEqualTree() throws Exception {
+    final String text = readResource("/test01.json");
+    final JsonValue expected = parser.parse(text).unwrap();
+    final JsonValue lazy = parser.parseLazy(text.getBytes(UTF_8)).unwrap();
+    assertEquals(expected, lazy);
+    assertEquals(lazy, expected);
+    assertEquals(expected.hashCode(), lazy.hashCode());
+    assertEquals(expected.toString(), lazy.toString());
+
+    final JsonObject company = assertInstanceOf(JsonObject.class, lazy);
+    final JsonObject facilities = assertInstanceOf(JsonObject.class, company.get("facilities"));
+    assertSame(facilities, company.get("facilities"));
+    final JsonArray rooms = assertInstanceOf(JsonArray.class, facilities.get("conferenceRooms"));
+    assertEquals(new JsonNumber(50L), ((JsonObject) rooms.get(1)).get("capacity"));
+    assertThrows(UnsupportedOperationException.class, () -> company.put("x", JsonNull.INSTANCE));
+
+    assertEquals(new JsonNumber(42L), parser.parseLazy("42".getBytes(UTF_8)).unwrap());
+    final byte[] padded = "[[[1, {\"a\": []}]]]".getBytes(UTF_8);
+    assertEquals(
+        parser.parse("[1, {\"a\": []}]").unwrap(),
+        parser.parseLazy(ByteBuffer.wrap(padded, 2, padded.length - 4)).unwrap());
+  }
+
+  @Test
+  void parsingLazilyValidatesUpFrontAndReportsTheRestOnAccess() {
+    final Object error = errorOf(parser.parseLazy("{\"a\": [1, {\"b\": 2]}".getBytes(UTF_8)));
+    assertEquals(17L, assertInstanceOf(JsonParseException.class, error).offset());
+    assertInstanceOf(JsonParseException.class, errorOf(parser.parseLazy(new byte[0])));
+
+    final JsonObject lazy = (JsonObject) parser
+        .parseLazy("{\"a\": 1, \"b\": {\"c\": 1, \"c\": 2}}".getBytes(UTF_8))
+        .unwrap();
+    assertEquals(new JsonNumber(1L), lazy.get("a"));
+    final JsonParseException e =
+        assertThrows(JsonParseException.class, () -> lazy.get("b").hashCode());
+    assertEquals(23L, e.offset());
+  }
+
+  @Test
+  void parsingLazilyOnlyCountsTheBracketsOfValuesSkippedBelowTheRoot() {
+    final byte[] bytes = "{\"a\": {\"b\": {\"c\": [1]}, \"d\": 2}}".getBytes(UTF_8);
+    final JsonObject lazy = (JsonObject) parser.parseLazy(bytes).unwrap();
+    // the text has been validated, thus breaking a nested value afterwards goes unnoticed, unless
+    // it is tokenized again:
+    bytes[new String(bytes, UTF_8).indexOf(':', 12)] = ' ';
+    final JsonObject a = assertInstanceOf(JsonObject.class, lazy.get("a"));
+    assertEquals(new JsonNumber(2L), a.get("d"));
+  }
+
+}
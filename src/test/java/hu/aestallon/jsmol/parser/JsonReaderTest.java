@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonReaderTest {
+
+  @Test
+  void readingTokensWorks() throws Exception {
+    final JsonReader reader = JsonReader.of("{\"a\": [1, 2.5, \"x\"], \"b\": null, \"c\": true}");
+    final List<JsonToken> tokens = new ArrayList<>();
+    JsonToken token;
+    do {
+      tokens.add(token = reader.nextToken());
+    } while (token != JsonToken.END_DOCUMENT);
+
+    assertEquals(
+        List.of(
+            JsonToken.BEGIN_OBJECT,
+            JsonToken.NAME, JsonToken.BEGIN_ARRAY,
+            JsonToken.NUMBER, JsonToken.NUMBER, JsonToken.STRING,
+            JsonToken.END_ARRAY,
+            JsonToken.NAME, JsonToken.NULL,
+            JsonToken.NAME, JsonToken.BOOLEAN,
+            JsonToken.END_OBJECT,
+            JsonToken.END_DOCUMENT),
+        tokens);
+  }
+
+  @Test
+  void readingTypedValuesWorks() throws Exception {
+    final String text = "{\"id\": 42, \"ratio\": -0.5, \"name\": \"x\", \"ok\": false}";
+    final JsonReader reader = JsonReader.of(text.getBytes(UTF_8));
+    assertEquals(JsonToken.BEGIN_OBJECT, reader.nextToken());
+    assertEquals("id", reader.nextName());
+    assertEquals(42L, reader.nextLong());
+    assertEquals("ratio", reader.nextName());
+    assertEquals(-0.5, reader.nextDouble());
+    assertEquals("name", reader.nextName());
+    assertEquals("x", reader.nextString());
+    assertEquals("ok", reader.nextName());
+    assertFalse(reader.nextBoolean());
+    assertFalse(reader.hasNext());
+    assertEquals(JsonToken.END_OBJECT, reader.nextToken());
+    assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+  }
+
+  @Test
+  void skippingValuesWorks() throws Exception {
+    final String text = "{\"skip\": {\"a\": [1, [2, {}]], \"b\": \"}\"}, \"keep\": 7}";
+    final JsonReader reader = JsonReader.of(text);
+    reader.nextToken();
+    assertEquals(JsonToken.NAME, reader.peek());
+    reader.skipValue();
+    assertEquals("keep", reader.nextName());
+    assertEquals(7L, reader.nextLong());
+    reader.nextToken();
+    assertEquals(JsonToken.END_DOCUMENT, reader.nextToken());
+
+    final JsonReader empty = JsonReader.of("[{}]");
+    empty.beginArray();
+    empty.beginObject();
+    assertThrows(JsonParseException.class, empty::skipValue);
+    empty.endObject();
+    assertThrows(JsonParseException.class, empty::skipValue);
+    empty.endArray();
+    assertEquals(JsonToken.END_DOCUMENT, empty.peek());
+  }
+
+  @Test
+  void selectingNamesAndReadingSubtreesWorks() throws Exception {
+    final String[] names = {"id", "name"};
+    for (JsonReader reader : new JsonReader[] {
+        JsonReader.of("{\"n\\u0061me\": \"x\", \"extra\": {\"a\": [1]}, \"id\": 3}"),
+        JsonReader.of("{\"n\\u0061me\": \"x\", \"extra\": {\"a\": [1]}, \"id\": 3}"
+            .getBytes(UTF_8))}) {
+      reader.beginObject();
+      assertEquals(1, reader.selectName(names));
+      assertEquals("x", reader.nextString());
+      assertEquals(-1, reader.selectName(names));
+      assertEquals("{\"a\":[1]}", reader.nextValue().toString());
+      assertEquals(0, reader.selectName(names));
+      assertEquals(3L, reader.nextLong());
+      assertFalse(reader.hasNext());
+      assertThrows(JsonParseException.class, reader::endArray);
+      reader.endObject();
+      assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+    }
+  }
+
+  @Test
+  void malformedUtf8IsReplacedTheSameWayOnEveryPath() throws Exception {
+    final byte[][] malformed = {
+        {(byte) 0xE0, (byte) 0x80, (byte) 0x80},
+        {(byte) 0xC0, 'a'},
+        {(byte) 0xF0, (byte) 0x9F, 'b'},
+        {(byte) 0xED, (byte) 0xA0, (byte) 0x80},
+        {(byte) 0xF5, (byte) 0x80},
+        {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+        {(byte) 0xC3, (byte) 0xA9, (byte) 0xBF}};
+    for (final byte[] bytes : malformed) {
+      final String expected = new String(bytes, UTF_8);
+      for (final String escape : new String[] {"", "\\n"}) {
+        final String text = expected + (escape.isEmpty() ? "" : "\n");
+        final byte[] string = concat("\"", bytes, escape + "\"");
+        assertEquals(text, JsonReader.of(string).nextString());
+        assertEquals(text, JsonReader.of(new ByteArrayInputStream(string)).nextString());
+
+        final JsonReader reader = JsonReader.of(concat("{\"", bytes, escape + "\": 1}"));
+        reader.beginObject();
+        assertEquals(1, reader.selectName(new String[] {"x", text}));
+      }
+    }
+  }
+
+  private static byte[] concat(String head, byte[] bytes, String tail) {
+    final byte[] h = head.getBytes(UTF_8);
+    final byte[] t = tail.getBytes(UTF_8);
+    final byte[] result = new byte[h.length + bytes.length + t.length];
+    System.arraycopy(h, 0, result, 0, h.length);
+    System.arraycopy(bytes, 0, result, h.length, bytes.length);
+    System.arraycopy(t, 0, result, h.length + bytes.length, t.length);
+    return result;
+  }
+
+  @Test
+  void readingTheWrongKindOfTokenFails() throws Exception {
+    final JsonReader reader = JsonReader.of("[\"a\", 1.5]");
+    reader.nextToken();
+    final JsonParseException e = assertThrows(JsonParseException.class, reader::nextLong);
+    assertEquals(1L, e.offset());
+    reader.nextString();
+    assertThrows(JsonParseException.class, reader::nextLong);
+  }
+
+  @Test
+  void readingALongOutOfRangeFails() throws Exception {
+    final JsonReader reader = JsonReader.of(
+        "[9223372036854775808.0, -9223372036854775808.0, -9.3e18, 9.2e18]");
+    reader.beginArray();
+    assertThrows(JsonParseException.class, reader::nextLong);
+    assertEquals(Long.MIN_VALUE, reader.nextLong());
+    assertThrows(JsonParseException.class, reader::nextLong);
+    assertEquals(9_200_000_000_000_000_000L, reader.nextLong());
+  }
+
+  @Test
+  void malformedStructureIsReportedWhileReading() throws Exception {
+    final JsonReader reader = JsonReader.of("[1, 2} ");
+    reader.nextToken();
+    reader.skipValue();
+    reader.skipValue();
+    final JsonParseException e = assertThrows(JsonParseException.class, reader::peek);
+    assertEquals(5L, e.offset());
+
+    assertThrows(JsonParseException.class, () -> JsonReader.of("[1,]").skipValue());
+    assertThrows(JsonParseException.class, () -> JsonReader.of("{\"a\":1,}").skipValue());
+    assertThrows(JsonParseException.class, () -> JsonReader.of("").peek());
+  }
+
+}
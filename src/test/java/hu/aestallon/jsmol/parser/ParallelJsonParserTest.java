@@ -0,0 +1,182 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.parser;
+
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.result.Result;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static hu.aestallon.jsmol.parser.JsonParserTest.errorOf;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelJsonParserTest {
+
+  private static final int LINES = 20_000;
+
+  private final JsonParser         parser   = new JsonParser();
+  private final ParallelJsonParser parallel = new ParallelJsonParser(parser, new ForkJoinPool(4));
+
+  /**
+   * Every 1000th line is malformed, and every 777th is blank.
+   */
+  private static String lines() {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 1; i <= LINES; i++) {
+      if (i % 1000 == 0) {
+        sb.append("{\"id\": ").append(i).append(", \"bad\": }\n");
+      } else if (i % 777 == 0) {
+        sb.append(" \r\n");
+      } else {
+        sb.append("{\"id\": ").append(i).append(", \"name\": \"név-").append(i).append("\"}\r\n");
+      }
+    }
+    // the last line lacks a newline:
+    return sb.append("[").append(LINES + 1).append("]").toString();
+  }
+
+  private void assertMatchesSequentialParse(String text, List<Result<JsonValue>> results) {
+    final String[] lines = text.split("\n");
+    int idx = 0;
+    long offset = 0L;
+    for (int i = 0; i < lines.length; i++) {
+      if (!lines[i].isBlank()) {
+        final Result<JsonValue> expected = parser.parse(lines[i]);
+        final Result<JsonValue> actual = results.get(idx++);
+        if (expected.isOk()) {
+          assertEquals(expected.unwrap(), actual.unwrap());
+        } else {
+          final JsonParseException e = (JsonParseException) errorOf(expected);
+          final JsonLineException lineError =
+              assertInstanceOf(JsonLineException.class, errorOf(actual));
+          assertEquals(i + 1L, lineError.line());
+          // lines are ASCII up to the error:
+          assertEquals(offset + e.offset(), lineError.offset());
+        }
+      }
+      offset += lines[i].getBytes(UTF_8).length + 1;
+    }
+    assertEquals(idx, results.size());
+  }
+
+  @Test
+  void parsingLinesInOrderMatchesTheSequentialParser() {
+    final String text = lines();
+    final List<Result<JsonValue>> results;
+    try (Stream<Result<JsonValue>> stream = parallel.parseLines(
+        ByteBuffer.wrap(text.getBytes(UTF_8)), true)) {
+      results = stream.toList();
+    }
+    assertMatchesSequentialParse(text, results);
+  }
+
+  @Test
+  void parsingLinesOutOfOrderYieldsEveryLine() {
+    final String text = lines();
+    final List<Result<JsonValue>> results = new ArrayList<>(parallel
+        .parseLines(ByteBuffer.wrap(text.getBytes(UTF_8)), false)
+        .toList());
+    assertEquals(LINES + 1 - LINES / 1000 - (LINES / 777 - LINES / (777 * 1000)),
+        results.stream().filter(Result::isOk).count());
+    assertEquals(
+        Stream.iterate(1000L, l -> l <= LINES, l -> l + 1000L).toList(),
+        results.stream()
+            .filter(Result::isErr)
+            .map(r -> ((JsonLineException) errorOf(r)).line())
+            .sorted()
+            .collect(Collectors.toList()));
+  }
+
+  @Test
+  void parsingLinesOfAFileWorks() throws Exception {
+    final String text = lines();
+    final Path file = Files.createTempFile("jsmol", ".ndjson");
+    try {
+      Files.writeString(file, text, UTF_8);
+      try (Stream<Result<JsonValue>> stream = parallel.parseLines(file, true)) {
+        assertMatchesSequentialParse(text, stream.toList());
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static String array(int n) {
+    final StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < n; i++) {
+      sb.append(i == 0 ? "\n  " : ",\n  ")
+          .append("{\"id\": ").append(i)
+          .append(", \"tricky\": \"],[\\\"{,}\\\\\", \"nested\": [[").append(i).append("], {}]}");
+    }
+    return sb.append("\n]").toString();
+  }
+
+  @Test
+  void parsingAnArrayInParallelMatchesTheSequentialParser() {
+    final String text = array(20_000);
+    final JsonValue expected = parser.parse(text).unwrap();
+    assertEquals(expected, parallel.parseArray(ByteBuffer.wrap(text.getBytes(UTF_8))).unwrap());
+
+    final List<String> smalls = List.of(
+        "[]", " [ ] ", "[1]", "[\"a,b\", [1, [2]], {\"c\": \"]\"}]", "{\"a\": 1}", "42");
+    for (String small : smalls) {
+      assertEquals(parser.parse(small).unwrap(),
+          parallel.parseArray(ByteBuffer.wrap(small.getBytes(UTF_8))).unwrap());
+    }
+  }
+
+  @Test
+  void malformedArraysYieldTheErrorOfTheSequentialParser() {
+    for (String bad : List.of("[1,,2]", "[1, 2,]", "[1, 2} ", "[1] x", "[{\"a\": 1, \"a\": 2}]",
+        "[1, \"abc]", "[[1, 2]", array(5_000).replace("\"id\": 4321", "\"id\": 43x1"))) {
+      final JsonParseException expected = (JsonParseException) errorOf(parser.parse(bad));
+      final Object actual = errorOf(parallel.parseArray(ByteBuffer.wrap(bad.getBytes(UTF_8))));
+      assertEquals(expected.getMessage(), assertInstanceOf(JsonParseException.class, actual)
+          .getMessage());
+    }
+  }
+
+  @Test
+  void parsingAnArrayInParallelHonoursTheDepthLimit() {
+    final ParallelJsonParser shallow =
+        new ParallelJsonParser(parser.withMaxDepth(2), ForkJoinPool.commonPool());
+    assertTrue(shallow.parseArray(ByteBuffer.wrap("[[1], {\"a\": 2}]".getBytes(UTF_8))).isOk());
+    final Object error = errorOf(shallow.parseArray(ByteBuffer.wrap("[1, [[2]]]".getBytes(UTF_8))));
+    assertEquals(5L, assertInstanceOf(JsonParseException.class, error).offset());
+  }
+
+  @Test
+  void parsingAnArrayFileInParallelWorks() throws Exception {
+    final String text = array(5_000);
+    final Path file = Files.createTempFile("jsmol", ".json");
+    try {
+      Files.writeString(file, text, UTF_8);
+      assertEquals(parser.parse(text).unwrap(), parallel.parseArray(file).unwrap());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+}
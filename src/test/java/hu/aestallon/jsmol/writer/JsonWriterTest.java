@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 Szabolcs Bazil Papp
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package hu.aestallon.jsmol.writer;
+
+import hu.aestallon.jsmol.json.JsonArray;
+import hu.aestallon.jsmol.json.JsonNumber;
+import hu.aestallon.jsmol.json.JsonObject;
+import hu.aestallon.jsmol.json.JsonString;
+import hu.aestallon.jsmol.json.JsonValue;
+import hu.aestallon.jsmol.parser.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonWriterTest {
+
+  private final JsonParser parser = new JsonParser();
+
+  private static String text(String resource) throws Exception {
+    try (InputStream in = JsonWriterTest.class.getResourceAsStream(resource)) {
+      assertNotNull(in);
+      return new String(in.readAllBytes(), UTF_8);
+    }
+  }
+
+  @Test
+  void writtenTreesParseBackToTheSameTree() throws Exception {
+    final JsonValue tree = parser.parse(text("/test01.json")).unwrap();
+    final String json = JsonWriter.toJson(tree);
+    assertEquals(tree, parser.parse(json).unwrap());
+    assertEquals(json, tree.toString());
+
+    final StringWriter chars = new StringWriter();
+    try (JsonWriter writer = JsonWriter.of(chars)) {
+      writer.value(tree);
+    }
+    assertEquals(json, chars.toString());
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonWriter writer = JsonWriter.of(bytes)) {
+      writer.value(tree);
+    }
+    assertEquals(json, bytes.toString(UTF_8));
+
+    final ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+    try (JsonWriter writer = JsonWriter.of(Channels.newChannel(channelBytes))) {
+      writer.value(tree);
+    }
+    assertEquals(json, channelBytes.toString(UTF_8));
+  }
+
+  @Test
+  void stringsAreEscapedAsPerRfc8259() throws Exception {
+    assertEquals("\"a\\\"b\\\\c/d\"", JsonWriter.toJson(new JsonString("a\"b\\c/d")));
+    assertEquals("\"\\b\\f\\n\\r\\t\\u0000\\u001f\u007f\"",
+        JsonWriter.toJson(new JsonString("\b\f\n\r\t\u0000\u001f\u007f")));
+    // pairs are written as they are, unpaired surrogates are escaped:
+    assertEquals("\"🍰\\ud800x\\udc00\"", JsonWriter.toJson(new JsonString("🍰\ud800x\udc00")));
+    assertEquals("{\"k\\n\":[]}", JsonWriter.toJson(new JsonObject(Map.of("k\n",
+        new JsonArray(List.of())))));
+
+    // pairs spanning the end of the buffer are not split:
+    final String cakes = "x" + "🍰".repeat(3 * JsonOutput.BUFFER_SIZE) + "\ud800";
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (JsonWriter writer = JsonWriter.of(bytes)) {
+      writer.value(cakes);
+    }
+    final String written = bytes.toString(UTF_8);
+    assertEquals(JsonWriter.toJson(new JsonString(cakes)), written);
+    assertEquals(new JsonString(cakes), parser.parse(written).unwrap());
+  }
+
+  @Test
+  void numbersAreWrittenInTheirShortestForm() throws Exception {
+    for (long l : new long[] {0, 7, -7, 10, 99, 100, 1234567890123L, Long.MAX_VALUE,
+        Long.MIN_VALUE}) {
+      assertEquals(Long.toString(l), JsonWriter.toJson(new JsonNumber(l)));
+    }
+    assertEquals("0.1", JsonWriter.toJson(new JsonNumber(0.1)));
+    assertEquals("1.5", JsonWriter.toJson(new JsonNumber(1.5f)));
+    assertEquals("-1.5E+400", JsonWriter.toJson(new JsonNumber(new BigDecimal("-1.5e400"))));
+    assertThrows(IllegalArgumentException.class,
+        () -> JsonWriter.of(new StringBuilder()).value(Double.NaN));
+    assertThrows(IllegalArgumentException.class,
+        () -> JsonWriter.of(new StringBuilder()).value((Number) Float.POSITIVE_INFINITY));
+  }
+
+  @Test
+  void doublesAreWrittenWithTheFewestDigitsReadingBackTheSame() throws Exception {
+    final Map<Double, String> expected = Map.ofEntries(
+        Map.entry(0.0, "0.0"), Map.entry(-0.0, "-0.0"), Map.entry(1.0, "1.0"),
+        Map.entry(100.0, "100.0"), Map.entry(123.456, "123.456"), Map.entry(0.001, "0.001"),
+        Map.entry(9.999e-4, "9.999E-4"), Map.entry(9999999.0, "9999999.0"),
+        Map.entry(1e7, "1.0E7"), Map.entry(1.2345678e7, "1.2345678E7"), Map.entry(2e23, "2.0E23"),
+        Map.entry(1e23, "1.0E23"), Map.entry(Double.MAX_VALUE, "1.7976931348623157E308"),
+        Map.entry(Double.MIN_NORMAL, "2.2250738585072014E-308"),
+        Map.entry(Double.MIN_VALUE, "4.9E-324"), Map.entry(-1.0 / 3, "-0.3333333333333333"));
+    for (Map.Entry<Double, String> e : expected.entrySet()) {
+      assertEquals(e.getValue(), JsonWriter.toJson(new JsonNumber(e.getKey())));
+      assertArrayEquals(e.getValue().getBytes(UTF_8),
+          JsonWriter.toBytes(new JsonNumber(e.getKey())));
+    }
+
+    final Random random = new Random(23);
+    for (int i = 0; i < 100_000; i++) {
+      final double d = (i % 2 == 0)
+          ? Double.longBitsToDouble(random.nextLong())
+          : random.nextInt(1_000_000) / Math.pow(10, random.nextInt(12));
+      if (!Double.isFinite(d)) {
+        continue;
+      }
+      final String json = JsonWriter.toJson(new JsonNumber(d));
+      assertEquals(Double.doubleToLongBits(d), Double.doubleToLongBits(Double.parseDouble(json)));
+      assertEquals(json, new String(JsonWriter.toBytes(new JsonNumber(d)), UTF_8));
+      assertTrue(json.length() <= Double.toString(d).length(), json);
+    }
+
+    // only the exact length is required at the end of a buffer:
+    final ByteBuffer buffer = ByteBuffer.allocate(9);
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginArray().value(0.25).value(-1).endArray();
+    }
+    assertEquals("[0.25,-1]", new String(buffer.array(), 0, buffer.position(), UTF_8));
+  }
+
+  @Test
+  void tokensAreWrittenWithTheSeparatorsInPlace() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    try (JsonWriter writer = JsonWriter.of(sb)) {
+      writer.beginObject()
+          .name("a").value(1L)
+          .name("b").beginArray().value(true).nullValue().value("c").beginObject().endObject()
+          .endArray()
+          .name("d").value(2.5)
+          .endObject();
+      assertThrows(IllegalStateException.class, writer::nullValue);
+    }
+    assertEquals("{\"a\":1,\"b\":[true,null,\"c\",{}],\"d\":2.5}", sb.toString());
+
+    final JsonWriter writer = JsonWriter.of(new StringBuilder());
+    assertThrows(IllegalStateException.class, () -> writer.name("a"));
+    writer.beginObject();
+    assertThrows(IllegalStateException.class, () -> writer.value(1L));
+    assertThrows(IllegalStateException.class, writer::endArray);
+    writer.name("a");
+    assertThrows(IllegalStateException.class, writer::endObject);
+    assertThrows(IllegalStateException.class, () -> writer.name("b"));
+  }
+
+  @Test
+  void deeplyNestedTreesAreWrittenWithoutExhaustingTheStack() throws Exception {
+    final int depth = 200_000;
+    final String text = "[{\"a\":".repeat(depth) + "1" + "}]".repeat(depth);
+    final JsonValue tree = parser.withMaxDepth(2 * depth).parse(text).unwrap();
+    assertEquals(text, tree.toString());
+  }
+
+  @Test
+  void bytesAreEncodedDirectlyAsUtf8() throws Exception {
+    final Random random = new Random(22);
+    final char[] alphabet = {'a', 'Z', ' ', '"', '\\', '\n', '\u0001', '\u00e9', '\u07ff', '\u0800',
+        '\uffff', '\ud83c', '\udf70', '\ud800', '\udfff'};
+    for (int i = 0; i < 2000; i++) {
+      final int length = (i % 10 == 0) ? 3 * JsonOutput.BUFFER_SIZE : 40;
+      final char[] chars = new char[random.nextInt(length)];
+      for (int k = 0; k < chars.length; k++) {
+        chars[k] = alphabet[random.nextInt(alphabet.length)];
+      }
+      final JsonValue value = new JsonArray(List.of(new JsonString(new String(chars))));
+      final byte[] expected = JsonWriter.toJson(value).getBytes(UTF_8);
+      assertArrayEquals(expected, JsonWriter.toBytes(value));
+    }
+  }
+
+  @Test
+  void writingIntoAByteBufferAdvancesItsPosition() throws Exception {
+    final JsonValue value = parser.parse("{\"a\": [1, \"\u00e9\", null]}").unwrap();
+    final byte[] expected = JsonWriter.toBytes(value);
+    for (ByteBuffer buffer : new ByteBuffer[] {
+        ByteBuffer.allocate(64).position(8).slice().position(3),
+        ByteBuffer.allocateDirect(64).position(3)}) {
+      try (JsonWriter writer = JsonWriter.of(buffer)) {
+        writer.value(value);
+      }
+      assertEquals(3 + expected.length, buffer.position());
+      final byte[] written = new byte[expected.length];
+      buffer.flip().position(3);
+      buffer.get(written);
+      assertArrayEquals(expected, written);
+    }
+    assertThrows(BufferOverflowException.class, () -> {
+      try (JsonWriter writer = JsonWriter.of(ByteBuffer.allocate(expected.length - 1))) {
+        writer.value(value);
+      }
+    });
+  }
+
+}